@@ -0,0 +1,21 @@
+package com.venus735.dfp
+
+/**
+ * 主界面的不可变状态
+ */
+data class FingerprintUiState(
+    val permissionsGranted: Boolean = false,
+    val drmId: String? = null,
+    val hardwareInfo: String = "",
+    val locationInfo: String = "",
+    val cells: List<CellItem> = emptyList()
+)
+
+/**
+ * 基站列表中的一项
+ * @param key 基站标识，作为LazyColumn的稳定key，同一基站在多次扫描之间保持不变
+ */
+data class CellItem(
+    val key: String,
+    val displayText: String
+)
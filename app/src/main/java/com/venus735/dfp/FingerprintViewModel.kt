@@ -0,0 +1,142 @@
+package com.venus735.dfp
+
+import android.Manifest
+import android.app.Application
+import android.content.pm.PackageManager
+import android.util.Log
+import androidx.core.content.ContextCompat
+import androidx.lifecycle.AndroidViewModel
+import androidx.lifecycle.viewModelScope
+import com.venus735.devicefingerprint.BaseStationCollector
+import com.venus735.devicefingerprint.BaseStationCollector.BaseStationInfo
+import com.venus735.devicefingerprint.DeviceFingerprintInitializer
+import com.venus735.devicefingerprint.DeviceInfoCollector
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.ExperimentalCoroutinesApi
+import kotlinx.coroutines.channels.awaitClose
+import kotlinx.coroutines.delay
+import kotlinx.coroutines.flow.Flow
+import kotlinx.coroutines.flow.MutableStateFlow
+import kotlinx.coroutines.flow.SharingStarted
+import kotlinx.coroutines.flow.StateFlow
+import kotlinx.coroutines.flow.callbackFlow
+import kotlinx.coroutines.flow.combine
+import kotlinx.coroutines.flow.flow
+import kotlinx.coroutines.flow.flowOf
+import kotlinx.coroutines.flow.flowOn
+import kotlinx.coroutines.flow.flatMapLatest
+import kotlinx.coroutines.flow.onStart
+import kotlinx.coroutines.flow.stateIn
+import kotlinx.coroutines.flow.update
+
+/**
+ * 主界面状态持有者
+ * 采集器只在界面订阅 [uiState] 期间运行：界面不可见超过5秒后停止基站和定位采集，
+ * 重新可见时再启动，配置变更(旋转屏幕)不会导致采集器重建。
+ * 所有收集器都通过 [DeviceFingerprintInitializer] 获取，首帧绘制之后才在后台创建。
+ */
+@OptIn(ExperimentalCoroutinesApi::class)
+class FingerprintViewModel(application: Application) : AndroidViewModel(application) {
+    private val initializer = DeviceFingerprintInitializer.getInstance(application)
+    private val permissionsGranted = MutableStateFlow(hasPermissions())
+    private val firstFrameDrawn = MutableStateFlow(false)
+    private val staticInfo = MutableStateFlow(FingerprintUiState())
+    private val collectorsEnabled = combine(permissionsGranted, firstFrameDrawn) { granted, drawn -> granted && drawn }
+
+    val uiState: StateFlow<FingerprintUiState> = combine(
+        staticInfo,
+        permissionsGranted,
+        collectorsEnabled.flatMapLatest { enabled -> if (enabled) locationUpdates() else flowOf("") },
+        collectorsEnabled.flatMapLatest { enabled -> if (enabled) cellUpdates() else flowOf(emptyList()) }
+    ) { info, granted, location, cells ->
+        info.copy(permissionsGranted = granted, locationInfo = location, cells = cells)
+    }.stateIn(
+        viewModelScope,
+        SharingStarted.WhileSubscribed(STOP_TIMEOUT_MS),
+        FingerprintUiState(permissionsGranted = permissionsGranted.value)
+    )
+
+    /**
+     * 首帧绘制完成后调用，在后台按依赖顺序初始化所有收集器
+     * DRM ID 和硬件信息只读取一次
+     */
+    fun onFirstFrame() {
+        if (firstFrameDrawn.value) {
+            return
+        }
+        initializer.initializeAsync().whenComplete { _, _ ->
+            Log.d(TAG, initializer.getTimingReport())
+            staticInfo.update {
+                it.copy(
+                    drmId = initializer.get<String?>(DeviceFingerprintInitializer.DRM_ID),
+                    hardwareInfo = initializer.get<String>(DeviceFingerprintInitializer.HARDWARE_INFO)
+                )
+            }
+        }
+        firstFrameDrawn.value = true
+    }
+
+    /**
+     * 重新检查权限，权限申请返回或界面重新可见时调用
+     */
+    fun refreshPermissions() {
+        permissionsGranted.value = hasPermissions()
+    }
+
+    private fun hasPermissions(): Boolean {
+        return REQUIRED_PERMISSIONS.all {
+            ContextCompat.checkSelfPermission(getApplication(), it) == PackageManager.PERMISSION_GRANTED
+        }
+    }
+
+    /**
+     * 订阅期间运行基站收集器，取消订阅时停止
+     */
+    private fun cellUpdates(): Flow<List<CellItem>> = callbackFlow {
+        val collector = initializer.get<BaseStationCollector>(DeviceFingerprintInitializer.TELEPHONY)
+        collector.setBaseStationListener { baseStationInfoList ->
+            trySend(toCellItems(baseStationInfoList))
+        }
+        collector.startCollecting()
+        awaitClose {
+            collector.stopCollecting()
+            collector.setBaseStationListener(null)
+        }
+    }.flowOn(Dispatchers.IO).onStart { emit(emptyList()) }
+
+    /**
+     * 订阅期间每30秒刷新一次位置信息
+     */
+    private fun locationUpdates(): Flow<String> = flow {
+        val deviceInfoCollector = initializer.get<DeviceInfoCollector>(DeviceFingerprintInitializer.DEVICE_INFO)
+        while (true) {
+            emit(deviceInfoCollector.collectLocationInfo())
+            delay(LOCATION_REFRESH_MS)
+        }
+    }.flowOn(Dispatchers.IO).onStart { emit("") }
+
+    /**
+     * 转换为列表项；同一SIM卡的同一基站可能出现在多个邻区条目中，只保留第一条(服务小区排在前面)，
+     * key只由SIM卡和基站标识组成，列表顺序变化时不会改变
+     */
+    private fun toCellItems(baseStationInfoList: List<BaseStationInfo>): List<CellItem> =
+        baseStationInfoList
+            .distinctBy { info -> "${info.subscriptionId}/${info.cellKey}" }
+            .map { info ->
+                CellItem(
+                    key = "${info.subscriptionId}/${info.cellKey}",
+                    displayText = info.displayText
+                )
+            }
+
+    companion object {
+        private const val TAG = "FingerprintViewModel"
+        val REQUIRED_PERMISSIONS = arrayOf(
+            Manifest.permission.READ_PHONE_STATE,
+            Manifest.permission.ACCESS_FINE_LOCATION,
+            Manifest.permission.ACCESS_COARSE_LOCATION
+        )
+        private const val STOP_TIMEOUT_MS = 5000L
+        private const val LOCATION_REFRESH_MS = 30000L
+    }
+}
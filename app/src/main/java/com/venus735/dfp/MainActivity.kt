@@ -1,57 +1,41 @@
 package com.venus735.dfp
 
 import android.os.Bundle
+import android.view.Choreographer
 import androidx.activity.ComponentActivity
 import androidx.activity.compose.setContent
 import androidx.activity.enableEdgeToEdge
+import androidx.activity.viewModels
+import androidx.compose.foundation.layout.Column
 import androidx.compose.foundation.layout.fillMaxSize
+import androidx.compose.foundation.layout.fillMaxWidth
 import androidx.compose.foundation.layout.padding
+import androidx.compose.foundation.lazy.LazyColumn
+import androidx.compose.foundation.lazy.items
+import androidx.compose.material3.AlertDialog
 import androidx.compose.material3.Scaffold
 import androidx.compose.material3.Text
+import androidx.compose.material3.TextButton
 import androidx.compose.runtime.Composable
-import androidx.compose.ui.Modifier
-import androidx.compose.ui.tooling.preview.Preview
-import com.venus735.devicefingerprint.DeviceFingerprintGenerator
-import com.venus735.dfp.ui.theme.DFPTheme
-import androidx.compose.foundation.layout.Column
-import androidx.compose.material3.Button
-import androidx.compose.runtime.mutableStateOf
-import androidx.compose.runtime.remember
 import androidx.compose.runtime.getValue
+import androidx.compose.runtime.mutableStateOf
+import androidx.compose.runtime.saveable.rememberSaveable
 import androidx.compose.runtime.setValue
-import android.Manifest
-import android.annotation.SuppressLint
-import android.content.pm.PackageManager
-import androidx.core.app.ActivityCompat
-import androidx.core.content.ContextCompat
-import androidx.compose.foundation.layout.fillMaxWidth
-import androidx.compose.foundation.lazy.LazyColumn
-import androidx.compose.foundation.lazy.items
-import androidx.compose.material3.AlertDialog
-import androidx.compose.material3.TextButton
-import androidx.compose.runtime.mutableStateListOf
-import androidx.compose.runtime.rememberCoroutineScope
+import androidx.compose.ui.Modifier
+import androidx.compose.ui.tooling.preview.Preview
 import androidx.compose.ui.unit.dp
-import com.venus735.devicefingerprint.BaseStationCollector
-import com.venus735.devicefingerprint.BaseStationCollector.BaseStationInfo
-import kotlinx.coroutines.launch
-import kotlinx.coroutines.delay
+import androidx.core.app.ActivityCompat
+import androidx.lifecycle.compose.collectAsStateWithLifecycle
+import com.venus735.dfp.ui.theme.DFPTheme
 
 class MainActivity : ComponentActivity() {
-    private lateinit var baseStationCollector: BaseStationCollector
-    private val requiredPermissions = arrayOf(
-        Manifest.permission.READ_PHONE_STATE,
-        Manifest.permission.ACCESS_FINE_LOCATION,
-        Manifest.permission.ACCESS_COARSE_LOCATION
-    )
+    private val viewModel: FingerprintViewModel by viewModels()
 
     override fun onCreate(savedInstanceState: Bundle?) {
         super.onCreate(savedInstanceState)
         
         // 检查并请求权限
-        if (hasPermissions()) {
-            initBaseStationCollector()
-        } else {
+        if (!viewModel.uiState.value.permissionsGranted) {
             requestPermissions()
         }
         
@@ -59,47 +43,37 @@ class MainActivity : ComponentActivity() {
         setContent {
             DFPTheme {
                 Scaffold(modifier = Modifier.fillMaxSize()) { innerPadding ->
-                    Greeting(
-                        name = "Android",
-                        modifier = Modifier.padding(innerPadding),
-                        activity = this@MainActivity
+                    // 界面不可见时停止收集状态，ViewModel随之停止采集器
+                    val uiState by viewModel.uiState.collectAsStateWithLifecycle()
+                    FingerprintScreen(
+                        uiState = uiState,
+                        onRequestPermissions = ::requestPermissions,
+                        modifier = Modifier.padding(innerPadding)
                     )
                 }
             }
         }
-    }
-    
-    fun hasPermissions(): Boolean {
-        return requiredPermissions.all {
-            ContextCompat.checkSelfPermission(this, it) == PackageManager.PERMISSION_GRANTED
+
+        // 首帧绘制完成后再初始化指纹收集组件，首帧不再等待MediaDrm和系统服务查询
+        Choreographer.getInstance().postFrameCallback {
+            window.decorView.post { viewModel.onFirstFrame() }
         }
     }
+
+    override fun onStart() {
+        super.onStart()
+        // 用户可能在系统设置中修改了权限
+        viewModel.refreshPermissions()
+    }
     
-    fun requestPermissions() {
+    private fun requestPermissions() {
         ActivityCompat.requestPermissions(
             this,
-            requiredPermissions,
+            FingerprintViewModel.REQUIRED_PERMISSIONS,
             PERMISSION_REQUEST_CODE
         )
     }
     
-    private fun initBaseStationCollector() {
-        baseStationCollector = BaseStationCollector(this)
-        baseStationCollector.startCollecting()
-    }
-    
-    // 添加获取基站收集器实例的方法
-    fun getBaseStationCollector(): BaseStationCollector {
-        return baseStationCollector
-    }
-    
-    // 添加设置基站监听器的方法
-    fun setupBaseStationListener(listener: (List<BaseStationInfo>) -> Unit) {
-        baseStationCollector.setBaseStationListener { baseStationInfoList ->
-            listener(baseStationInfoList)
-        }
-    }
-    
     override fun onRequestPermissionsResult(
         requestCode: Int,
         permissions: Array<out String>,
@@ -107,11 +81,7 @@ class MainActivity : ComponentActivity() {
     ) {
         super.onRequestPermissionsResult(requestCode, permissions, grantResults)
         if (requestCode == PERMISSION_REQUEST_CODE) {
-            if (grantResults.isNotEmpty() && grantResults.all { it == PackageManager.PERMISSION_GRANTED }) {
-                initBaseStationCollector()
-            } else {
-                // 用户拒绝了权限申请，可以在UI上提示
-            }
+            viewModel.refreshPermissions()
         }
     }
     
@@ -121,101 +91,54 @@ class MainActivity : ComponentActivity() {
 }
 
 
-@SuppressLint("CoroutineCreationDuringComposition")
 @Composable
-fun Greeting(name: String, modifier: Modifier = Modifier, activity: MainActivity? = null) {
-    var  dfp = DeviceFingerprintGenerator.getDrmUniqueId()
-    val baseStationList = remember { mutableStateListOf<BaseStationInfo>() }
-    var showPermissionDialog by remember { mutableStateOf(false) }
-    val coroutineScope = rememberCoroutineScope()
-    var baseStationCollector: BaseStationCollector? = null
-    // 添加硬件信息和位置信息状态
-    var hardwareInfo by remember { mutableStateOf("") }
-    var locationInfo by remember { mutableStateOf("") }
-    
-    // 应用启动时自动触发基站信息收集
-    if (activity != null) {
-        if (activity.hasPermissions()) {
-            // 使用LaunchedEffect确保只在首次组合时执行一次
-            androidx.compose.runtime.LaunchedEffect(Unit) {
-                baseStationCollector = activity.getBaseStationCollector()
-                activity.setupBaseStationListener { baseStationInfoList ->
-                    baseStationList.clear()
-                    baseStationList.addAll(baseStationInfoList)
-                }
-                
-                // 收集硬件信息和位置信息
-                val deviceInfoCollector = com.venus735.devicefingerprint.DeviceInfoCollector(activity)
-                hardwareInfo = deviceInfoCollector.collectHardwareInfo()
-                locationInfo = deviceInfoCollector.collectLocationInfo()
-                
-                // 每30秒刷新一次位置信息
-                while (true) {
-                    delay(30000) // 30秒延迟
-                    if (activity.hasPermissions()) {
-                        locationInfo = deviceInfoCollector.collectLocationInfo()
-                    }
-                }
-            }
-        } else {
-            showPermissionDialog = true
-        }
-    }
-    
+fun FingerprintScreen(
+    uiState: FingerprintUiState,
+    onRequestPermissions: () -> Unit,
+    modifier: Modifier = Modifier
+) {
+    var permissionDialogDismissed by rememberSaveable { mutableStateOf(false) }
+
     Column(modifier = modifier) {
-        Text(text = dfp)
-        //     // 点击按钮时也检查权限，如果权限不够则申请
-        //     if (activity != null) {
-        //         if (!activity.hasPermissions()) {
-        //             activity.requestPermissions()
-        //         } else {
-        //             // 更新信息显示
-        //             val deviceInfoCollector = com.venus735.devicefingerprint.DeviceInfoCollector(activity)
-        //             hardwareInfo = deviceInfoCollector.collectHardwareInfo()
-        //             locationInfo = deviceInfoCollector.collectLocationInfo()
-        //         }
-        //     }
-        // }) {
-        //     Text("获取设备指纹")
-        // }
+        Text(text = uiState.drmId ?: "")
         
         // 显示硬件信息
         Text(
-            text = "硬件信息: $hardwareInfo",
+            text = "硬件信息: ${uiState.hardwareInfo}",
             modifier = Modifier.padding(8.dp)
         )
         
         // 显示位置信息
         Text(
-            text = "位置信息: $locationInfo",
+            text = "位置信息: ${uiState.locationInfo}",
             modifier = Modifier.padding(8.dp)
         )
         
-        // 基站信息列表
+        // 基站信息列表，以基站标识为key，刷新时只重组内容变化的条目
         Text(
             text = "基站信息:",
             modifier = Modifier.padding(8.dp)
         )
         LazyColumn(modifier = Modifier.fillMaxWidth()) {
-            items(baseStationList) { baseStation ->
+            items(uiState.cells, key = { it.key }) { cell ->
                 Text(
-                    text = baseStation.getDisplayText(),
+                    text = cell.displayText,
                     modifier = Modifier.padding(8.dp)
                 )
             }
         }
         
         // 权限提示对话框
-        if (showPermissionDialog) {
+        if (!uiState.permissionsGranted && !permissionDialogDismissed) {
             AlertDialog(
-                onDismissRequest = { showPermissionDialog = false },
+                onDismissRequest = { permissionDialogDismissed = true },
                 title = { Text("需要权限") },
                 text = { Text("此功能需要电话权限和位置权限才能获取基站信息") },
                 confirmButton = {
                     TextButton(onClick = { 
-                        showPermissionDialog = false
+                        permissionDialogDismissed = true
                         // 在对话框确认时申请权限
-                        activity?.requestPermissions()
+                        onRequestPermissions()
                     }) {
                         Text("确定")
                     }
@@ -227,8 +150,17 @@ fun Greeting(name: String, modifier: Modifier = Modifier, activity: MainActivity
 
 @Preview(showBackground = true)
 @Composable
-fun GreetingPreview() {
+fun FingerprintScreenPreview() {
     DFPTheme {
-        Greeting("Android")
+        FingerprintScreen(
+            uiState = FingerprintUiState(
+                permissionsGranted = true,
+                drmId = "0123456789abcdef",
+                hardwareInfo = "Device Model: Pixel",
+                locationInfo = "Latitude: 31.23, Longitude: 121.47",
+                cells = listOf(CellItem("1/LTE:460:00:1:1", "LTE\nMCC: 460 MNC: 00\nCID: 1 LAC: 1\nSignal: -90 dBm"))
+            ),
+            onRequestPermissions = {}
+        )
     }
 }
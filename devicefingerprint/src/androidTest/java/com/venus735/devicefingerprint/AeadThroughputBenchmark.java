@@ -0,0 +1,80 @@
+package com.venus735.devicefingerprint;
+
+import static org.junit.Assert.assertTrue;
+
+import android.util.Log;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.security.GeneralSecurityException;
+
+/**
+ * 流式加密吞吐量基准
+ * 把给定大小的负载经 {@link AeadChunkWriter} 加密写入丢弃型通道，测量每秒处理的MB数，
+ * 用于在低端ARM设备上确认批大小和分块大小的配置能否满足采集速率。结果输出到logcat。
+ */
+@RunWith(AndroidJUnit4.class)
+public class AeadThroughputBenchmark {
+    private static final String TAG = "AeadThroughputBenchmark";
+
+    @Test
+    public void throughputByChunkSize() throws IOException, GeneralSecurityException {
+        for (int chunkSize : new int[]{16 * 1024, AeadChunkWriter.DEFAULT_CHUNK_SIZE, 256 * 1024}) {
+            double mbPerSecond = run(4 * 1024 * 1024, chunkSize, 10);
+            Log.i(TAG, String.format("chunkSize=%d: %.1f MB/s", chunkSize, mbPerSecond));
+            assertTrue(mbPerSecond > 0);
+        }
+    }
+
+    /**
+     * @param payloadBytes 每次加密的负载大小
+     * @param chunkSize 分块大小
+     * @param iterations 测量轮数，另有一轮预热不计入结果
+     * @return 吞吐量(MB/s)
+     */
+    static double run(int payloadBytes, int chunkSize, int iterations) throws IOException, GeneralSecurityException {
+        AeadKeyRing keyRing = new AeadKeyRing();
+        keyRing.rotate();
+        DirectBufferPool pool = AeadChunkWriter.newBufferPool(chunkSize, 2);
+        ByteBuffer payload = ByteBuffer.allocateDirect(payloadBytes);
+        for (int i = 0; i < payloadBytes; i++) {
+            payload.put((byte) i);
+        }
+        WritableByteChannel discard = new WritableByteChannel() {
+            @Override
+            public int write(ByteBuffer src) {
+                int n = src.remaining();
+                src.position(src.limit());
+                return n;
+            }
+
+            @Override
+            public boolean isOpen() {
+                return true;
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+
+        long elapsed = 0;
+        for (int i = 0; i <= iterations; i++) {
+            payload.clear();
+            long start = System.nanoTime();
+            try (AeadChunkWriter writer = new AeadChunkWriter(discard, keyRing, pool)) {
+                writer.write(payload);
+            }
+            if (i > 0) {
+                elapsed += System.nanoTime() - start;
+            }
+        }
+        return (double) payloadBytes * iterations / (1024 * 1024) / (elapsed / 1e9);
+    }
+}
@@ -0,0 +1,163 @@
+package com.venus735.devicefingerprint;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import android.content.Context;
+import android.location.Location;
+import android.location.LocationManager;
+import android.os.SystemClock;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+import androidx.work.ListenableWorker;
+import androidx.work.testing.TestListenableWorkerBuilder;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+@RunWith(AndroidJUnit4.class)
+public class CollectionWorkerTest {
+    private Context context;
+    private FakeSink sink;
+
+    @Before
+    public void setUp() {
+        context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        sink = new FakeSink();
+        BackgroundCollection.setBatchSink(sink);
+        BackgroundCollection.setReportedFilter(null);
+        BackgroundCollection.setWindowSource(ignored -> window());
+    }
+
+    @After
+    public void tearDown() {
+        BackgroundCollection.setBatchSink(null);
+        BackgroundCollection.setWindowSource(null);
+    }
+
+    @Test
+    public void deliversWindowToSink() {
+        assertEquals(ListenableWorker.Result.success(), runWorker(0));
+        assertEquals(1, sink.received.size());
+        assertEquals("LTE:460:00:4369:12345", sink.received.get(0).baseStations.get(0).getCellKey());
+    }
+
+    @Test
+    public void windowWaitsForLocationThatArrivesLater() {
+        // 和设备窗口来源一样在任务线程上等待定位，定位在另一个线程上稍后返回
+        LocationCollector.FixRequest delayed = (provider, executor, consumer) -> {
+            Thread thread = new Thread(() -> {
+                SystemClock.sleep(200);
+                Location location = new Location(provider);
+                location.setLatitude(31.2);
+                location.setLongitude(121.4);
+                location.setAccuracy(8);
+                executor.execute(() -> consumer.accept(location));
+            });
+            thread.start();
+            return thread::interrupt;
+        };
+        BackgroundCollection.setWindowSource(context -> BackgroundCollection.collectWindow(
+                new BaseStationCollector(context), new PassiveRadioCollector(context, null),
+                LocationCollector.awaitFix(Collections.singletonList(LocationManager.GPS_PROVIDER), delayed, 5000)));
+        assertEquals(ListenableWorker.Result.success(), runWorker(0));
+        assertEquals(1, sink.received.size());
+        Location location = sink.received.get(0).location;
+        assertNotNull(location);
+        assertEquals(31.2, location.getLatitude(), 0);
+    }
+
+    @Test
+    public void retriesWhenSinkRejects() {
+        sink.accept = false;
+        assertEquals(ListenableWorker.Result.retry(), runWorker(0));
+        assertEquals(1, sink.calls);
+    }
+
+    @Test
+    public void retriesWhenSinkThrows() {
+        sink.failure = new IllegalStateException("upload failed");
+        assertEquals(ListenableWorker.Result.retry(), runWorker(0));
+    }
+
+    @Test
+    public void failsAfterMaxAttempts() {
+        sink.accept = false;
+        assertEquals(ListenableWorker.Result.failure(),
+                runWorker(BackgroundCollection.MAX_PERIODIC_RUN_ATTEMPTS - 1));
+        sink.failure = new IllegalStateException("upload failed");
+        assertEquals(ListenableWorker.Result.failure(),
+                runWorker(BackgroundCollection.MAX_PERIODIC_RUN_ATTEMPTS - 1));
+    }
+
+    @Test
+    public void emptyWindowSkipsSink() {
+        BackgroundCollection.setWindowSource(ignored -> new CollectionBatch());
+        assertEquals(ListenableWorker.Result.success(), runWorker(0));
+        assertEquals(0, sink.calls);
+    }
+
+    @Test
+    public void reportedFilterSkipsDeliveredCells() {
+        // 不关联文件的过滤器，保存失败只记录日志
+        ReportedCellFilter filter = new ReportedCellFilter();
+        BackgroundCollection.setReportedFilter(filter);
+        try {
+            assertEquals(ListenableWorker.Result.success(), runWorker(0));
+            assertEquals(ListenableWorker.Result.success(), runWorker(0));
+            assertEquals(1, sink.calls);
+            assertTrue(filter.mightContain("LTE:460:00:4369:12345"));
+        } finally {
+            BackgroundCollection.setReportedFilter(null);
+        }
+    }
+
+    private ListenableWorker.Result runWorker(int runAttemptCount) {
+        CollectionWorker worker = TestListenableWorkerBuilder.from(context, CollectionWorker.class)
+                .setRunAttemptCount(runAttemptCount)
+                .build();
+        return worker.doWork();
+    }
+
+    private static CollectionBatch window() {
+        BaseStationCollector.BaseStationInfo info = new BaseStationCollector.BaseStationInfo();
+        info.type = "LTE";
+        info.mcc = "460";
+        info.mnc = "00";
+        info.lac = 0x1111;
+        info.cid = 12345;
+        info.signalStrength = -95;
+        info.timestamp = System.currentTimeMillis();
+        CollectionBatch batch = new CollectionBatch();
+        batch.timestamp = info.timestamp;
+        batch.baseStations.add(info);
+        return batch;
+    }
+
+    private static class FakeSink implements CollectionBatchSink {
+        final List<CollectionBatch> received = new ArrayList<>();
+        boolean accept = true;
+        RuntimeException failure;
+        int calls;
+
+        @Override
+        public boolean onBatchesCollected(List<CollectionBatch> batches) {
+            calls++;
+            if (failure != null) {
+                throw failure;
+            }
+            if (accept) {
+                received.addAll(batches);
+            }
+            return accept;
+        }
+    }
+}
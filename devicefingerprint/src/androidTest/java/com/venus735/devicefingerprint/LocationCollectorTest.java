@@ -0,0 +1,67 @@
+package com.venus735.devicefingerprint;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import android.location.Location;
+import android.location.LocationManager;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+@RunWith(AndroidJUnit4.class)
+public class LocationCollectorTest {
+    private static final List<String> PROVIDERS = Arrays.asList(LocationManager.GPS_PROVIDER, LocationManager.NETWORK_PROVIDER);
+
+    @Test
+    public void picksMostAccurateFix() {
+        Map<String, Location> fixes = new HashMap<>();
+        fixes.put(LocationManager.GPS_PROVIDER, fix(LocationManager.GPS_PROVIDER, 5));
+        fixes.put(LocationManager.NETWORK_PROVIDER, fix(LocationManager.NETWORK_PROVIDER, 300));
+        Location location = LocationCollector.awaitFix(PROVIDERS, (provider, executor, consumer) -> {
+            executor.execute(() -> consumer.accept(fixes.get(provider)));
+            return () -> {
+            };
+        }, 1000);
+        assertEquals(LocationManager.GPS_PROVIDER, location.getProvider());
+    }
+
+    @Test
+    public void timeoutReturnsAvailableFixAndCancelsPendingRequests() {
+        AtomicInteger cancelled = new AtomicInteger();
+        Location location = LocationCollector.awaitFix(PROVIDERS, (provider, executor, consumer) -> {
+            if (LocationManager.NETWORK_PROVIDER.equals(provider)) {
+                executor.execute(() -> consumer.accept(fix(provider, 300)));
+            }
+            // GPS一直没有结果
+            return cancelled::incrementAndGet;
+        }, 200);
+        assertEquals(LocationManager.NETWORK_PROVIDER, location.getProvider());
+        assertEquals(2, cancelled.get());
+    }
+
+    @Test
+    public void failedRequestsReturnNull() {
+        assertNull(LocationCollector.awaitFix(PROVIDERS, (provider, executor, consumer) -> {
+            executor.execute(() -> consumer.accept(null));
+            return () -> {
+            };
+        }, 1000));
+    }
+
+    private static Location fix(String provider, float accuracy) {
+        Location location = new Location(provider);
+        location.setLatitude(31.2);
+        location.setLongitude(121.4);
+        location.setAccuracy(accuracy);
+        return location;
+    }
+}
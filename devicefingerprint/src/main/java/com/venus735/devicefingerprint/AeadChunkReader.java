@@ -0,0 +1,119 @@
+package com.venus735.devicefingerprint;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.security.GeneralSecurityException;
+
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+
+/**
+ * 解密 {@link AeadChunkWriter} 写出的数据流
+ * 逐块读取并校验，明文放在池化的直接缓冲区中；在读到带最后一块标志的分块之前遇到流结束视为被截断。
+ */
+public class AeadChunkReader implements Closeable {
+    private final ReadableByteChannel channel;
+    private final DirectBufferPool pool;
+    private final Cipher cipher;
+    private final SecretKey key;
+    private final byte[] header;
+    private final byte[] nonce = new byte[12];
+    private final int chunkSize;
+    private final int keyId;
+    private ByteBuffer plaintext;
+    private ByteBuffer ciphertext;
+    private long chunkIndex;
+    private boolean finished;
+
+    /**
+     * @param channel 输入通道，关闭本对象时不会关闭该通道
+     * @param keyRing 密钥环，按头部的密钥ID选择密钥
+     * @param pool 缓冲区池，分块大小需不小于写入时的分块大小
+     */
+    public AeadChunkReader(ReadableByteChannel channel, AeadKeyRing keyRing, DirectBufferPool pool)
+            throws IOException, GeneralSecurityException {
+        this.channel = channel;
+        this.pool = pool;
+        ByteBuffer headerBuffer = ByteBuffer.allocate(AeadChunkWriter.HEADER_SIZE);
+        readFully(headerBuffer);
+        headerBuffer.flip();
+        if (headerBuffer.getInt() != AeadChunkWriter.MAGIC || headerBuffer.get() != AeadChunkWriter.VERSION) {
+            throw new IOException("不支持的加密格式");
+        }
+        this.keyId = headerBuffer.getInt();
+        headerBuffer.get(nonce, 0, AeadChunkWriter.NONCE_PREFIX_SIZE);
+        this.chunkSize = headerBuffer.getInt();
+        if (chunkSize <= 0 || chunkSize + AeadChunkWriter.FRAME_OVERHEAD > pool.getBufferSize()) {
+            throw new IOException("分块大小 " + chunkSize + " 超出缓冲区池容量");
+        }
+        this.header = headerBuffer.array();
+        this.key = keyRing.getKey(keyId);
+        this.cipher = Cipher.getInstance("AES/GCM/NoPadding");
+        this.plaintext = pool.acquire();
+        this.ciphertext = pool.acquire();
+    }
+
+    public int getKeyId() {
+        return keyId;
+    }
+
+    /**
+     * 解密下一块
+     * @return 明文缓冲区(position为0，limit为明文长度)，在下一次调用前有效；读完最后一块后返回null
+     */
+    public ByteBuffer nextChunk() throws IOException {
+        if (finished) {
+            return null;
+        }
+        if (plaintext == null) {
+            throw new IOException("已关闭");
+        }
+        ciphertext.clear();
+        ciphertext.limit(4);
+        readFully(ciphertext);
+        int frame = ciphertext.getInt(0);
+        boolean last = (frame & AeadChunkWriter.LAST_CHUNK_FLAG) != 0;
+        int length = frame & ~AeadChunkWriter.LAST_CHUNK_FLAG;
+        if (length < AeadChunkWriter.TAG_SIZE || length > chunkSize + AeadChunkWriter.TAG_SIZE) {
+            throw new IOException("分块长度错误: " + length);
+        }
+        ciphertext.clear();
+        ciphertext.limit(length);
+        readFully(ciphertext);
+        ciphertext.flip();
+
+        AeadChunkWriter.setNonce(nonce, chunkIndex, last);
+        plaintext.clear();
+        try {
+            cipher.init(Cipher.DECRYPT_MODE, key, new GCMParameterSpec(AeadChunkWriter.TAG_SIZE * 8, nonce));
+            cipher.updateAAD(header);
+            cipher.doFinal(ciphertext, plaintext);
+        } catch (GeneralSecurityException e) {
+            throw new IOException("分块 " + chunkIndex + " 校验失败", e);
+        }
+        plaintext.flip();
+        chunkIndex++;
+        finished = last;
+        return plaintext;
+    }
+
+    @Override
+    public void close() {
+        pool.release(plaintext);
+        pool.release(ciphertext);
+        plaintext = null;
+        ciphertext = null;
+    }
+
+    private void readFully(ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer) < 0) {
+                throw new EOFException("加密数据被截断");
+            }
+        }
+    }
+}
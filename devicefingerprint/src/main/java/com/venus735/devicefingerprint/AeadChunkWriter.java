@@ -0,0 +1,174 @@
+package com.venus735.devicefingerprint;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+
+/**
+ * 分块流式AES-GCM加密
+ * 序列化器通过 {@link ByteSink} 直接写入池化的直接缓冲区，写满一块后原地加密到另一块直接缓冲区，
+ * 再写入磁盘队列或网络通道，整个过程不产生完整负载的额外拷贝，内存占用只有两个分块。
+ * <pre>
+ * 头部:   magic(4) version(1) keyId(4) noncePrefix(7) chunkSize(4)
+ * 每一块: length(4，最高位表示最后一块) ciphertext+tag(length)
+ * </pre>
+ * 每块的nonce为 noncePrefix(7) + 块序号(4) + 最后一块标志(1)，头部作为附加认证数据，
+ * 因此分块被重排、截断或替换密钥ID都会导致解密失败。
+ */
+public class AeadChunkWriter implements ByteSink, Closeable {
+    static final int MAGIC = 0x44465045; // "DFPE"
+    static final byte VERSION = 1;
+    static final int NONCE_PREFIX_SIZE = 7;
+    static final int HEADER_SIZE = 4 + 1 + 4 + NONCE_PREFIX_SIZE + 4;
+    static final int TAG_SIZE = 16;
+    static final int FRAME_OVERHEAD = 4 + TAG_SIZE;
+    static final int LAST_CHUNK_FLAG = 0x80000000;
+    public static final int DEFAULT_CHUNK_SIZE = 64 * 1024;
+
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    private final WritableByteChannel channel;
+    private final DirectBufferPool pool;
+    private final int chunkSize;
+    private final Cipher cipher;
+    private final SecretKey key;
+    private final byte[] header;
+    private final byte[] nonce = new byte[12];
+    private ByteBuffer plaintext;
+    private ByteBuffer ciphertext;
+    private long chunkIndex;
+    private boolean closed;
+
+    /**
+     * 创建一个适用于本类的缓冲区池，每个缓冲区可容纳一块密文及其帧头
+     */
+    public static DirectBufferPool newBufferPool(int chunkSize, int maxPooled) {
+        return new DirectBufferPool(chunkSize + FRAME_OVERHEAD, maxPooled);
+    }
+
+    /**
+     * @param channel 输出通道，关闭本对象时不会关闭该通道
+     * @param keyRing 密钥环，使用其当前密钥加密
+     * @param pool 缓冲区池，由 {@link #newBufferPool} 创建
+     */
+    public AeadChunkWriter(WritableByteChannel channel, AeadKeyRing keyRing, DirectBufferPool pool)
+            throws IOException, GeneralSecurityException {
+        this.channel = channel;
+        this.pool = pool;
+        this.chunkSize = pool.getBufferSize() - FRAME_OVERHEAD;
+        if (chunkSize <= 0) {
+            throw new IllegalArgumentException("缓冲区太小: " + pool.getBufferSize());
+        }
+        int keyId = keyRing.getActiveKeyId();
+        this.key = keyRing.getKey(keyId);
+        this.cipher = Cipher.getInstance("AES/GCM/NoPadding");
+
+        byte[] noncePrefix = new byte[NONCE_PREFIX_SIZE];
+        RANDOM.nextBytes(noncePrefix);
+        System.arraycopy(noncePrefix, 0, nonce, 0, NONCE_PREFIX_SIZE);
+        ByteBuffer headerBuffer = ByteBuffer.allocate(HEADER_SIZE);
+        headerBuffer.putInt(MAGIC).put(VERSION).putInt(keyId).put(noncePrefix).putInt(chunkSize);
+        this.header = headerBuffer.array();
+
+        this.plaintext = pool.acquire();
+        this.plaintext.limit(chunkSize);
+        this.ciphertext = pool.acquire();
+        writeFully(ByteBuffer.wrap(header));
+    }
+
+    @Override
+    public ByteBuffer ensureRemaining(int n) throws IOException {
+        if (closed) {
+            throw new IOException("已关闭");
+        }
+        if (n > chunkSize) {
+            throw new IllegalArgumentException("单次申请超过分块大小: " + n);
+        }
+        if (plaintext.remaining() < n) {
+            flushChunk(false);
+        }
+        return plaintext;
+    }
+
+    @Override
+    public int maxReservation() {
+        return chunkSize;
+    }
+
+    /**
+     * 写入任意长度的明文
+     */
+    public void write(ByteBuffer src) throws IOException {
+        while (src.hasRemaining()) {
+            ByteBuffer target = ensureRemaining(1);
+            int length = Math.min(target.remaining(), src.remaining());
+            ByteBuffer slice = src.duplicate();
+            slice.limit(slice.position() + length);
+            target.put(slice);
+            src.position(src.position() + length);
+        }
+    }
+
+    /**
+     * 加密剩余明文并写入最后一块，缓冲区归还到池中
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        try {
+            flushChunk(true);
+        } finally {
+            closed = true;
+            pool.release(plaintext);
+            pool.release(ciphertext);
+            plaintext = null;
+            ciphertext = null;
+        }
+    }
+
+    private void flushChunk(boolean last) throws IOException {
+        if (chunkIndex > 0xFFFFFFFFL) {
+            throw new IOException("分块数超过上限");
+        }
+        setNonce(nonce, chunkIndex, last);
+        plaintext.flip();
+        ciphertext.clear();
+        ciphertext.position(4);
+        try {
+            cipher.init(Cipher.ENCRYPT_MODE, key, new GCMParameterSpec(TAG_SIZE * 8, nonce));
+            cipher.updateAAD(header);
+            int length = cipher.doFinal(plaintext, ciphertext);
+            ciphertext.putInt(0, last ? length | LAST_CHUNK_FLAG : length);
+        } catch (GeneralSecurityException e) {
+            throw new IOException("加密失败", e);
+        }
+        ciphertext.flip();
+        writeFully(ciphertext);
+        plaintext.clear();
+        plaintext.limit(chunkSize);
+        chunkIndex++;
+    }
+
+    private void writeFully(ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    static void setNonce(byte[] nonce, long chunkIndex, boolean last) {
+        nonce[NONCE_PREFIX_SIZE] = (byte) (chunkIndex >>> 24);
+        nonce[NONCE_PREFIX_SIZE + 1] = (byte) (chunkIndex >>> 16);
+        nonce[NONCE_PREFIX_SIZE + 2] = (byte) (chunkIndex >>> 8);
+        nonce[NONCE_PREFIX_SIZE + 3] = (byte) chunkIndex;
+        nonce[NONCE_PREFIX_SIZE + 4] = (byte) (last ? 1 : 0);
+    }
+}
@@ -0,0 +1,77 @@
+package com.venus735.devicefingerprint;
+
+import java.security.GeneralSecurityException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.crypto.KeyGenerator;
+import javax.crypto.SecretKey;
+
+/**
+ * 加密密钥环，支持密钥轮换
+ * 新数据总是用当前密钥加密，密钥ID写在密文头部；轮换后旧密钥仍可解密已落盘的数据，
+ * 确认旧数据都已上传后再 {@link #retire} 旧密钥。
+ * 使用Android Keystore中的AES密钥时，需要设置 setRandomizedEncryptionRequired(false)，因为nonce由本库生成。
+ */
+public class AeadKeyRing {
+    private final Map<Integer, SecretKey> keys = new ConcurrentHashMap<>();
+    private volatile int activeKeyId = -1;
+
+    /**
+     * 添加密钥并设为当前密钥
+     * @return 新密钥的ID
+     */
+    public synchronized int rotate(SecretKey key) {
+        int keyId = activeKeyId + 1;
+        while (keys.containsKey(keyId)) {
+            keyId++;
+        }
+        keys.put(keyId, key);
+        activeKeyId = keyId;
+        return keyId;
+    }
+
+    /**
+     * 生成一个新的256位AES密钥并设为当前密钥
+     */
+    public int rotate() throws GeneralSecurityException {
+        KeyGenerator generator = KeyGenerator.getInstance("AES");
+        generator.init(256);
+        return rotate(generator.generateKey());
+    }
+
+    /**
+     * 以指定ID添加密钥，例如从安全存储中恢复；不改变当前密钥
+     */
+    public synchronized void put(int keyId, SecretKey key) {
+        keys.put(keyId, key);
+        if (activeKeyId < 0) {
+            activeKeyId = keyId;
+        }
+    }
+
+    /**
+     * 删除不再需要的旧密钥，不能删除当前密钥
+     */
+    public synchronized void retire(int keyId) {
+        if (keyId == activeKeyId) {
+            throw new IllegalStateException("不能删除当前密钥: " + keyId);
+        }
+        keys.remove(keyId);
+    }
+
+    public int getActiveKeyId() {
+        if (activeKeyId < 0) {
+            throw new IllegalStateException("密钥环为空");
+        }
+        return activeKeyId;
+    }
+
+    public SecretKey getKey(int keyId) throws GeneralSecurityException {
+        SecretKey key = keys.get(keyId);
+        if (key == null) {
+            throw new GeneralSecurityException("未知的密钥ID: " + keyId);
+        }
+        return key;
+    }
+}
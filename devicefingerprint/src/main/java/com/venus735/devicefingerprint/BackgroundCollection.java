@@ -0,0 +1,233 @@
+package com.venus735.devicefingerprint;
+
+import android.content.Context;
+import android.content.Intent;
+import android.location.Location;
+import android.util.Log;
+
+import androidx.annotation.VisibleForTesting;
+import androidx.core.content.ContextCompat;
+import androidx.work.Constraints;
+import androidx.work.ExistingPeriodicWorkPolicy;
+import androidx.work.PeriodicWorkRequest;
+import androidx.work.WorkManager;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 后台采集入口
+ * 周期采集使用WorkManager，不依赖Activity存活，并且遵守Doze；
+ * 需要连续采集时可启动前台服务，基站读取跟随定位回调，共用同一次唤醒。
+ * 采集结果通过 {@link CollectionBatchSink} 批量交给存储/上传层，连续采集时还会交付压缩后的定位轨迹，
+ * 由于进程可能被系统重建，应在 Application.onCreate 中调用 {@link #setBatchSink}。
+ * 设置 {@link ReportedCellFilter} 后，时间窗口内已经上报过的基站和Wi-Fi/BLE信号源不会再交给接收方。
+ */
+public final class BackgroundCollection {
+    private static final String TAG = "BackgroundCollection";
+    static final String PERIODIC_WORK_NAME = "dfp_periodic_collection";
+    public static final long DEFAULT_PERIODIC_INTERVAL_MINUTES = 15; // WorkManager允许的最小周期
+    public static final long DEFAULT_CONTINUOUS_INTERVAL_MS = 60000;  // 前台服务默认1分钟一个窗口
+    public static final int DEFAULT_CONTINUOUS_BATCH_SIZE = 10;       // 前台服务默认攒10个窗口提交一次
+    public static final int MAX_PERIODIC_RUN_ATTEMPTS = 5;            // 周期任务连续提交失败达到次数后放弃本次窗口
+    static final long WINDOW_LOCATION_TIMEOUT_MS = 30000;             // 周期任务等待新定位的最长时间
+
+    /**
+     * 周期任务中一个采集窗口的来源，测试时可以替换为固定数据
+     */
+    interface WindowSource {
+        CollectionBatch collect(Context context);
+    }
+
+    /**
+     * 后台任务没有持续的定位监听，系统缓存的定位通常已经过期，因此在任务线程上等待一次新定位
+     */
+    private static final WindowSource DEVICE_WINDOW_SOURCE = context -> collectWindow(
+            new BaseStationCollector(context), new PassiveRadioCollector(context),
+            new LocationCollector(context).awaitCurrentLocation(WINDOW_LOCATION_TIMEOUT_MS));
+
+    private static volatile CollectionBatchSink batchSink;
+    private static volatile ReportedCellFilter reportedFilter;
+    private static volatile WindowSource windowSource = DEVICE_WINDOW_SOURCE;
+
+    private BackgroundCollection() {
+    }
+
+    /**
+     * 设置采集结果接收方
+     * @param sink 接收方，传null表示丢弃采集结果
+     */
+    public static void setBatchSink(CollectionBatchSink sink) {
+        batchSink = sink;
+    }
+
+    /**
+     * 设置"已上报"过滤器
+     * @param filter 过滤器，通常为 {@link ReportedCellFilter#open}；传null表示不过滤
+     */
+    public static void setReportedFilter(ReportedCellFilter filter) {
+        reportedFilter = filter;
+    }
+
+    /**
+     * 启动周期采集
+     * flex窗口设为周期的一半，让系统把本任务和其它任务合并到同一次唤醒中执行
+     * @param context 上下文
+     * @param intervalMinutes 周期(分钟)，小于15分钟时按15分钟处理
+     */
+    public static void schedulePeriodic(Context context, long intervalMinutes) {
+        long intervalMs = TimeUnit.MINUTES.toMillis(Math.max(intervalMinutes, DEFAULT_PERIODIC_INTERVAL_MINUTES));
+        long flexMs = Math.max(PeriodicWorkRequest.MIN_PERIODIC_FLEX_MILLIS, intervalMs / 2);
+        Constraints constraints = new Constraints.Builder()
+                .setRequiresBatteryNotLow(true)
+                .build();
+        PeriodicWorkRequest request = new PeriodicWorkRequest.Builder(
+                CollectionWorker.class, intervalMs, TimeUnit.MILLISECONDS, flexMs, TimeUnit.MILLISECONDS)
+                .setConstraints(constraints)
+                .build();
+        WorkManager.getInstance(context)
+                .enqueueUniquePeriodicWork(PERIODIC_WORK_NAME, ExistingPeriodicWorkPolicy.UPDATE, request);
+        Log.d(TAG, "周期采集已调度，周期 " + intervalMs + "ms");
+    }
+
+    /**
+     * 取消周期采集
+     */
+    public static void cancelPeriodic(Context context) {
+        WorkManager.getInstance(context).cancelUniqueWork(PERIODIC_WORK_NAME);
+        Log.d(TAG, "周期采集已取消");
+    }
+
+    /**
+     * 启动连续采集前台服务
+     * 调用前需要已获得定位权限
+     * @param context 上下文
+     * @param intervalMs 采集窗口间隔(毫秒)
+     * @param batchSize 攒够多少个窗口后提交一次
+     */
+    public static void startContinuous(Context context, long intervalMs, int batchSize) {
+        Intent intent = new Intent(context, CollectionForegroundService.class)
+                .putExtra(CollectionForegroundService.EXTRA_INTERVAL_MS, intervalMs)
+                .putExtra(CollectionForegroundService.EXTRA_BATCH_SIZE, batchSize);
+        ContextCompat.startForegroundService(context, intent);
+    }
+
+    public static void startContinuous(Context context) {
+        startContinuous(context, DEFAULT_CONTINUOUS_INTERVAL_MS, DEFAULT_CONTINUOUS_BATCH_SIZE);
+    }
+
+    /**
+     * 停止连续采集前台服务，未提交的窗口会在服务销毁时提交
+     */
+    public static void stopContinuous(Context context) {
+        context.stopService(new Intent(context, CollectionForegroundService.class));
+    }
+
+    /**
+     * 替换周期任务的窗口来源
+     * @param source 窗口来源，传null恢复为从设备读取
+     */
+    @VisibleForTesting
+    static void setWindowSource(WindowSource source) {
+        windowSource = source != null ? source : DEVICE_WINDOW_SOURCE;
+    }
+
+    /**
+     * 周期任务采集一个窗口
+     */
+    static CollectionBatch collectWindow(Context context) {
+        return windowSource.collect(context);
+    }
+
+    /**
+     * 在当前唤醒窗口内读取一次基站信息和被动Wi-Fi/BLE信号，并与给定的定位结果组成一个窗口
+     * @param baseStationCollector 基站收集器
+     * @param radioCollector 被动信号收集器
+     * @param location 同一窗口内的定位结果，可以为空
+     */
+    static CollectionBatch collectWindow(BaseStationCollector baseStationCollector,
+                                         PassiveRadioCollector radioCollector, Location location) {
+        CollectionBatch batch = new CollectionBatch();
+        batch.timestamp = System.currentTimeMillis();
+        batch.baseStations = baseStationCollector.collectOnce();
+        batch.beacons = radioCollector.drainBeacons();
+        batch.location = location;
+        return batch;
+    }
+
+    /**
+     * 把一组窗口交给接收方
+     * @return 接收方是否处理成功；没有接收方时视为成功，避免无意义的重试
+     */
+    static boolean deliver(List<CollectionBatch> batches) {
+        CollectionBatchSink sink = batchSink;
+        if (sink == null) {
+            Log.w(TAG, "未设置CollectionBatchSink，丢弃 " + batches.size() + " 个采集窗口");
+            return true;
+        }
+        ReportedCellFilter filter = reportedFilter;
+        if (filter == null) {
+            return sink.onBatchesCollected(batches);
+        }
+
+        List<CollectionBatch> unreported = filterReported(filter, batches);
+        if (unreported.isEmpty()) {
+            return true;
+        }
+        if (!sink.onBatchesCollected(unreported)) {
+            return false;
+        }
+        // 接收方处理成功后才记为已上报，失败重试时不会被过滤掉
+        for (CollectionBatch batch : unreported) {
+            for (BaseStationCollector.BaseStationInfo info : batch.baseStations) {
+                filter.put(info.getCellKey());
+            }
+            for (PassiveRadioCollector.RadioBeaconInfo info : batch.beacons) {
+                filter.put(info.getBeaconKey());
+            }
+        }
+        try {
+            filter.save();
+        } catch (IOException | IllegalStateException e) {
+            Log.w(TAG, "保存已上报过滤器失败", e);
+        }
+        return true;
+    }
+
+    /**
+     * 把连续采集的压缩轨迹交给接收方
+     * @return 接收方是否处理成功；没有接收方时视为成功
+     */
+    static boolean deliverTrajectory(CompressedTrajectory trajectory) {
+        CollectionBatchSink sink = batchSink;
+        return sink == null || sink.onTrajectoryCollected(trajectory);
+    }
+
+    /**
+     * 去掉已上报过的基站和信号源，所有内容都为空的窗口整个丢弃
+     */
+    private static List<CollectionBatch> filterReported(ReportedCellFilter filter, List<CollectionBatch> batches) {
+        List<CollectionBatch> unreported = new ArrayList<>(batches.size());
+        for (CollectionBatch batch : batches) {
+            CollectionBatch copy = new CollectionBatch();
+            copy.timestamp = batch.timestamp;
+            copy.location = batch.location;
+            for (BaseStationCollector.BaseStationInfo info : batch.baseStations) {
+                if (!filter.mightContain(info.getCellKey())) {
+                    copy.baseStations.add(info);
+                }
+            }
+            for (PassiveRadioCollector.RadioBeaconInfo info : batch.beacons) {
+                if (!filter.mightContain(info.getBeaconKey())) {
+                    copy.beacons.add(info);
+                }
+            }
+            if (!copy.isEmpty()) {
+                unreported.add(copy);
+            }
+        }
+        return unreported;
+    }
+}
@@ -13,37 +13,79 @@ import android.telephony.CellInfoGsm;
 import android.telephony.CellInfoLte;
 import android.telephony.CellInfoNr;
 import android.telephony.CellInfoWcdma;
+import android.telephony.CellSignalStrengthLte;
+import android.telephony.CellSignalStrengthNr;
+import android.telephony.SubscriptionInfo;
+import android.telephony.SubscriptionManager;
 import android.telephony.TelephonyManager;
 import android.util.Log;
 
 import androidx.core.app.ActivityCompat;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Consumer;
 
 /**
  * 基站信息收集类
  * 用于在应用启动后持续收集基站信息
+ * 多卡设备上按订阅(SIM卡)分别读取，结果标注订阅ID和运营商。
+ * getAllCellInfo 即使在 createForSubscriptionId 得到的实例上也会返回所有modem的基站，
+ * 因此多卡时对每个订阅调用只读取该订阅的 requestCellInfoUpdate，同时发出请求并等待全部回调。
+ * 少数设备的请求结果仍然包含其它卡的基站，多个订阅报告同一个基站时按MCC/MNC归属到对应的卡。
  */
 public class BaseStationCollector {
     private static final String TAG = "BaseStationCollector";
     private static final long COLLECTION_INTERVAL = 30000; // 30秒收集一次
+    static final long CELL_INFO_TIMEOUT_MS = 5000; // 等待各订阅返回基站信息的最长时间
+    // 接收各订阅基站信息回调的线程池，空闲线程60秒后自动回收
+    private static final ExecutorService SUBSCRIPTION_EXECUTOR = Executors.newCachedThreadPool();
 
     private Context context;
     private TelephonyManager telephonyManager;
+    private SubscriptionManager subscriptionManager;
     private ScheduledExecutorService scheduler;
     private BaseStationListener listener;
+    // 订阅ID -> 该订阅的TelephonyManager，随SIM卡插拔动态更新
+    private final Map<Integer, SubscriptionTarget> subscriptionTargets = new ConcurrentHashMap<>();
+    private volatile boolean subscriptionsLoaded;
+    private volatile boolean listeningForSubscriptions;
+    private final SubscriptionManager.OnSubscriptionsChangedListener subscriptionsChangedListener =
+            new SubscriptionManager.OnSubscriptionsChangedListener() {
+                @Override
+                public void onSubscriptionsChanged() {
+                    refreshSubscriptions();
+                }
+            };
 
     public interface BaseStationListener {
         void onBaseStationInfoCollected(List<BaseStationInfo> baseStationInfoList);
     }
 
+    /**
+     * 异步读取单个订阅的基站信息，测试时可以替换
+     */
+    interface CellRequest {
+        /**
+         * @param consumer 在任意线程上回调一次，读取失败时结果为null
+         */
+        void request(SubscriptionTarget target, Consumer<List<BaseStationInfo>> consumer);
+    }
+
     public BaseStationCollector(Context context) {
         this.context = context.getApplicationContext();
         this.telephonyManager = (TelephonyManager) context.getSystemService(Context.TELEPHONY_SERVICE);
+        this.subscriptionManager = (SubscriptionManager) context.getSystemService(Context.TELEPHONY_SUBSCRIPTION_SERVICE);
     }
 
     /**
@@ -52,6 +94,10 @@ public class BaseStationCollector {
     public void startCollecting() {
         if (scheduler == null || scheduler.isShutdown()) {
             scheduler = Executors.newSingleThreadScheduledExecutor();
+            if (subscriptionManager != null) {
+                subscriptionManager.addOnSubscriptionsChangedListener(scheduler, subscriptionsChangedListener);
+                listeningForSubscriptions = true;
+            }
             scheduler.scheduleWithFixedDelay(this::collectBaseStationInfo, 0, COLLECTION_INTERVAL, TimeUnit.MILLISECONDS);
             Log.d(TAG, "基站信息收集已启动");
         }
@@ -62,6 +108,10 @@ public class BaseStationCollector {
      */
     public void stopCollecting() {
         if (scheduler != null && !scheduler.isShutdown()) {
+            if (subscriptionManager != null) {
+                subscriptionManager.removeOnSubscriptionsChangedListener(subscriptionsChangedListener);
+                listeningForSubscriptions = false;
+            }
             scheduler.shutdown();
             Log.d(TAG, "基站信息收集已停止");
         }
@@ -76,28 +126,195 @@ public class BaseStationCollector {
     }
 
     /**
-     * 收集基站信息
+     * 在调用线程上同步读取一次基站信息，不经过内部调度器
+     * 供后台采集（WorkManager / 前台服务）在同一个唤醒窗口内与定位一起读取
+     * @return 基站信息列表，无权限或无数据时返回空列表
      */
-    private void collectBaseStationInfo() {
+    public List<BaseStationInfo> collectOnce() {
+        List<BaseStationInfo> baseStationInfoList = new ArrayList<>();
+        if (ActivityCompat.checkSelfPermission(context, Manifest.permission.READ_PHONE_STATE) != PackageManager.PERMISSION_GRANTED) {
+            Log.w(TAG, "缺少读取手机状态权限，无法收集基站信息");
+            return baseStationInfoList;
+        }
+
+        // 未注册订阅变化监听时(例如只调用collectOnce的后台任务)每次读取前刷新订阅列表
+        if (!subscriptionsLoaded || !listeningForSubscriptions) {
+            refreshSubscriptions();
+        }
+        List<SubscriptionTarget> targets = new ArrayList<>(subscriptionTargets.values());
+        if (targets.isEmpty()) {
+            // 无SIM卡或无法获取订阅列表时退回默认TelephonyManager
+            SubscriptionTarget fallback = new SubscriptionTarget(SubscriptionManager.INVALID_SUBSCRIPTION_ID, null,
+                    null, null, telephonyManager);
+            baseStationInfoList.addAll(tag(fallback, extractAll(telephonyManager.getAllCellInfo())));
+        } else {
+            // 按订阅ID排序，多个订阅都无法归属的基站固定交给ID最小的订阅
+            targets.sort((a, b) -> Integer.compare(a.subscriptionId, b.subscriptionId));
+            baseStationInfoList.addAll(collectSubscriptions(targets, this::requestCells, CELL_INFO_TIMEOUT_MS));
+        }
+
+        if (baseStationInfoList.isEmpty()) {
+            Log.d(TAG, "未获取到基站信息");
+        }
+        return baseStationInfoList;
+    }
+
+    /**
+     * 同时向所有订阅请求基站信息，等待全部返回或超时，超时未返回的订阅本次没有数据
+     * @param targets 按订阅ID排序的订阅
+     * @return 标注了订阅ID和运营商的基站信息列表
+     */
+    static List<BaseStationInfo> collectSubscriptions(List<SubscriptionTarget> targets, CellRequest request, long timeoutMs) {
+        AtomicReferenceArray<List<BaseStationInfo>> results = new AtomicReferenceArray<>(targets.size());
+        CountDownLatch pending = new CountDownLatch(targets.size());
+        for (int i = 0; i < targets.size(); i++) {
+            int index = i;
+            request.request(targets.get(i), cells -> {
+                results.set(index, cells);
+                pending.countDown();
+            });
+        }
         try {
-            if (ActivityCompat.checkSelfPermission(context, Manifest.permission.READ_PHONE_STATE) != PackageManager.PERMISSION_GRANTED) {
-                Log.w(TAG, "缺少读取手机状态权限，无法收集基站信息");
-                return;
+            if (!pending.await(timeoutMs, TimeUnit.MILLISECONDS)) {
+                Log.w(TAG, pending.getCount() + " 个订阅在 " + timeoutMs + "ms 内没有返回基站信息");
             }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        List<List<BaseStationInfo>> cellsPerTarget = new ArrayList<>(targets.size());
+        for (int i = 0; i < targets.size(); i++) {
+            List<BaseStationInfo> cells = results.get(i);
+            cellsPerTarget.add(cells != null ? cells : Collections.emptyList());
+        }
+        return attribute(targets, cellsPerTarget);
+    }
 
-            List<CellInfo> cellInfoList = telephonyManager.getAllCellInfo();
-            if (cellInfoList == null || cellInfoList.isEmpty()) {
-                Log.d(TAG, "未获取到基站信息");
-                return;
+    /**
+     * 把各订阅读到的基站标注到订阅上
+     * 只有一个订阅报告的基站直接归属该订阅；多个订阅报告同一个基站时，归属MCC/MNC与基站一致的订阅
+     * (同一运营商的两张卡都保留)，都不一致时只保留在第一个报告它的订阅上
+     */
+    static List<BaseStationInfo> attribute(List<SubscriptionTarget> targets, List<List<BaseStationInfo>> cellsPerTarget) {
+        Map<String, List<Integer>> reporters = new HashMap<>();
+        for (int i = 0; i < targets.size(); i++) {
+            for (BaseStationInfo info : cellsPerTarget.get(i)) {
+                List<Integer> indexes = reporters.computeIfAbsent(info.getCellKey(), key -> new ArrayList<>());
+                if (indexes.isEmpty() || indexes.get(indexes.size() - 1) != i) {
+                    indexes.add(i);
+                }
+            }
+        }
+
+        List<BaseStationInfo> baseStationInfoList = new ArrayList<>();
+        for (int i = 0; i < targets.size(); i++) {
+            SubscriptionTarget target = targets.get(i);
+            List<BaseStationInfo> attributed = new ArrayList<>();
+            for (BaseStationInfo info : cellsPerTarget.get(i)) {
+                List<Integer> indexes = reporters.get(info.getCellKey());
+                boolean keep;
+                if (indexes.size() == 1) {
+                    keep = true;
+                } else {
+                    boolean anyMatches = false;
+                    for (int index : indexes) {
+                        anyMatches |= targets.get(index).servesNetworkOf(info);
+                    }
+                    keep = anyMatches ? target.servesNetworkOf(info) : indexes.get(0) == i;
+                }
+                if (keep) {
+                    attributed.add(info);
+                }
+            }
+            baseStationInfoList.addAll(tag(target, attributed));
+        }
+        return baseStationInfoList;
+    }
+
+    private static List<BaseStationInfo> tag(SubscriptionTarget target, List<BaseStationInfo> baseStationInfoList) {
+        for (BaseStationInfo info : baseStationInfoList) {
+            info.subscriptionId = target.subscriptionId;
+            info.carrierName = target.carrierName;
+        }
+        return baseStationInfoList;
+    }
+
+    /**
+     * 请求单个订阅的最新基站信息，只包含该订阅所在modem的基站
+     */
+    private void requestCells(SubscriptionTarget target, Consumer<List<BaseStationInfo>> consumer) {
+        try {
+            target.telephonyManager.requestCellInfoUpdate(SUBSCRIPTION_EXECUTOR, new TelephonyManager.CellInfoCallback() {
+                @Override
+                public void onCellInfo(List<CellInfo> cellInfo) {
+                    consumer.accept(extractAll(cellInfo));
+                }
+
+                @Override
+                public void onError(int errorCode, Throwable detail) {
+                    Log.w(TAG, "订阅 " + target.subscriptionId + " 读取基站信息失败: " + errorCode, detail);
+                    consumer.accept(null);
+                }
+            });
+        } catch (SecurityException | IllegalStateException e) {
+            Log.w(TAG, "订阅 " + target.subscriptionId + " 无法请求基站信息", e);
+            consumer.accept(null);
+        }
+    }
+
+    private List<BaseStationInfo> extractAll(List<CellInfo> cellInfoList) {
+        List<BaseStationInfo> baseStationInfoList = new ArrayList<>();
+        if (cellInfoList == null) {
+            return baseStationInfoList;
+        }
+        for (CellInfo cellInfo : cellInfoList) {
+            BaseStationInfo info = extractBaseStationInfo(cellInfo);
+            if (info != null) {
+                baseStationInfoList.add(info);
             }
+        }
+        return baseStationInfoList;
+    }
 
-            List<BaseStationInfo> baseStationInfoList = new ArrayList<>();
-            for (CellInfo cellInfo : cellInfoList) {
-                BaseStationInfo info = extractBaseStationInfo(cellInfo);
-                if (info != null) {
-                    baseStationInfoList.add(info);
+    /**
+     * 重新加载当前有效的订阅列表
+     * SIM卡插入或拔出时由系统回调触发
+     */
+    private void refreshSubscriptions() {
+        if (subscriptionManager == null
+                || ActivityCompat.checkSelfPermission(context, Manifest.permission.READ_PHONE_STATE) != PackageManager.PERMISSION_GRANTED) {
+            return;
+        }
+        try {
+            List<SubscriptionInfo> subscriptions = subscriptionManager.getActiveSubscriptionInfoList();
+            Map<Integer, SubscriptionTarget> latest = new ConcurrentHashMap<>();
+            if (subscriptions != null) {
+                for (SubscriptionInfo subscription : subscriptions) {
+                    int subscriptionId = subscription.getSubscriptionId();
+                    CharSequence carrierName = subscription.getCarrierName();
+                    latest.put(subscriptionId, new SubscriptionTarget(subscriptionId,
+                            carrierName != null ? carrierName.toString() : null,
+                            subscription.getMccString(), subscription.getMncString(),
+                            telephonyManager.createForSubscriptionId(subscriptionId)));
                 }
             }
+            subscriptionTargets.keySet().retainAll(latest.keySet());
+            subscriptionTargets.putAll(latest);
+            subscriptionsLoaded = true;
+            Log.d(TAG, "当前有效订阅数: " + subscriptionTargets.size());
+        } catch (SecurityException e) {
+            Log.w(TAG, "无法获取订阅列表", e);
+        }
+    }
+
+    /**
+     * 收集基站信息
+     */
+    private void collectBaseStationInfo() {
+        try {
+            List<BaseStationInfo> baseStationInfoList = collectOnce();
+            if (baseStationInfoList.isEmpty()) {
+                return;
+            }
 
             // 回调监听器
             if (listener != null) {
@@ -137,7 +354,12 @@ public class BaseStationCollector {
             info.mnc = lte.getCellIdentity().getMncString();
             info.cid = lte.getCellIdentity().getCi();
             info.lac = lte.getCellIdentity().getTac();
-            info.signalStrength = lte.getCellSignalStrength().getDbm();
+            CellSignalStrengthLte signal = lte.getCellSignalStrength();
+            info.signalStrength = signal.getDbm();
+            info.rsrp = signal.getRsrp();
+            info.rsrq = signal.getRsrq();
+            info.sinr = signal.getRssnr();
+            info.timingAdvance = signal.getTimingAdvance();
         } else if (cellInfo instanceof CellInfoWcdma) {
             CellInfoWcdma wcdma = (CellInfoWcdma) cellInfo;
             info.type = "WCDMA";
@@ -164,7 +386,14 @@ public class BaseStationCollector {
             info.mnc = cellIdentityNr.getMncString();
             info.cid = cellIdentityNr.getNci();
             info.lac = cellIdentityNr.getTac();
-            info.signalStrength = nr.getCellSignalStrength().getDbm();
+            CellSignalStrengthNr signal = (CellSignalStrengthNr) nr.getCellSignalStrength();
+            info.signalStrength = signal.getDbm();
+            info.rsrp = signal.getSsRsrp();
+            info.rsrq = signal.getSsRsrq();
+            info.sinr = signal.getSsSinr();
+            if (android.os.Build.VERSION.SDK_INT >= android.os.Build.VERSION_CODES.UPSIDE_DOWN_CAKE) {
+                info.timingAdvance = signal.getTimingAdvanceMicros();
+            }
         } 
         else {
             return null;
@@ -173,6 +402,33 @@ public class BaseStationCollector {
         return info;
     }
 
+    /**
+     * 单个订阅对应的TelephonyManager
+     */
+    static class SubscriptionTarget {
+        final int subscriptionId;
+        final String carrierName;
+        final String mcc;
+        final String mnc;
+        final TelephonyManager telephonyManager;
+
+        SubscriptionTarget(int subscriptionId, String carrierName, String mcc, String mnc,
+                           TelephonyManager telephonyManager) {
+            this.subscriptionId = subscriptionId;
+            this.carrierName = carrierName;
+            this.mcc = mcc;
+            this.mnc = mnc;
+            this.telephonyManager = telephonyManager;
+        }
+
+        /**
+         * 基站是否属于该订阅的运营商网络
+         */
+        boolean servesNetworkOf(BaseStationInfo info) {
+            return mcc != null && mnc != null && mcc.equals(info.mcc) && mnc.equals(info.mnc);
+        }
+    }
+
     /**
      * 基站信息数据类
      */
@@ -184,6 +440,13 @@ public class BaseStationCollector {
         public int lac;               // 位置区域码
         public int signalStrength;    // 信号强度 (dBm)
         public long timestamp;        // 时间戳
+        public int subscriptionId = SubscriptionManager.INVALID_SUBSCRIPTION_ID; // 订阅ID (来自哪张SIM卡)
+        public String carrierName;    // 订阅所属运营商名称
+        // 以下仅LTE/NR提供，无法获取时为 CellInfo.UNAVAILABLE
+        public int rsrp = CellInfo.UNAVAILABLE;          // 参考信号接收功率 (dBm)，NR为SS-RSRP
+        public int rsrq = CellInfo.UNAVAILABLE;          // 参考信号接收质量 (dB)，NR为SS-RSRQ
+        public int sinr = CellInfo.UNAVAILABLE;          // 信噪比 (dB)，LTE为RSSNR，NR为SS-SINR
+        public int timingAdvance = CellInfo.UNAVAILABLE; // 定时提前量，LTE为TA单位，NR为微秒
 
         @Override
         public String toString() {
@@ -195,13 +458,38 @@ public class BaseStationCollector {
                     ", lac=" + lac +
                     ", signalStrength=" + signalStrength +
                     ", timestamp=" + timestamp +
+                    ", subscriptionId=" + subscriptionId +
+                    ", carrierName='" + carrierName + '\'' +
+                    ", rsrp=" + rsrp +
+                    ", rsrq=" + rsrq +
+                    ", sinr=" + sinr +
+                    ", timingAdvance=" + timingAdvance +
                     '}';
         }
         
+        /**
+         * 基站标识，不含信号强度和时间戳，同一个基站多次扫描得到相同的key
+         * @return 形如 "LTE:460:00:tac:ci" 的字符串
+         */
+        public String getCellKey() {
+            return type + ":" + mcc + ":" + mnc + ":" + lac + ":" + cid;
+        }
+
+        /**
+         * 来源SIM卡的显示名称；无SIM卡或无法获取订阅列表时读取的是默认TelephonyManager，显示为"Default"
+         */
+        public String getSimLabel() {
+            if (subscriptionId == SubscriptionManager.INVALID_SUBSCRIPTION_ID) {
+                return "Default";
+            }
+            return "SIM " + subscriptionId + " " + (carrierName != null ? carrierName : "N/A");
+        }
+
         // 添加获取显示文本的方法
         public String getDisplayText() {
-            return String.format("%s\nMCC: %s MNC: %s\nCID: %d LAC: %d\nSignal: %d dBm",
+            return String.format("%s (%s)\nMCC: %s MNC: %s\nCID: %d LAC: %d\nSignal: %d dBm",
                     type != null ? type : "Unknown",
+                    getSimLabel(),
                     mcc != null ? mcc : "N/A",
                     mnc != null ? mnc : "N/A",
                     cid,
@@ -0,0 +1,103 @@
+package com.venus735.devicefingerprint;
+
+import android.content.Context;
+
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.util.Locale;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * BSSID/蓝牙地址的带密钥哈希
+ * 使用HMAC-SHA256，密钥不随代码分发：没有密钥时无法用已知BSSID的字典反查出原始地址。
+ * 默认每个安装生成一个随机密钥，保存在不参与备份的应用私有目录，同一设备上的信号源可以跨采集窗口关联；
+ * 需要在后端跨设备关联同一信号源时，由接入方通过 {@link #BeaconIdHasher(byte[])} 传入整个部署共用的密钥。
+ * 输出取HMAC的前8字节，在单个部署的信号源数量下碰撞可以忽略。
+ */
+public class BeaconIdHasher {
+    public static final int MIN_KEY_BYTES = 16;
+    private static final int INSTALL_KEY_BYTES = 32;
+    private static final int HASH_BYTES = 8;
+    private static final String KEY_FILE = "dfp_radio_hmac.key";
+    private static final String ALGORITHM = "HmacSHA256";
+
+    private static BeaconIdHasher installHasher;
+
+    private final SecretKeySpec key;
+
+    /**
+     * @param key 部署密钥，至少16字节
+     */
+    public BeaconIdHasher(byte[] key) {
+        if (key == null || key.length < MIN_KEY_BYTES) {
+            throw new IllegalArgumentException("密钥至少需要" + MIN_KEY_BYTES + "字节");
+        }
+        this.key = new SecretKeySpec(key.clone(), ALGORITHM);
+    }
+
+    /**
+     * 使用本安装的随机密钥，首次调用时生成并保存
+     * @param context 上下文
+     */
+    public static synchronized BeaconIdHasher forInstall(Context context) throws IOException {
+        if (installHasher == null) {
+            installHasher = new BeaconIdHasher(loadOrCreateKey(new File(context.getNoBackupFilesDir(), KEY_FILE)));
+        }
+        return installHasher;
+    }
+
+    /**
+     * 读取密钥文件，不存在时生成随机密钥并通过临时文件替换写入
+     */
+    static byte[] loadOrCreateKey(File keyFile) throws IOException {
+        if (keyFile.exists()) {
+            if (keyFile.length() != INSTALL_KEY_BYTES) {
+                throw new IOException("密钥文件大小不符: " + keyFile.length());
+            }
+            byte[] key = new byte[INSTALL_KEY_BYTES];
+            try (DataInputStream in = new DataInputStream(new FileInputStream(keyFile))) {
+                in.readFully(key);
+            }
+            return key;
+        }
+        byte[] key = new byte[INSTALL_KEY_BYTES];
+        new SecureRandom().nextBytes(key);
+        File tmp = new File(keyFile.getPath() + ".tmp");
+        try (FileOutputStream out = new FileOutputStream(tmp)) {
+            out.write(key);
+            out.getFD().sync();
+        }
+        if (!tmp.renameTo(keyFile)) {
+            throw new IOException("无法写入密钥文件: " + keyFile);
+        }
+        return key;
+    }
+
+    /**
+     * 地址不区分大小写，返回16个字符的16进制字符串
+     */
+    public String hash(String address) {
+        byte[] mac;
+        try {
+            // Mac不是线程安全的，每次新建
+            Mac hmac = Mac.getInstance(ALGORITHM);
+            hmac.init(key);
+            mac = hmac.doFinal(address.toLowerCase(Locale.ROOT).getBytes(StandardCharsets.UTF_8));
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
+        StringBuilder sb = new StringBuilder(HASH_BYTES * 2);
+        for (int i = 0; i < HASH_BYTES; i++) {
+            sb.append(String.format("%02x", mac[i]));
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,21 @@
+package com.venus735.devicefingerprint;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * 序列化输出目标
+ * 序列化器直接写入目标提供的缓冲区，不经过中间的字节数组
+ */
+public interface ByteSink {
+    /**
+     * 返回至少有n字节剩余空间的缓冲区，调用方随后直接put
+     * @param n 需要的字节数，不超过 {@link #maxReservation()}
+     */
+    ByteBuffer ensureRemaining(int n) throws IOException;
+
+    /**
+     * 一次 {@link #ensureRemaining} 最多可以申请的字节数
+     */
+    int maxReservation();
+}
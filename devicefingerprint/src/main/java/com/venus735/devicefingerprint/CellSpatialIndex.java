@@ -0,0 +1,411 @@
+package com.venus735.devicefingerprint;
+
+import android.location.Location;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * 基站观测点空间索引
+ * 把定位结果和同一窗口内观测到的基站配对成点，按经纬度网格分桶(类似固定精度的geohash)，
+ * 支持最近点、半径范围、矩形范围查询，用于回答"设备以前是否在这个基站附近出现过"。
+ * 查询只访问覆盖查询范围的网格，不需要线性扫描历史。
+ */
+public class CellSpatialIndex {
+    private static final int SERIAL_MAGIC = 0x44465349; // "DFSI"
+    private static final int SERIAL_VERSION = 1;
+    private static final double EARTH_RADIUS_M = 6371008.8;
+    private static final double METERS_PER_DEGREE = Math.PI * EARTH_RADIUS_M / 180;
+    public static final double DEFAULT_BUCKET_DEGREES = 0.01; // 约1.1km
+
+    private final double bucketDegrees;
+    private final Map<Long, List<Entry>> buckets = new HashMap<>();
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private int size;
+
+    public CellSpatialIndex(double bucketDegrees) {
+        if (!(bucketDegrees > 0 && bucketDegrees <= 1)) {
+            throw new IllegalArgumentException("bucketDegrees超出范围: " + bucketDegrees);
+        }
+        this.bucketDegrees = bucketDegrees;
+    }
+
+    public CellSpatialIndex() {
+        this(DEFAULT_BUCKET_DEGREES);
+    }
+
+    /**
+     * 索引中的一个点：某个基站在某个位置被观测到
+     */
+    public static class Entry {
+        public final double latitude;
+        public final double longitude;
+        public final String cellKey;  // BaseStationInfo.getCellKey()
+        public final long timestamp;
+
+        public Entry(double latitude, double longitude, String cellKey, long timestamp) {
+            this.latitude = latitude;
+            this.longitude = longitude;
+            this.cellKey = cellKey;
+            this.timestamp = timestamp;
+        }
+
+        @Override
+        public String toString() {
+            return "Entry{" +
+                    "latitude=" + latitude +
+                    ", longitude=" + longitude +
+                    ", cellKey='" + cellKey + '\'' +
+                    ", timestamp=" + timestamp +
+                    '}';
+        }
+    }
+
+    /**
+     * 插入一个采集窗口：窗口内的每个基站与该窗口的定位结果配对，没有定位结果时忽略
+     */
+    public void insert(CollectionBatch batch) {
+        if (batch.location != null) {
+            insert(batch.location, batch.baseStations);
+        }
+    }
+
+    public void insert(Location location, List<BaseStationCollector.BaseStationInfo> baseStations) {
+        lock.writeLock().lock();
+        try {
+            for (BaseStationCollector.BaseStationInfo info : baseStations) {
+                insertLocked(new Entry(location.getLatitude(), location.getLongitude(), info.getCellKey(), info.timestamp));
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void insert(Entry entry) {
+        lock.writeLock().lock();
+        try {
+            insertLocked(entry);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 清空后批量重建，例如从持久化的历史中恢复
+     */
+    public void rebuild(Collection<Entry> entries) {
+        lock.writeLock().lock();
+        try {
+            buckets.clear();
+            size = 0;
+            for (Entry entry : entries) {
+                insertLocked(entry);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return size;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 查询离给定位置最近的点
+     * 从所在网格开始逐圈向外搜索，当前圈的最小可能距离超过已找到的最近距离时停止
+     * @return 最近的点，索引为空时返回null
+     */
+    public Entry nearest(double latitude, double longitude) {
+        lock.readLock().lock();
+        try {
+            if (size == 0) {
+                return null;
+            }
+            long centerLat = latIndex(latitude);
+            long centerLon = lonIndex(longitude);
+            Entry best = null;
+            double bestDistance = Double.MAX_VALUE;
+            for (long ring = 0; ; ring++) {
+                // 经度方向的网格宽度随纬度变窄，按这一圈能达到的最高纬度估计最小距离
+                double cos = Math.cos(Math.toRadians(Math.min(Math.abs(latitude) + (ring + 1) * bucketDegrees, 90)));
+                if (best != null && (ring - 1) * bucketDegrees * METERS_PER_DEGREE * cos > bestDistance) {
+                    break;
+                }
+                if ((2 * ring + 1) * (2 * ring + 1) > buckets.size()) {
+                    // 要访问的网格数已超过已有网格数，剩下的直接遍历所有网格
+                    for (List<Entry> bucket : buckets.values()) {
+                        for (Entry entry : bucket) {
+                            double distance = distanceMeters(latitude, longitude, entry.latitude, entry.longitude);
+                            if (distance < bestDistance) {
+                                bestDistance = distance;
+                                best = entry;
+                            }
+                        }
+                    }
+                    break;
+                }
+                for (long dLat = -ring; dLat <= ring; dLat++) {
+                    for (long dLon = -ring; dLon <= ring; dLon++) {
+                        if (Math.abs(dLat) != ring && Math.abs(dLon) != ring) {
+                            continue; // 只访问当前圈的边界网格
+                        }
+                        List<Entry> bucket = buckets.get(bucketKey(centerLat + dLat, centerLon + dLon));
+                        if (bucket == null) {
+                            continue;
+                        }
+                        for (Entry entry : bucket) {
+                            double distance = distanceMeters(latitude, longitude, entry.latitude, entry.longitude);
+                            if (distance < bestDistance) {
+                                bestDistance = distance;
+                                best = entry;
+                            }
+                        }
+                    }
+                }
+            }
+            return best;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 查询距离给定位置不超过radiusMeters的所有点
+     */
+    public List<Entry> withinRadius(double latitude, double longitude, double radiusMeters) {
+        double latDelta = radiusMeters / METERS_PER_DEGREE;
+        double cos = Math.cos(Math.toRadians(Math.min(Math.abs(latitude) + latDelta, 90)));
+        double lonDelta = cos > 1e-6 ? Math.min(radiusMeters / (METERS_PER_DEGREE * cos), 180) : 180;
+        List<Entry> result = new ArrayList<>();
+        lock.readLock().lock();
+        try {
+            scan(latitude - latDelta, longitude - lonDelta, latitude + latDelta, longitude + lonDelta, entry -> {
+                if (distanceMeters(latitude, longitude, entry.latitude, entry.longitude) <= radiusMeters) {
+                    result.add(entry);
+                }
+            });
+        } finally {
+            lock.readLock().unlock();
+        }
+        return result;
+    }
+
+    /**
+     * 查询矩形范围内的所有点
+     */
+    public List<Entry> withinBoundingBox(double minLatitude, double minLongitude, double maxLatitude, double maxLongitude) {
+        List<Entry> result = new ArrayList<>();
+        lock.readLock().lock();
+        try {
+            scan(minLatitude, minLongitude, maxLatitude, maxLongitude, entry -> {
+                if (entry.latitude >= minLatitude && entry.latitude <= maxLatitude
+                        && entry.longitude >= minLongitude && entry.longitude <= maxLongitude) {
+                    result.add(entry);
+                }
+            });
+        } finally {
+            lock.readLock().unlock();
+        }
+        return result;
+    }
+
+    /**
+     * 设备以前是否在给定位置附近观测到过这个基站
+     */
+    public boolean hasObservedNear(String cellKey, double latitude, double longitude, double radiusMeters) {
+        for (Entry entry : withinRadius(latitude, longitude, radiusMeters)) {
+            if (entry.cellKey.equals(cellKey)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 序列化为紧凑格式：基站key去重为字符串表，坐标存为微度整数，时间戳按时间排序后存差值变长整数
+     */
+    public void writeTo(OutputStream output) throws IOException {
+        List<Entry> entries = new ArrayList<>();
+        lock.readLock().lock();
+        try {
+            for (List<Entry> bucket : buckets.values()) {
+                entries.addAll(bucket);
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        Collections.sort(entries, (a, b) -> Long.compare(a.timestamp, b.timestamp));
+
+        Map<String, Integer> keyTable = new HashMap<>();
+        List<String> keys = new ArrayList<>();
+        for (Entry entry : entries) {
+            if (!keyTable.containsKey(entry.cellKey)) {
+                keyTable.put(entry.cellKey, keys.size());
+                keys.add(entry.cellKey);
+            }
+        }
+
+        DataOutputStream out = new DataOutputStream(output);
+        out.writeInt(SERIAL_MAGIC);
+        out.writeInt(SERIAL_VERSION);
+        out.writeDouble(bucketDegrees);
+        writeVarLong(out, keys.size());
+        for (String key : keys) {
+            out.writeUTF(key);
+        }
+        writeVarLong(out, entries.size());
+        long previousTime = 0;
+        for (Entry entry : entries) {
+            writeVarLong(out, keyTable.get(entry.cellKey));
+            out.writeInt((int) Math.round(entry.latitude * 1e6));
+            out.writeInt((int) Math.round(entry.longitude * 1e6));
+            writeVarLong(out, entry.timestamp - previousTime);
+            previousTime = entry.timestamp;
+        }
+        out.flush();
+    }
+
+    /**
+     * 读取 {@link #writeTo} 的输出，数据损坏(计数、下标或坐标越界)时抛出IOException
+     */
+    public static CellSpatialIndex readFrom(InputStream input) throws IOException {
+        DataInputStream in = new DataInputStream(input);
+        if (in.readInt() != SERIAL_MAGIC || in.readInt() != SERIAL_VERSION) {
+            throw new IOException("不支持的空间索引格式");
+        }
+        double bucketDegrees = in.readDouble();
+        if (!(bucketDegrees > 0 && bucketDegrees <= 1)) {
+            throw new IOException("网格大小超出范围: " + bucketDegrees);
+        }
+        CellSpatialIndex index = new CellSpatialIndex(bucketDegrees);
+        long keyCount = readVarLong(in);
+        if (keyCount < 0 || keyCount > Integer.MAX_VALUE) {
+            throw new IOException("基站key数量超出范围: " + keyCount);
+        }
+        // 计数来自数据本身，不按它预分配
+        List<String> keys = new ArrayList<>();
+        for (long i = 0; i < keyCount; i++) {
+            keys.add(in.readUTF());
+        }
+        long entryCount = readVarLong(in);
+        if (entryCount < 0) {
+            throw new IOException("点数量超出范围: " + entryCount);
+        }
+        long time = 0;
+        for (long i = 0; i < entryCount; i++) {
+            long keyIndex = readVarLong(in);
+            if (keyIndex < 0 || keyIndex >= keys.size()) {
+                throw new IOException("基站key下标越界: " + keyIndex);
+            }
+            int latitudeE6 = in.readInt();
+            int longitudeE6 = in.readInt();
+            if (Math.abs(latitudeE6) > 90_000_000 || Math.abs(longitudeE6) > 180_000_000) {
+                throw new IOException("坐标超出范围: " + latitudeE6 + "," + longitudeE6);
+            }
+            time += readVarLong(in);
+            index.insertLocked(new Entry(latitudeE6 / 1e6, longitudeE6 / 1e6, keys.get((int) keyIndex), time));
+        }
+        return index;
+    }
+
+    private void insertLocked(Entry entry) {
+        long key = bucketKey(latIndex(entry.latitude), lonIndex(entry.longitude));
+        List<Entry> bucket = buckets.get(key);
+        if (bucket == null) {
+            bucket = new ArrayList<>(4);
+            buckets.put(key, bucket);
+        }
+        bucket.add(entry);
+        size++;
+    }
+
+    private interface EntryVisitor {
+        void visit(Entry entry);
+    }
+
+    /**
+     * 遍历覆盖矩形范围的所有网格；网格数超过已有网格数时直接遍历已有网格
+     */
+    private void scan(double minLatitude, double minLongitude, double maxLatitude, double maxLongitude, EntryVisitor visitor) {
+        long minLat = latIndex(minLatitude);
+        long maxLat = latIndex(maxLatitude);
+        long minLon = lonIndex(minLongitude);
+        long maxLon = lonIndex(maxLongitude);
+        if ((maxLat - minLat + 1) * (maxLon - minLon + 1) > buckets.size()) {
+            for (List<Entry> bucket : buckets.values()) {
+                for (Entry entry : bucket) {
+                    visitor.visit(entry);
+                }
+            }
+            return;
+        }
+        for (long lat = minLat; lat <= maxLat; lat++) {
+            for (long lon = minLon; lon <= maxLon; lon++) {
+                List<Entry> bucket = buckets.get(bucketKey(lat, lon));
+                if (bucket != null) {
+                    for (Entry entry : bucket) {
+                        visitor.visit(entry);
+                    }
+                }
+            }
+        }
+    }
+
+    private long latIndex(double latitude) {
+        return (long) Math.floor((latitude + 90) / bucketDegrees);
+    }
+
+    private long lonIndex(double longitude) {
+        return (long) Math.floor((longitude + 180) / bucketDegrees);
+    }
+
+    private static long bucketKey(long latIndex, long lonIndex) {
+        return (latIndex << 32) | (lonIndex & 0xffffffffL);
+    }
+
+    /**
+     * 两点间的大圆距离(米)
+     */
+    public static double distanceMeters(double lat1, double lon1, double lat2, double lon2) {
+        double dLat = Math.toRadians(lat2 - lat1);
+        double dLon = Math.toRadians(lon2 - lon1);
+        double a = Math.sin(dLat / 2) * Math.sin(dLat / 2)
+                + Math.cos(Math.toRadians(lat1)) * Math.cos(Math.toRadians(lat2)) * Math.sin(dLon / 2) * Math.sin(dLon / 2);
+        return 2 * EARTH_RADIUS_M * Math.asin(Math.min(1, Math.sqrt(a)));
+    }
+
+    private static void writeVarLong(DataOutputStream out, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.writeByte((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.writeByte((int) value);
+    }
+
+    private static long readVarLong(DataInputStream in) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = in.readUnsignedByte();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("变长整数格式错误");
+    }
+}
@@ -0,0 +1,31 @@
+package com.venus735.devicefingerprint;
+
+import android.location.Location;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 一个唤醒窗口内采集到的数据
+ * 同一窗口内的基站信息和定位结果共用一次唤醒，一起交给存储/上传层
+ */
+public class CollectionBatch {
+    public long timestamp;                                                           // 窗口开始时间
+    public List<BaseStationCollector.BaseStationInfo> baseStations = new ArrayList<>(); // 基站信息
+    public Location location;                                                        // 定位结果，可能为空
+    public List<PassiveRadioCollector.RadioBeaconInfo> beacons = new ArrayList<>();   // 被动Wi-Fi/BLE信号源
+
+    public boolean isEmpty() {
+        return baseStations.isEmpty() && beacons.isEmpty() && location == null;
+    }
+
+    @Override
+    public String toString() {
+        return "CollectionBatch{" +
+                "timestamp=" + timestamp +
+                ", baseStations=" + baseStations.size() +
+                ", beacons=" + beacons.size() +
+                ", location=" + (location != null ? location.getLatitude() + "," + location.getLongitude() : "null") +
+                '}';
+    }
+}
@@ -0,0 +1,246 @@
+package com.venus735.devicefingerprint;
+
+import android.location.Location;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 采集窗口的二进制序列化
+ * 直接写入 {@link ByteSink} 提供的缓冲区，可以接 {@link AeadChunkWriter} 边序列化边加密。
+ * <pre>
+ * magic(4) version(1) deviceId(str) batchCount(varint)
+ * 每个窗口: timestamp(8) hasLocation(1) [latitude(8) longitude(8) accuracy(4) time(8)] cellCount(varint)
+ * 每个基站: type(str) mcc(str) mnc(str) cid(8) lac(4) signalStrength(4) timestamp(8) subscriptionId(4) carrierName(str)
+ *          [rsrp(4) rsrq(4) sinr(4) timingAdvance(4)]  (版本3起)
+ * beaconCount(varint)  (版本2起)
+ * 每个信号源: type(str) hashedId(str) rssi(4) frequency(4) timestamp(8)
+ * str: varint(字节数+1，0表示null) + UTF-8
+ * </pre>
+ */
+public final class CollectionBatchCodec {
+    public static final int MAGIC = 0x44465042; // "DFPB"
+    public static final byte VERSION = 3;
+
+    private CollectionBatchCodec() {
+    }
+
+    /**
+     * 解码结果
+     */
+    public static class Payload {
+        public String deviceId;
+        public List<CollectionBatch> batches = new ArrayList<>();
+    }
+
+    /**
+     * 序列化到目标
+     * @param deviceId 设备指纹，例如DRM ID
+     */
+    public static void encode(String deviceId, List<CollectionBatch> batches, ByteSink sink) throws IOException {
+        sink.ensureRemaining(5).putInt(MAGIC).put(VERSION);
+        writeString(sink, deviceId);
+        writeVarInt(sink, batches.size());
+        for (CollectionBatch batch : batches) {
+            ByteBuffer buffer = sink.ensureRemaining(8 + 1 + 28);
+            buffer.putLong(batch.timestamp);
+            Location location = batch.location;
+            if (location != null) {
+                buffer.put((byte) 1)
+                        .putDouble(location.getLatitude())
+                        .putDouble(location.getLongitude())
+                        .putFloat(location.getAccuracy())
+                        .putLong(location.getTime());
+            } else {
+                buffer.put((byte) 0);
+            }
+            writeVarInt(sink, batch.baseStations.size());
+            for (BaseStationCollector.BaseStationInfo info : batch.baseStations) {
+                writeString(sink, info.type);
+                writeString(sink, info.mcc);
+                writeString(sink, info.mnc);
+                sink.ensureRemaining(28)
+                        .putLong(info.cid)
+                        .putInt(info.lac)
+                        .putInt(info.signalStrength)
+                        .putLong(info.timestamp)
+                        .putInt(info.subscriptionId);
+                writeString(sink, info.carrierName);
+                sink.ensureRemaining(16)
+                        .putInt(info.rsrp)
+                        .putInt(info.rsrq)
+                        .putInt(info.sinr)
+                        .putInt(info.timingAdvance);
+            }
+            writeVarInt(sink, batch.beacons.size());
+            for (PassiveRadioCollector.RadioBeaconInfo beacon : batch.beacons) {
+                writeString(sink, beacon.type);
+                writeString(sink, beacon.hashedId);
+                sink.ensureRemaining(16)
+                        .putInt(beacon.rssi)
+                        .putInt(beacon.frequency)
+                        .putLong(beacon.timestamp);
+            }
+        }
+    }
+
+    /**
+     * 序列化到堆内存缓冲区
+     * @return position为0、limit为数据长度的缓冲区
+     */
+    public static ByteBuffer encode(String deviceId, List<CollectionBatch> batches) throws IOException {
+        HeapByteSink sink = new HeapByteSink(256 + batches.size() * 256);
+        encode(deviceId, batches, sink);
+        ByteBuffer buffer = sink.buffer;
+        buffer.flip();
+        return buffer;
+    }
+
+    /**
+     * 从完整的数据中解码
+     */
+    public static Payload decode(ByteBuffer buffer) throws IOException {
+        try {
+            if (buffer.getInt() != MAGIC) {
+                throw new IOException("不支持的数据格式");
+            }
+            byte version = buffer.get();
+            if (version < 1 || version > VERSION) {
+                throw new IOException("不支持的数据版本: " + version);
+            }
+            Payload payload = new Payload();
+            payload.deviceId = readString(buffer);
+            int batchCount = readVarInt(buffer);
+            for (int i = 0; i < batchCount; i++) {
+                CollectionBatch batch = new CollectionBatch();
+                batch.timestamp = buffer.getLong();
+                if (buffer.get() != 0) {
+                    Location location = new Location("dfp");
+                    location.setLatitude(buffer.getDouble());
+                    location.setLongitude(buffer.getDouble());
+                    location.setAccuracy(buffer.getFloat());
+                    location.setTime(buffer.getLong());
+                    batch.location = location;
+                }
+                int cellCount = readVarInt(buffer);
+                for (int j = 0; j < cellCount; j++) {
+                    BaseStationCollector.BaseStationInfo info = new BaseStationCollector.BaseStationInfo();
+                    info.type = readString(buffer);
+                    info.mcc = readString(buffer);
+                    info.mnc = readString(buffer);
+                    info.cid = buffer.getLong();
+                    info.lac = buffer.getInt();
+                    info.signalStrength = buffer.getInt();
+                    info.timestamp = buffer.getLong();
+                    info.subscriptionId = buffer.getInt();
+                    info.carrierName = readString(buffer);
+                    if (version >= 3) {
+                        info.rsrp = buffer.getInt();
+                        info.rsrq = buffer.getInt();
+                        info.sinr = buffer.getInt();
+                        info.timingAdvance = buffer.getInt();
+                    }
+                    batch.baseStations.add(info);
+                }
+                int beaconCount = version >= 2 ? readVarInt(buffer) : 0;
+                for (int j = 0; j < beaconCount; j++) {
+                    PassiveRadioCollector.RadioBeaconInfo beacon = new PassiveRadioCollector.RadioBeaconInfo();
+                    beacon.type = readString(buffer);
+                    beacon.hashedId = readString(buffer);
+                    beacon.rssi = buffer.getInt();
+                    beacon.frequency = buffer.getInt();
+                    beacon.timestamp = buffer.getLong();
+                    batch.beacons.add(beacon);
+                }
+                payload.batches.add(batch);
+            }
+            return payload;
+        } catch (RuntimeException e) {
+            // BufferUnderflowException等，说明数据不完整
+            throw new IOException("数据格式错误", e);
+        }
+    }
+
+    private static void writeString(ByteSink sink, String value) throws IOException {
+        if (value == null) {
+            writeVarInt(sink, 0);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        writeVarInt(sink, bytes.length + 1);
+        int offset = 0;
+        while (offset < bytes.length) {
+            ByteBuffer buffer = sink.ensureRemaining(1);
+            int length = Math.min(buffer.remaining(), bytes.length - offset);
+            buffer.put(bytes, offset, length);
+            offset += length;
+        }
+    }
+
+    private static String readString(ByteBuffer buffer) throws IOException {
+        int length = readVarInt(buffer);
+        if (length == 0) {
+            return null;
+        }
+        if (length - 1 > buffer.remaining()) {
+            throw new IOException("字符串长度超出数据范围");
+        }
+        byte[] bytes = new byte[length - 1];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void writeVarInt(ByteSink sink, int value) throws IOException {
+        ByteBuffer buffer = sink.ensureRemaining(5);
+        while ((value & ~0x7F) != 0) {
+            buffer.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte) value);
+    }
+
+    private static int readVarInt(ByteBuffer buffer) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            byte b = buffer.get();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                if (value < 0) {
+                    throw new IOException("长度超出范围");
+                }
+                return value;
+            }
+        }
+        throw new IOException("变长整数格式错误");
+    }
+
+    /**
+     * 自动扩容的堆内存输出
+     */
+    private static class HeapByteSink implements ByteSink {
+        ByteBuffer buffer;
+
+        HeapByteSink(int initialCapacity) {
+            buffer = ByteBuffer.allocate(initialCapacity);
+        }
+
+        @Override
+        public ByteBuffer ensureRemaining(int n) {
+            if (buffer.remaining() < n) {
+                ByteBuffer larger = ByteBuffer.allocate(Math.max(buffer.capacity() * 2, buffer.position() + n));
+                buffer.flip();
+                larger.put(buffer);
+                buffer = larger;
+            }
+            return buffer;
+        }
+
+        @Override
+        public int maxReservation() {
+            return Integer.MAX_VALUE / 2;
+        }
+    }
+}
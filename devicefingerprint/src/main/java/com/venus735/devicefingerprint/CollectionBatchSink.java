@@ -0,0 +1,27 @@
+package com.venus735.devicefingerprint;
+
+import java.util.List;
+
+/**
+ * 后台采集结果的接收方（存储/上传层）
+ * 回调在采集线程上执行，实现方可以直接做磁盘或网络IO
+ */
+public interface CollectionBatchSink {
+    /**
+     * @param batches 按时间顺序排列的一组采集窗口
+     * @return true表示已经持久化或上传成功；false时后台任务会稍后重试
+     */
+    boolean onBatchesCollected(List<CollectionBatch> batches);
+
+    /**
+     * 连续采集期间压缩后的定位轨迹，随每次批量提交一起交付；周期采集不产生轨迹
+     * 任意原始定位时刻的插值位置与原始位置的偏差不超过压缩容差，按时间查询用 {@link CompressedTrajectory#positionAt}，
+     * 持久化用 {@link CompressedTrajectory#toByteArray}。默认实现丢弃轨迹。
+     * @param trajectory 自上次交付成功以来的轨迹，只含已经确定保留的点；以上次交付的最后一个点开头，
+     *                   相邻两次交付首尾相接
+     * @return true表示已经处理；false时轨迹保留，下次提交时连同新的点一起交付，累积过多时丢弃最早的点
+     */
+    default boolean onTrajectoryCollected(CompressedTrajectory trajectory) {
+        return true;
+    }
+}
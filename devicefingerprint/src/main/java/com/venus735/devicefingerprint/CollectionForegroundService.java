@@ -0,0 +1,187 @@
+package com.venus735.devicefingerprint;
+
+import android.app.Notification;
+import android.app.NotificationChannel;
+import android.app.NotificationManager;
+import android.app.Service;
+import android.content.Intent;
+import android.content.pm.ServiceInfo;
+import android.location.Location;
+import android.location.LocationListener;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.IBinder;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.core.app.NotificationCompat;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 连续采集前台服务
+ * 基站读取跟随定位回调执行，和定位共用同一次唤醒；
+ * 长时间没有定位回调时（例如室内）由兜底定时器单独读取基站。
+ * 服务运行期间被动监听其他来源触发的Wi-Fi/BLE扫描，结果随下一个窗口一起提交。
+ * 采集窗口先缓存在内存中，攒够一批后再交给接收方。
+ * 每个定位回调(包括同一窗口内被合并掉的回调)都送入 {@link TrajectoryCompressor}，精度不足的网络定位由压缩器过滤；
+ * 和窗口一起提交的只有已经保留的轨迹点，锚点跨提交保留，提交不会额外增加保留点。
+ * 提交失败时轨迹继续累积，由压缩器限制保留点数。
+ */
+public class CollectionForegroundService extends Service implements LocationListener {
+    private static final String TAG = "CollectionService";
+    private static final String CHANNEL_ID = "dfp_collection";
+    private static final int NOTIFICATION_ID = 0x0dfb;
+    static final String EXTRA_INTERVAL_MS = "interval_ms";
+    static final String EXTRA_BATCH_SIZE = "batch_size";
+    // 轨迹持续提交失败时最多保留的点数，默认容差下约相当于数天的连续采集
+    static final int MAX_PENDING_TRAJECTORY_POINTS = 8192;
+
+    private HandlerThread workerThread;
+    private Handler handler;
+    private BaseStationCollector baseStationCollector;
+    private LocationCollector locationCollector;
+    private PassiveRadioCollector radioCollector;
+    private final TrajectoryCompressor trajectoryCompressor = new TrajectoryCompressor(
+            TrajectoryCompressor.DEFAULT_TOLERANCE_METERS, MAX_PENDING_TRAJECTORY_POINTS);
+    private final List<CollectionBatch> pendingBatches = new ArrayList<>();
+    private long intervalMs = BackgroundCollection.DEFAULT_CONTINUOUS_INTERVAL_MS;
+    private int batchSize = BackgroundCollection.DEFAULT_CONTINUOUS_BATCH_SIZE;
+    private long lastWindowTime;
+
+    // 兜底定时器：两个周期内没有定位回调时单独读取一次基站
+    private final Runnable fallbackWindow = new Runnable() {
+        @Override
+        public void run() {
+            collectWindow(null);
+        }
+    };
+
+    @Override
+    public void onCreate() {
+        super.onCreate();
+        workerThread = new HandlerThread(TAG);
+        workerThread.start();
+        handler = new Handler(workerThread.getLooper());
+        baseStationCollector = new BaseStationCollector(this);
+        locationCollector = new LocationCollector(this);
+        radioCollector = new PassiveRadioCollector(this);
+        radioCollector.start();
+    }
+
+    @Override
+    public int onStartCommand(Intent intent, int flags, int startId) {
+        try {
+            startForeground(NOTIFICATION_ID, buildNotification(), ServiceInfo.FOREGROUND_SERVICE_TYPE_LOCATION);
+        } catch (Exception e) {
+            // 缺少定位权限时系统不允许以location类型启动前台服务
+            Log.e(TAG, "无法启动前台服务", e);
+            stopSelf();
+            return START_NOT_STICKY;
+        }
+
+        if (intent != null) {
+            intervalMs = intent.getLongExtra(EXTRA_INTERVAL_MS, intervalMs);
+            batchSize = Math.max(1, intent.getIntExtra(EXTRA_BATCH_SIZE, batchSize));
+        }
+
+        locationCollector.removeLocationUpdates(this);
+        locationCollector.requestLocationUpdates(this, intervalMs, 0, workerThread.getLooper());
+        handler.removeCallbacks(fallbackWindow);
+        handler.postDelayed(fallbackWindow, intervalMs * 2);
+        Log.d(TAG, "连续采集已启动，窗口间隔 " + intervalMs + "ms，批大小 " + batchSize);
+        return START_STICKY;
+    }
+
+    @Override
+    public void onLocationChanged(@NonNull Location location) {
+        trajectoryCompressor.add(location);
+        // GPS和网络定位可能在同一窗口内各回调一次，只保留第一次
+        if (System.currentTimeMillis() - lastWindowTime < intervalMs / 2) {
+            return;
+        }
+        collectWindow(location);
+    }
+
+    private void collectWindow(Location location) {
+        try {
+            lastWindowTime = System.currentTimeMillis();
+            CollectionBatch batch = BackgroundCollection.collectWindow(baseStationCollector, radioCollector, location);
+            if (!batch.isEmpty()) {
+                pendingBatches.add(batch);
+            }
+            if (pendingBatches.size() >= batchSize) {
+                flush();
+            }
+        } catch (Exception e) {
+            Log.e(TAG, "采集窗口时发生错误", e);
+        } finally {
+            handler.removeCallbacks(fallbackWindow);
+            handler.postDelayed(fallbackWindow, intervalMs * 2);
+        }
+    }
+
+    private void flush() {
+        flushTrajectory();
+        if (pendingBatches.isEmpty()) {
+            return;
+        }
+        List<CollectionBatch> batches = new ArrayList<>(pendingBatches);
+        if (BackgroundCollection.deliver(batches)) {
+            pendingBatches.clear();
+        } else {
+            Log.w(TAG, "提交失败，保留 " + batches.size() + " 个窗口等待下次提交");
+        }
+    }
+
+    private void flushTrajectory() {
+        if (!trajectoryCompressor.hasUndeliveredPoints()) {
+            return;
+        }
+        CompressedTrajectory trajectory = trajectoryCompressor.getTrajectory();
+        try {
+            if (BackgroundCollection.deliverTrajectory(trajectory)) {
+                trajectoryCompressor.markDelivered();
+            } else {
+                Log.w(TAG, "轨迹提交失败，保留 " + trajectory.getPointCount() + " 个点等待下次提交");
+            }
+        } catch (Exception e) {
+            Log.e(TAG, "提交轨迹时发生错误", e);
+        }
+    }
+
+    @Override
+    public void onDestroy() {
+        // 收尾放到工作线程上，排在正在进行的采集窗口之后执行，避免和采集并发访问收集器
+        handler.removeCallbacksAndMessages(null);
+        handler.post(() -> {
+            locationCollector.removeLocationUpdates(this);
+            radioCollector.stop();
+            // 服务停止后不再有新的点，保留最后一个点使轨迹覆盖到最新时刻
+            trajectoryCompressor.flush();
+            flush();
+        });
+        workerThread.quitSafely();
+        stopForeground(STOP_FOREGROUND_REMOVE);
+        Log.d(TAG, "连续采集已停止");
+        super.onDestroy();
+    }
+
+    @Override
+    public IBinder onBind(Intent intent) {
+        return null;
+    }
+
+    private Notification buildNotification() {
+        NotificationManager notificationManager = getSystemService(NotificationManager.class);
+        NotificationChannel channel = new NotificationChannel(CHANNEL_ID, "设备信息采集", NotificationManager.IMPORTANCE_LOW);
+        notificationManager.createNotificationChannel(channel);
+        return new NotificationCompat.Builder(this, CHANNEL_ID)
+                .setContentTitle("设备信息采集")
+                .setContentText("正在后台采集基站与位置信息")
+                .setSmallIcon(android.R.drawable.ic_menu_mylocation)
+                .setOngoing(true)
+                .build();
+    }
+}
@@ -0,0 +1,50 @@
+package com.venus735.devicefingerprint;
+
+import android.content.Context;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.work.Worker;
+import androidx.work.WorkerParameters;
+
+import java.util.Collections;
+
+/**
+ * 周期采集任务
+ * 每次执行只做一个采集窗口：基站、定位和系统缓存的Wi-Fi扫描结果在同一次唤醒中读取，结果直接交给接收方。
+ * 接收方失败时重试，连续失败 {@link BackgroundCollection#MAX_PERIODIC_RUN_ATTEMPTS} 次后返回失败。
+ */
+public class CollectionWorker extends Worker {
+    private static final String TAG = "CollectionWorker";
+
+    public CollectionWorker(@NonNull Context context, @NonNull WorkerParameters workerParams) {
+        super(context, workerParams);
+    }
+
+    @NonNull
+    @Override
+    public Result doWork() {
+        try {
+            CollectionBatch batch = BackgroundCollection.collectWindow(getApplicationContext());
+            if (batch.isEmpty()) {
+                Log.d(TAG, "本次窗口没有采集到数据");
+                return Result.success();
+            }
+            return BackgroundCollection.deliver(Collections.singletonList(batch)) ? Result.success() : retryOrFail();
+        } catch (Exception e) {
+            Log.e(TAG, "后台采集时发生错误", e);
+            return retryOrFail();
+        }
+    }
+
+    /**
+     * 失败次数未达上限时重试；达到上限后放弃本次窗口，周期任务在下一个周期继续执行
+     */
+    private Result retryOrFail() {
+        if (getRunAttemptCount() + 1 >= BackgroundCollection.MAX_PERIODIC_RUN_ATTEMPTS) {
+            Log.w(TAG, "连续 " + (getRunAttemptCount() + 1) + " 次失败，放弃本次采集窗口");
+            return Result.failure();
+        }
+        return Result.retry();
+    }
+}
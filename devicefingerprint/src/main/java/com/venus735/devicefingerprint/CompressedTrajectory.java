@@ -0,0 +1,272 @@
+package com.venus735.devicefingerprint;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 压缩后的轨迹
+ * 坐标量化为微度整数(约0.11m)，与时间一起做差值 + zig-zag变长整数编码；
+ * 每 {@value #BLOCK_POINTS} 个点开始一个新块，块首存绝对值，并在内存中记录块的起始时间和偏移，
+ * 按时间查询时二分定位到块，只需解码一个块。
+ */
+public class CompressedTrajectory {
+    static final int BLOCK_POINTS = 64;
+    private static final int SERIAL_MAGIC = 0x44465454; // "DFTT"
+    private static final int SERIAL_VERSION = 1;
+    private static final double E6 = 1e6;
+
+    private byte[] data = new byte[256];
+    private int size;
+    private int pointCount;
+    private long[] blockTimes = new long[8];
+    private int[] blockOffsets = new int[8];
+    private int blockCount;
+    private int lastLat;
+    private int lastLon;
+    private long lastTime;
+
+    /**
+     * 轨迹点
+     */
+    public static class TrajectoryPoint {
+        public final double latitude;
+        public final double longitude;
+        public final long time;
+
+        public TrajectoryPoint(double latitude, double longitude, long time) {
+            this.latitude = latitude;
+            this.longitude = longitude;
+            this.time = time;
+        }
+
+        @Override
+        public String toString() {
+            return "TrajectoryPoint{" +
+                    "latitude=" + latitude +
+                    ", longitude=" + longitude +
+                    ", time=" + time +
+                    '}';
+        }
+    }
+
+    /**
+     * 追加一个点，时间必须晚于上一个点
+     * 通常由 {@link TrajectoryCompressor} 调用；也可以用来按已经简化过的点(例如服务端存储)重建轨迹
+     */
+    public void append(double latitude, double longitude, long time) {
+        if (pointCount > 0 && time <= lastTime) {
+            throw new IllegalArgumentException("时间必须递增: " + time);
+        }
+        int lat = (int) Math.round(latitude * E6);
+        int lon = (int) Math.round(longitude * E6);
+        if (pointCount % BLOCK_POINTS == 0) {
+            if (blockCount == blockTimes.length) {
+                blockTimes = Arrays.copyOf(blockTimes, blockCount * 2);
+                blockOffsets = Arrays.copyOf(blockOffsets, blockCount * 2);
+            }
+            blockTimes[blockCount] = time;
+            blockOffsets[blockCount] = size;
+            blockCount++;
+            writeVarLong(zigZag(lat));
+            writeVarLong(zigZag(lon));
+            writeVarLong(zigZag(time));
+        } else {
+            writeVarLong(zigZag(lat - lastLat));
+            writeVarLong(zigZag(lon - lastLon));
+            writeVarLong(time - lastTime);
+        }
+        lastLat = lat;
+        lastLon = lon;
+        lastTime = time;
+        pointCount++;
+    }
+
+    public int getPointCount() {
+        return pointCount;
+    }
+
+    /**
+     * 编码后的字节数，不含块索引
+     */
+    public int getEncodedSize() {
+        return size;
+    }
+
+    /**
+     * 解码全部点
+     */
+    public List<TrajectoryPoint> decode() {
+        List<TrajectoryPoint> points = new ArrayList<>(pointCount);
+        for (int block = 0; block < blockCount; block++) {
+            decodeBlock(block, points);
+        }
+        return points;
+    }
+
+    /**
+     * 查询时间范围[from, to]内保留下来的点
+     */
+    public List<TrajectoryPoint> pointsBetween(long from, long to) {
+        List<TrajectoryPoint> result = new ArrayList<>();
+        List<TrajectoryPoint> blockPoints = new ArrayList<>(BLOCK_POINTS);
+        for (int block = Math.max(0, findBlock(from)); block < blockCount && blockTimes[block] <= to; block++) {
+            blockPoints.clear();
+            decodeBlock(block, blockPoints);
+            for (TrajectoryPoint point : blockPoints) {
+                if (point.time >= from && point.time <= to) {
+                    result.add(point);
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 查询某一时刻的位置，在相邻两个保留点之间按时间线性插值
+     * 对压缩前的任意原始点时刻，返回位置与原始位置的偏差不超过压缩容差
+     * @return 时刻超出轨迹范围时返回null
+     */
+    public TrajectoryPoint positionAt(long time) {
+        int block = findBlock(time);
+        if (block < 0 || time > lastTime) {
+            return null;
+        }
+        List<TrajectoryPoint> points = new ArrayList<>(BLOCK_POINTS + 1);
+        decodeBlock(block, points);
+        if (block + 1 < blockCount) {
+            // 需要下一块的第一个点作为插值终点
+            List<TrajectoryPoint> next = new ArrayList<>(BLOCK_POINTS);
+            decodeBlock(block + 1, next);
+            points.add(next.get(0));
+        }
+        for (int i = 0; i < points.size(); i++) {
+            TrajectoryPoint point = points.get(i);
+            if (point.time == time) {
+                return point;
+            }
+            if (point.time > time) {
+                TrajectoryPoint previous = points.get(i - 1);
+                double ratio = (double) (time - previous.time) / (point.time - previous.time);
+                return new TrajectoryPoint(
+                        previous.latitude + (point.latitude - previous.latitude) * ratio,
+                        previous.longitude + (point.longitude - previous.longitude) * ratio,
+                        time);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 序列化，块索引在读取时重建
+     */
+    public byte[] toByteArray() {
+        ByteBuffer buffer = ByteBuffer.allocate(12 + size);
+        buffer.putInt(SERIAL_MAGIC).putInt(SERIAL_VERSION).putInt(pointCount).put(data, 0, size);
+        return buffer.array();
+    }
+
+    public static CompressedTrajectory fromByteArray(byte[] bytes) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        if (bytes.length < 12 || buffer.getInt() != SERIAL_MAGIC || buffer.getInt() != SERIAL_VERSION) {
+            throw new IOException("不支持的轨迹格式");
+        }
+        int pointCount = buffer.getInt();
+        CompressedTrajectory encoded = new CompressedTrajectory();
+        encoded.data = Arrays.copyOfRange(bytes, 12, bytes.length);
+        encoded.size = encoded.data.length;
+        // 逐点解码一遍以重建块索引和追加状态
+        CompressedTrajectory rebuilt = new CompressedTrajectory();
+        try {
+            int[] offset = {0};
+            int lat = 0;
+            int lon = 0;
+            long time = 0;
+            for (int i = 0; i < pointCount; i++) {
+                if (i % BLOCK_POINTS == 0) {
+                    lat = (int) unZigZag(encoded.readVarLong(offset));
+                    lon = (int) unZigZag(encoded.readVarLong(offset));
+                    time = unZigZag(encoded.readVarLong(offset));
+                } else {
+                    lat += (int) unZigZag(encoded.readVarLong(offset));
+                    lon += (int) unZigZag(encoded.readVarLong(offset));
+                    time += encoded.readVarLong(offset);
+                }
+                rebuilt.append(lat / E6, lon / E6, time);
+            }
+        } catch (RuntimeException e) {
+            throw new IOException("轨迹数据损坏", e);
+        }
+        return rebuilt;
+    }
+
+    /**
+     * 最后一个起始时间不晚于time的块，time早于轨迹起点时返回-1
+     */
+    private int findBlock(long time) {
+        int low = 0;
+        int high = blockCount - 1;
+        int found = -1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (blockTimes[mid] <= time) {
+                found = mid;
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return found;
+    }
+
+    private void decodeBlock(int block, List<TrajectoryPoint> out) {
+        int[] offset = {blockOffsets[block]};
+        int count = Math.min(BLOCK_POINTS, pointCount - block * BLOCK_POINTS);
+        int lat = (int) unZigZag(readVarLong(offset));
+        int lon = (int) unZigZag(readVarLong(offset));
+        long time = unZigZag(readVarLong(offset));
+        out.add(new TrajectoryPoint(lat / E6, lon / E6, time));
+        for (int i = 1; i < count; i++) {
+            lat += (int) unZigZag(readVarLong(offset));
+            lon += (int) unZigZag(readVarLong(offset));
+            time += readVarLong(offset);
+            out.add(new TrajectoryPoint(lat / E6, lon / E6, time));
+        }
+    }
+
+    private void writeVarLong(long value) {
+        if (size + 10 > data.length) {
+            data = Arrays.copyOf(data, data.length * 2);
+        }
+        while ((value & ~0x7FL) != 0) {
+            data[size++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        data[size++] = (byte) value;
+    }
+
+    private long readVarLong(int[] offset) {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            if (offset[0] >= size) {
+                throw new IllegalStateException("数据不完整");
+            }
+            byte b = data[offset[0]++];
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IllegalStateException("变长整数格式错误");
+    }
+
+    private static long zigZag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static long unZigZag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+}
@@ -0,0 +1,248 @@
+package com.venus735.devicefingerprint;
+
+import android.content.Context;
+import android.os.SystemClock;
+import android.util.Log;
+
+import androidx.annotation.VisibleForTesting;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.LongSupplier;
+
+/**
+ * 库初始化器
+ * 每个收集器注册为一个延迟创建的组件，并声明依赖的组件；组件在第一次 {@link #get} 时才创建，
+ * 依赖会先于组件创建。{@link #initializeAsync} 按依赖顺序在后台线程预热所有组件，
+ * 互不依赖的组件并行创建，应在首帧绘制之后调用，使首帧不再等待MediaDrm和系统服务查询。
+ * 每个组件的创建耗时(不含依赖)记录在 {@link #getTimingReport} 中。
+ * 依赖必须先注册，因此声明的依赖不会成环；工厂中获取未声明的组件形成循环时抛出异常。
+ */
+public final class DeviceFingerprintInitializer {
+    private static final String TAG = "DFPInitializer";
+
+    public static final String LOCATION = "location";           // LocationCollector
+    public static final String TELEPHONY = "telephony";         // BaseStationCollector
+    public static final String DEVICE_INFO = "deviceInfo";      // DeviceInfoCollector，依赖LOCATION
+    public static final String HARDWARE_INFO = "hardwareInfo";  // String，依赖DEVICE_INFO
+    public static final String DRM_ID = "drmId";                // String，可能为null
+
+    private static volatile DeviceFingerprintInitializer instance;
+    private static ExecutorService defaultExecutor;
+
+    private final Context context;
+    private final LongSupplier nanoClock;
+    // 按注册顺序保存，由于依赖必须先注册，注册顺序即拓扑顺序
+    private final Map<String, Component> components = new LinkedHashMap<>();
+    private final Map<String, Long> timings = Collections.synchronizedMap(new LinkedHashMap<>());
+
+    /**
+     * 组件工厂
+     * @param <T> 组件类型
+     */
+    public interface ComponentFactory<T> {
+        T create(DeviceFingerprintInitializer initializer) throws Exception;
+    }
+
+    private static class Component {
+        final String name;
+        final ComponentFactory<?> factory;
+        final String[] dependencies;
+        boolean created;
+        boolean creating;
+        Object value;
+
+        Component(String name, ComponentFactory<?> factory, String[] dependencies) {
+            this.name = name;
+            this.factory = factory;
+            this.dependencies = dependencies;
+        }
+    }
+
+    public DeviceFingerprintInitializer(Context context) {
+        this(context.getApplicationContext(), SystemClock::elapsedRealtimeNanos);
+    }
+
+    @VisibleForTesting
+    DeviceFingerprintInitializer(Context context, LongSupplier nanoClock) {
+        this.context = context;
+        this.nanoClock = nanoClock;
+    }
+
+    /**
+     * 获取注册了库内置组件的全局实例，本方法本身不创建任何组件
+     */
+    public static DeviceFingerprintInitializer getInstance(Context context) {
+        if (instance == null) {
+            synchronized (DeviceFingerprintInitializer.class) {
+                if (instance == null) {
+                    DeviceFingerprintInitializer initializer = new DeviceFingerprintInitializer(context);
+                    initializer.registerDefaults();
+                    instance = initializer;
+                }
+            }
+        }
+        return instance;
+    }
+
+    private void registerDefaults() {
+        register(LOCATION, initializer -> new LocationCollector(initializer.context));
+        register(TELEPHONY, initializer -> new BaseStationCollector(initializer.context));
+        register(DEVICE_INFO, initializer -> new DeviceInfoCollector(initializer.context,
+                initializer.<LocationCollector>get(LOCATION)), LOCATION);
+        register(HARDWARE_INFO, initializer -> initializer.<DeviceInfoCollector>get(DEVICE_INFO).collectHardwareInfo(),
+                DEVICE_INFO);
+        register(DRM_ID, initializer -> DeviceFingerprintGenerator.getDrmUniqueId());
+    }
+
+    /**
+     * 注册组件
+     * @param name 组件名
+     * @param factory 组件工厂
+     * @param dependencies 依赖的组件名，必须已经注册
+     */
+    public synchronized <T> void register(String name, ComponentFactory<T> factory, String... dependencies) {
+        if (components.containsKey(name)) {
+            throw new IllegalStateException("组件已注册: " + name);
+        }
+        for (String dependency : dependencies) {
+            if (!components.containsKey(dependency)) {
+                throw new IllegalStateException("组件 " + name + " 依赖的 " + dependency + " 尚未注册");
+            }
+        }
+        components.put(name, new Component(name, factory, dependencies.clone()));
+    }
+
+    /**
+     * 获取组件，第一次调用时先创建依赖再创建组件本身
+     * 可能在调用线程上执行耗时操作，主线程上应只获取已经预热过的组件。
+     * 创建失败时异常抛给调用方，组件保持未创建状态，下次获取时重试
+     * @throws IllegalStateException 创建失败，或组件在创建过程中直接或间接获取了自己
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T get(String name) {
+        Component component = component(name);
+        synchronized (component) {
+            if (!component.created) {
+                // 监视器可重入，同一线程在创建过程中再次进入说明存在循环
+                if (component.creating) {
+                    throw new IllegalStateException("组件 " + name + " 存在循环依赖");
+                }
+                component.creating = true;
+                try {
+                    for (String dependency : component.dependencies) {
+                        get(dependency);
+                    }
+                    long start = nanoClock.getAsLong();
+                    try {
+                        component.value = component.factory.create(this);
+                    } catch (RuntimeException e) {
+                        throw e;
+                    } catch (Exception e) {
+                        throw new IllegalStateException("创建组件 " + name + " 失败", e);
+                    }
+                    component.created = true;
+                    timings.put(name, nanoClock.getAsLong() - start);
+                } finally {
+                    component.creating = false;
+                }
+            }
+            return (T) component.value;
+        }
+    }
+
+    /**
+     * 组件是否已经创建
+     */
+    public boolean isInitialized(String name) {
+        Component component = component(name);
+        synchronized (component) {
+            return component.created;
+        }
+    }
+
+    /**
+     * 在后台按依赖顺序创建所有已注册的组件
+     * 每个组件在其依赖完成后立即提交，互不依赖的组件并行创建；单个组件失败不影响无关组件
+     * @param executor 执行创建的线程池
+     * @return 所有组件都处理完成后结束的Future
+     */
+    public CompletableFuture<Void> initializeAsync(Executor executor) {
+        List<Component> ordered;
+        synchronized (this) {
+            ordered = new ArrayList<>(components.values());
+        }
+        Map<String, CompletableFuture<Void>> futures = new LinkedHashMap<>();
+        for (Component component : ordered) {
+            CompletableFuture<?>[] dependencies = new CompletableFuture<?>[component.dependencies.length];
+            for (int i = 0; i < dependencies.length; i++) {
+                dependencies[i] = futures.get(component.dependencies[i]);
+            }
+            futures.put(component.name, CompletableFuture.allOf(dependencies).handleAsync((ignored, error) -> {
+                try {
+                    get(component.name);
+                } catch (RuntimeException e) {
+                    Log.e(TAG, "初始化组件 " + component.name + " 失败", e);
+                }
+                return null;
+            }, executor));
+        }
+        return CompletableFuture.allOf(futures.values().toArray(new CompletableFuture<?>[0]))
+                .whenComplete((ignored, error) -> Log.d(TAG, getTimingReport()));
+    }
+
+    /**
+     * 使用库内置的后台线程池初始化
+     */
+    public CompletableFuture<Void> initializeAsync() {
+        return initializeAsync(defaultExecutor());
+    }
+
+    /**
+     * 各组件的创建耗时(纳秒)，按创建完成顺序排列，不含依赖的耗时
+     */
+    public Map<String, Long> getInitTimings() {
+        synchronized (timings) {
+            return new LinkedHashMap<>(timings);
+        }
+    }
+
+    /**
+     * 初始化耗时报告
+     */
+    public String getTimingReport() {
+        StringBuilder report = new StringBuilder("组件初始化耗时:");
+        for (Map.Entry<String, Long> entry : getInitTimings().entrySet()) {
+            report.append("\n  ").append(entry.getKey()).append(": ")
+                    .append(String.format("%.2f ms", entry.getValue() / 1e6));
+        }
+        return report.toString();
+    }
+
+    private synchronized Component component(String name) {
+        Component component = components.get(name);
+        if (component == null) {
+            throw new IllegalArgumentException("未注册的组件: " + name);
+        }
+        return component;
+    }
+
+    private static synchronized Executor defaultExecutor() {
+        if (defaultExecutor == null) {
+            defaultExecutor = Executors.newFixedThreadPool(2, runnable -> {
+                Thread thread = new Thread(runnable, "dfp-init");
+                thread.setDaemon(true);
+                thread.setPriority(Thread.NORM_PRIORITY - 1);
+                return thread;
+            });
+        }
+        return defaultExecutor;
+    }
+}
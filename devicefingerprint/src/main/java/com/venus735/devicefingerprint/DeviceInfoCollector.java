@@ -20,8 +20,17 @@ public class DeviceInfoCollector {
     private static final long CACHE_DURATION = 30000; // 30秒缓存
     
     public DeviceInfoCollector(Context context) {
+        this(context, new LocationCollector(context));
+    }
+    
+    /**
+     * 使用已有的定位收集器，避免重复查询定位服务
+     * @param context 上下文
+     * @param locationCollector 定位收集器
+     */
+    public DeviceInfoCollector(Context context, LocationCollector locationCollector) {
         this.context = context;
-        this.locationCollector = new LocationCollector(context);
+        this.locationCollector = locationCollector;
     }
     
     /**
@@ -0,0 +1,56 @@
+package com.venus735.devicefingerprint;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+
+/**
+ * 直接内存缓冲区池
+ * 直接缓冲区分配代价高且不受GC及时回收，加密和序列化的分块缓冲区都从这里复用
+ */
+public class DirectBufferPool {
+    private final int bufferSize;
+    private final int maxPooled;
+    private final ArrayDeque<ByteBuffer> pool = new ArrayDeque<>();
+
+    /**
+     * @param bufferSize 每个缓冲区的大小
+     * @param maxPooled 池中最多保留的空闲缓冲区数
+     */
+    public DirectBufferPool(int bufferSize, int maxPooled) {
+        this.bufferSize = bufferSize;
+        this.maxPooled = maxPooled;
+    }
+
+    public int getBufferSize() {
+        return bufferSize;
+    }
+
+    /**
+     * 取出一个已清空的缓冲区，池为空时新分配
+     */
+    public ByteBuffer acquire() {
+        ByteBuffer buffer;
+        synchronized (pool) {
+            buffer = pool.pollFirst();
+        }
+        if (buffer == null) {
+            return ByteBuffer.allocateDirect(bufferSize);
+        }
+        buffer.clear();
+        return buffer;
+    }
+
+    /**
+     * 归还缓冲区，池满或大小不符时丢弃
+     */
+    public void release(ByteBuffer buffer) {
+        if (buffer == null || !buffer.isDirect() || buffer.capacity() != bufferSize) {
+            return;
+        }
+        synchronized (pool) {
+            if (pool.size() < maxPooled) {
+                pool.addFirst(buffer);
+            }
+        }
+    }
+}
@@ -0,0 +1,609 @@
+package com.venus735.devicefingerprint;
+
+import android.location.Location;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 指纹漂移/异常流式检测
+ * 按设备跟踪各指纹组件(DRM ID、硬件信息、系统版本、基站邻区、位置)的最近状态，每次观测到来时
+ * 只和这份状态比较，不需要回看历史：
+ * <ul>
+ *     <li>DRM ID 改变</li>
+ *     <li>型号、厂商、品牌或硬件平台改变；PRODUCT/DEVICE 的改变只在系统版本没有变化时报告(排除系统升级带来的变化)</li>
+ *     <li>系统版本回退</li>
+ *     <li>两次位置之间的移动速度超过上限(考虑定位精度和基站覆盖半径)</li>
+ *     <li>定位结果与同一时间观测到的基站位置相距过远</li>
+ * </ul>
+ * 每台设备的状态大小固定(基站位置只保留最近几个)，单次观测的处理代价为常数。
+ * 跟踪的设备数有上限，超出时在观测中按最近访问顺序淘汰一批最久未访问的设备，被淘汰的设备下次观测时从头开始跟踪。
+ * 基站位置来自外部的 {@link CellLocator}，或者由设备自己的高精度定位与同一时间的基站配对学习得到。
+ */
+public class FingerprintDriftDetector {
+    public static final double DEFAULT_MAX_SPEED_MPS = 300;         // 略高于民航客机巡航速度
+    public static final double DEFAULT_CELL_RANGE_METERS = 15000;   // 宏站覆盖半径上限
+    private static final long PAIRING_WINDOW_MS = 60 * 1000;        // 定位和基站视为同一时刻的最大时间差
+    private static final float LEARN_MAX_ACCURACY_M = 100;          // 只用足够精确的定位学习基站位置
+    private static final int LEARNED_CELLS = 8;
+    private static final int RECENT_CELLS = 8;
+    public static final int DEFAULT_MAX_DEVICES = 10000;
+
+    public enum AnomalyType {
+        DRM_ID_CHANGED,
+        HARDWARE_CHANGED,
+        OS_DOWNGRADE,
+        IMPOSSIBLE_MOVEMENT,
+        CELL_LOCATION_MISMATCH
+    }
+
+    public static class Anomaly {
+        public final String deviceId;
+        public final AnomalyType type;
+        public final long timestamp;         // 触发异常的观测时间
+        public final String previousValue;
+        public final String currentValue;
+        public final String detail;
+
+        Anomaly(String deviceId, AnomalyType type, long timestamp, String previousValue, String currentValue, String detail) {
+            this.deviceId = deviceId;
+            this.type = type;
+            this.timestamp = timestamp;
+            this.previousValue = previousValue;
+            this.currentValue = currentValue;
+            this.detail = detail;
+        }
+
+        @Override
+        public String toString() {
+            return "Anomaly{" +
+                    "deviceId='" + deviceId + '\'' +
+                    ", type=" + type +
+                    ", timestamp=" + timestamp +
+                    ", previousValue='" + previousValue + '\'' +
+                    ", currentValue='" + currentValue + '\'' +
+                    ", detail='" + detail + '\'' +
+                    '}';
+        }
+    }
+
+    public interface AnomalyListener {
+        /**
+         * 在调用 observe 的线程上回调，不持有检测器内部的锁
+         */
+        void onAnomaly(Anomaly anomaly);
+    }
+
+    public interface CellLocator {
+        /**
+         * @param cellKey {@link BaseStationCollector.BaseStationInfo#getCellKey()}
+         * @return {纬度, 经度}，未知时返回null
+         */
+        double[] locate(String cellKey);
+    }
+
+    /**
+     * 某台设备当前跟踪到的指纹状态快照
+     */
+    public static class DeviceProfile {
+        public String drmId;
+        public String hardwareInfo;
+        public String osVersion;
+        public int sdk;
+        public int drmChanges;
+        public int hardwareChanges;
+        public int osUpdates;
+        public boolean hasPosition;
+        public double latitude;
+        public double longitude;
+        public long positionTime;
+        public long observations;
+        public long lastSeen;
+    }
+
+    private final double maxSpeedMps;
+    private final double cellRangeMeters;
+    private final CellLocator cellLocator;
+    private final int maxDevices;
+    private final Map<String, DeviceState> devices = new ConcurrentHashMap<>();
+    private final AtomicLong accessClock = new AtomicLong();
+    private final ReentrantLock trimLock = new ReentrantLock();
+    private volatile AnomalyListener listener;
+
+    /**
+     * @param maxSpeedMps 允许的最大移动速度(米/秒)
+     * @param cellRangeMeters 基站位置的不确定半径(米)
+     * @param cellLocator 外部基站位置库，可以为空
+     * @param maxDevices 最多跟踪的设备数
+     */
+    public FingerprintDriftDetector(double maxSpeedMps, double cellRangeMeters, CellLocator cellLocator, int maxDevices) {
+        if (!(maxSpeedMps > 0) || !(cellRangeMeters >= 0) || maxDevices <= 0) {
+            throw new IllegalArgumentException("参数超出范围: maxSpeedMps=" + maxSpeedMps
+                    + ", cellRangeMeters=" + cellRangeMeters + ", maxDevices=" + maxDevices);
+        }
+        this.maxSpeedMps = maxSpeedMps;
+        this.cellRangeMeters = cellRangeMeters;
+        this.cellLocator = cellLocator;
+        this.maxDevices = maxDevices;
+    }
+
+    public FingerprintDriftDetector(double maxSpeedMps, double cellRangeMeters, CellLocator cellLocator) {
+        this(maxSpeedMps, cellRangeMeters, cellLocator, DEFAULT_MAX_DEVICES);
+    }
+
+    public FingerprintDriftDetector() {
+        this(DEFAULT_MAX_SPEED_MPS, DEFAULT_CELL_RANGE_METERS, null);
+    }
+
+    public void setAnomalyListener(AnomalyListener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * 观测 {@link DeviceFingerprintGenerator#getDrmUniqueId()} 的结果，获取失败(null)时忽略
+     */
+    public void observeDrmId(String deviceId, String drmId, long timestamp) {
+        if (drmId == null) {
+            return;
+        }
+        DeviceState state = stateOf(deviceId);
+        Anomaly anomaly = null;
+        synchronized (state) {
+            state.touch(timestamp);
+            if (state.drmId != null && !state.drmId.equals(drmId)) {
+                state.drmChanges++;
+                anomaly = new Anomaly(deviceId, AnomalyType.DRM_ID_CHANGED, timestamp, state.drmId, drmId, null);
+            }
+            state.drmId = drmId;
+        }
+        notify(anomaly);
+    }
+
+    /**
+     * 观测 {@link DeviceInfoCollector#collectHardwareInfo()} 的结果
+     * 型号、厂商、品牌和硬件平台不会随系统升级改变，变化总是报异常；
+     * 系统版本或SDK变化视为升级，PRODUCT/DEVICE 可能随升级改变，只有系统版本未变时才报异常
+     */
+    public void observeHardwareInfo(String deviceId, String hardwareInfo, long timestamp) {
+        if (hardwareInfo == null) {
+            return;
+        }
+        HardwareInfo parsed = HardwareInfo.parse(hardwareInfo);
+        DeviceState state = stateOf(deviceId);
+        List<Anomaly> anomalies = new ArrayList<>(2);
+        synchronized (state) {
+            state.touch(timestamp);
+            if (state.hardwareInfo != null) {
+                boolean osChanged = !equals(state.osVersion, parsed.osVersion) || state.sdk != parsed.sdk;
+                if (osChanged) {
+                    state.osUpdates++;
+                    if (parsed.sdk > 0 && parsed.sdk < state.sdk) {
+                        anomalies.add(new Anomaly(deviceId, AnomalyType.OS_DOWNGRADE, timestamp,
+                                state.osVersion + "/" + state.sdk, parsed.osVersion + "/" + parsed.sdk, null));
+                    }
+                }
+                if (!state.hardwareKey.equals(parsed.hardwareKey)) {
+                    state.hardwareChanges++;
+                    anomalies.add(new Anomaly(deviceId, AnomalyType.HARDWARE_CHANGED, timestamp,
+                            state.hardwareInfo, hardwareInfo, osChanged ? "型号/厂商/品牌/硬件平台不随系统升级改变" : "系统版本未变化: " + parsed.osVersion));
+                } else if (!osChanged && !state.buildKey.equals(parsed.buildKey)) {
+                    state.hardwareChanges++;
+                    anomalies.add(new Anomaly(deviceId, AnomalyType.HARDWARE_CHANGED, timestamp,
+                            state.hardwareInfo, hardwareInfo, "系统版本未变化: " + parsed.osVersion));
+                }
+            }
+            state.hardwareInfo = hardwareInfo;
+            state.hardwareKey = parsed.hardwareKey;
+            state.buildKey = parsed.buildKey;
+            state.osVersion = parsed.osVersion;
+            state.sdk = parsed.sdk;
+        }
+        notify(anomalies);
+    }
+
+    /**
+     * 观测一次基站扫描结果(通常第一个是服务小区)
+     */
+    public void observeCells(String deviceId, List<BaseStationCollector.BaseStationInfo> cells, long timestamp) {
+        if (cells == null || cells.isEmpty()) {
+            return;
+        }
+        DeviceState state = stateOf(deviceId);
+        List<Anomaly> anomalies = new ArrayList<>(2);
+        synchronized (state) {
+            state.touch(timestamp);
+            state.recentCellCount = 0;
+            for (BaseStationCollector.BaseStationInfo cell : cells) {
+                if (state.recentCellCount == RECENT_CELLS) {
+                    break;
+                }
+                state.recentCells[state.recentCellCount++] = cell.getCellKey();
+            }
+            state.recentCellsTime = timestamp;
+
+            if (state.hasGpsFix && Math.abs(timestamp - state.gpsTime) <= PAIRING_WINDOW_MS) {
+                // 有同一时刻的定位，直接比较基站和定位，不再把基站位置当作一次移动
+                checkCellsAgainstFix(deviceId, state, timestamp, state.gpsLatitude, state.gpsLongitude,
+                        state.gpsAccuracy, anomalies);
+            } else {
+                double[] position = locateAny(state);
+                if (position != null) {
+                    checkMovement(deviceId, state, timestamp, position[0], position[1], cellRangeMeters, anomalies);
+                }
+            }
+        }
+        notify(anomalies);
+    }
+
+    /**
+     * 观测一次定位结果
+     */
+    public void observeLocation(String deviceId, double latitude, double longitude, float accuracyMeters, long timestamp) {
+        DeviceState state = stateOf(deviceId);
+        List<Anomaly> anomalies = new ArrayList<>(2);
+        synchronized (state) {
+            state.touch(timestamp);
+            double accuracy = Math.max(0, accuracyMeters);
+            checkMovement(deviceId, state, timestamp, latitude, longitude, accuracy, anomalies);
+            if (!state.hasGpsFix || timestamp >= state.gpsTime) {
+                state.hasGpsFix = true;
+                state.gpsLatitude = latitude;
+                state.gpsLongitude = longitude;
+                state.gpsAccuracy = accuracy;
+                state.gpsTime = timestamp;
+            }
+            if (state.recentCellCount > 0 && Math.abs(timestamp - state.recentCellsTime) <= PAIRING_WINDOW_MS) {
+                checkCellsAgainstFix(deviceId, state, timestamp, latitude, longitude, accuracy, anomalies);
+            }
+        }
+        notify(anomalies);
+    }
+
+    public void observeLocation(String deviceId, Location location) {
+        observeLocation(deviceId, location.getLatitude(), location.getLongitude(),
+                location.hasAccuracy() ? location.getAccuracy() : (float) cellRangeMeters, location.getTime());
+    }
+
+    /**
+     * 观测一个采集窗口：先基站，后定位
+     */
+    public void observe(String deviceId, CollectionBatch batch) {
+        observeCells(deviceId, batch.baseStations, batch.timestamp);
+        if (batch.location != null) {
+            observeLocation(deviceId, batch.location);
+        }
+    }
+
+    /**
+     * 观测本机当前的 DRM ID 和硬件信息
+     * 获取 DRM ID 需要访问 MediaDrm，不要在主线程调用
+     */
+    public void observeLocalDevice(String deviceId, DeviceInfoCollector deviceInfoCollector) {
+        long now = System.currentTimeMillis();
+        observeDrmId(deviceId, DeviceFingerprintGenerator.getDrmUniqueId(), now);
+        observeHardwareInfo(deviceId, deviceInfoCollector.collectHardwareInfo(), now);
+    }
+
+    /**
+     * @return 设备当前状态的副本，未观测过时返回null
+     */
+    public DeviceProfile getProfile(String deviceId) {
+        DeviceState state = devices.get(deviceId);
+        if (state == null) {
+            return null;
+        }
+        DeviceProfile profile = new DeviceProfile();
+        synchronized (state) {
+            profile.drmId = state.drmId;
+            profile.hardwareInfo = state.hardwareInfo;
+            profile.osVersion = state.osVersion;
+            profile.sdk = state.sdk;
+            profile.drmChanges = state.drmChanges;
+            profile.hardwareChanges = state.hardwareChanges;
+            profile.osUpdates = state.osUpdates;
+            profile.hasPosition = state.hasPosition;
+            profile.latitude = state.latitude;
+            profile.longitude = state.longitude;
+            profile.positionTime = state.positionTime;
+            profile.observations = state.observations;
+            profile.lastSeen = state.lastSeen;
+        }
+        return profile;
+    }
+
+    public void forget(String deviceId) {
+        devices.remove(deviceId);
+    }
+
+    /**
+     * 清除长时间没有观测的设备，返回清除的数量
+     */
+    public int evictIdle(long olderThan) {
+        int removed = 0;
+        for (Map.Entry<String, DeviceState> entry : devices.entrySet()) {
+            long lastSeen;
+            synchronized (entry.getValue()) {
+                lastSeen = entry.getValue().lastSeen;
+            }
+            if (lastSeen < olderThan && devices.remove(entry.getKey(), entry.getValue())) {
+                removed++;
+            }
+        }
+        return removed;
+    }
+
+    /**
+     * 并发观测新设备时可能短暂超过上限
+     */
+    public int getDeviceCount() {
+        return devices.size();
+    }
+
+    public int getMaxDevices() {
+        return maxDevices;
+    }
+
+    private DeviceState stateOf(String deviceId) {
+        if (deviceId == null) {
+            throw new IllegalArgumentException("deviceId不能为空");
+        }
+        DeviceState state = devices.get(deviceId);
+        if (state == null) {
+            DeviceState created = new DeviceState();
+            // 放入之前设置访问序号，避免刚创建的设备被并发的清理当作最久未访问
+            created.lastAccess = accessClock.incrementAndGet();
+            state = devices.computeIfAbsent(deviceId, key -> created);
+        }
+        state.lastAccess = accessClock.incrementAndGet();
+        if (devices.size() > maxDevices) {
+            trimToCapacity();
+        }
+        return state;
+    }
+
+    /**
+     * 淘汰最久未访问的设备，除超出的部分外再多淘汰上限的1/10，把扫描代价均摊到之后的新设备上
+     * 已有线程在清理时直接返回
+     */
+    private void trimToCapacity() {
+        if (!trimLock.tryLock()) {
+            return;
+        }
+        try {
+            int excess = devices.size() - maxDevices;
+            if (excess <= 0) {
+                return;
+            }
+            long[] accesses = new long[devices.size() + 16];
+            int count = 0;
+            for (DeviceState state : devices.values()) {
+                if (count == accesses.length) {
+                    break;
+                }
+                accesses[count++] = state.lastAccess;
+            }
+            int target = Math.min(count, excess + maxDevices / 10);
+            if (target == 0) {
+                return;
+            }
+            Arrays.sort(accesses, 0, count);
+            long cutoff = accesses[target - 1];
+            int removed = 0;
+            for (Map.Entry<String, DeviceState> entry : devices.entrySet()) {
+                if (removed == target) {
+                    break;
+                }
+                // 清理期间被再次访问的设备访问序号已大于cutoff，不会被淘汰
+                if (entry.getValue().lastAccess <= cutoff && devices.remove(entry.getKey(), entry.getValue())) {
+                    removed++;
+                }
+            }
+        } finally {
+            trimLock.unlock();
+        }
+    }
+
+    /**
+     * 和上一次位置比较移动速度，两个位置的不确定半径从距离中扣除；乱序到达的位置不参与比较
+     */
+    private void checkMovement(String deviceId, DeviceState state, long timestamp,
+                               double latitude, double longitude, double radius, List<Anomaly> anomalies) {
+        if (state.hasPosition) {
+            long elapsed = timestamp - state.positionTime;
+            if (elapsed <= 0) {
+                return;
+            }
+            double distance = CellSpatialIndex.distanceMeters(state.latitude, state.longitude, latitude, longitude);
+            double excess = distance - state.positionRadius - radius;
+            if (excess > maxSpeedMps * elapsed / 1000.0) {
+                anomalies.add(new Anomaly(deviceId, AnomalyType.IMPOSSIBLE_MOVEMENT, timestamp,
+                        formatPosition(state.latitude, state.longitude), formatPosition(latitude, longitude),
+                        String.format("%.0fm/%.0fs", distance, elapsed / 1000.0)));
+            }
+        }
+        state.hasPosition = true;
+        state.latitude = latitude;
+        state.longitude = longitude;
+        state.positionRadius = radius;
+        state.positionTime = timestamp;
+    }
+
+    /**
+     * 已知位置的基站和定位比较，只报第一个不一致的基站；位置未知的基站用精确定位学习
+     */
+    private void checkCellsAgainstFix(String deviceId, DeviceState state, long timestamp,
+                                      double latitude, double longitude, double accuracy, List<Anomaly> anomalies) {
+        boolean reported = false;
+        for (int i = 0; i < state.recentCellCount; i++) {
+            String cellKey = state.recentCells[i];
+            double[] position = locate(state, cellKey);
+            if (position == null) {
+                if (accuracy <= LEARN_MAX_ACCURACY_M) {
+                    state.learn(cellKey, latitude, longitude);
+                }
+                continue;
+            }
+            if (reported) {
+                continue;
+            }
+            double distance = CellSpatialIndex.distanceMeters(position[0], position[1], latitude, longitude);
+            if (distance > cellRangeMeters + accuracy) {
+                reported = true;
+                anomalies.add(new Anomaly(deviceId, AnomalyType.CELL_LOCATION_MISMATCH, timestamp,
+                        cellKey + "@" + formatPosition(position[0], position[1]), formatPosition(latitude, longitude),
+                        String.format("%.0fm", distance)));
+            }
+        }
+    }
+
+    private double[] locateAny(DeviceState state) {
+        for (int i = 0; i < state.recentCellCount; i++) {
+            double[] position = locate(state, state.recentCells[i]);
+            if (position != null) {
+                return position;
+            }
+        }
+        return null;
+    }
+
+    private double[] locate(DeviceState state, String cellKey) {
+        double[] position = state.learned(cellKey);
+        if (position == null && cellLocator != null) {
+            position = cellLocator.locate(cellKey);
+        }
+        return position;
+    }
+
+    private void notify(Anomaly anomaly) {
+        AnomalyListener current = listener;
+        if (anomaly != null && current != null) {
+            current.onAnomaly(anomaly);
+        }
+    }
+
+    private void notify(List<Anomaly> anomalies) {
+        for (Anomaly anomaly : anomalies) {
+            notify(anomaly);
+        }
+    }
+
+    private static String formatPosition(double latitude, double longitude) {
+        return String.format("%.5f,%.5f", latitude, longitude);
+    }
+
+    private static boolean equals(String a, String b) {
+        return a == null ? b == null : a.equals(b);
+    }
+
+    /**
+     * 单台设备的状态，大小固定
+     */
+    private static class DeviceState {
+        String drmId;
+        String hardwareInfo;
+        String hardwareKey;     // 不随系统升级改变的字段：型号、厂商、品牌、硬件平台等
+        String buildKey;        // 可能随系统升级改变的字段：PRODUCT、DEVICE
+        String osVersion;
+        int sdk;
+        int drmChanges;
+        int hardwareChanges;
+        int osUpdates;
+
+        // 最近一次位置，可能来自定位也可能来自基站
+        boolean hasPosition;
+        double latitude;
+        double longitude;
+        double positionRadius;
+        long positionTime;
+
+        // 最近一次定位结果
+        boolean hasGpsFix;
+        double gpsLatitude;
+        double gpsLongitude;
+        double gpsAccuracy;
+        long gpsTime;
+
+        final String[] recentCells = new String[RECENT_CELLS];
+        int recentCellCount;
+        long recentCellsTime;
+
+        // 学习到的基站位置，写满后轮流覆盖最旧的
+        final String[] learnedKeys = new String[LEARNED_CELLS];
+        final double[] learnedLatitudes = new double[LEARNED_CELLS];
+        final double[] learnedLongitudes = new double[LEARNED_CELLS];
+        int nextLearned;
+
+        long observations;
+        long lastSeen;
+        volatile long lastAccess;   // 检测器内的访问序号，用于按最近访问顺序淘汰
+
+        void touch(long timestamp) {
+            observations++;
+            lastSeen = Math.max(lastSeen, timestamp);
+        }
+
+        double[] learned(String cellKey) {
+            for (int i = 0; i < LEARNED_CELLS; i++) {
+                if (cellKey.equals(learnedKeys[i])) {
+                    return new double[]{learnedLatitudes[i], learnedLongitudes[i]};
+                }
+            }
+            return null;
+        }
+
+        void learn(String cellKey, double latitude, double longitude) {
+            learnedKeys[nextLearned] = cellKey;
+            learnedLatitudes[nextLearned] = latitude;
+            learnedLongitudes[nextLearned] = longitude;
+            nextLearned = (nextLearned + 1) % LEARNED_CELLS;
+        }
+    }
+
+    /**
+     * 拆分 collectHardwareInfo() 的 "名称: 值, 名称: 值" 格式，分离出系统版本字段
+     */
+    private static class HardwareInfo {
+        String hardwareKey;
+        String buildKey;
+        String osVersion;
+        int sdk;
+
+        static HardwareInfo parse(String hardwareInfo) {
+            HardwareInfo parsed = new HardwareInfo();
+            StringBuilder key = new StringBuilder(hardwareInfo.length());
+            StringBuilder buildKey = new StringBuilder();
+            for (String field : hardwareInfo.split(", ")) {
+                int separator = field.indexOf(": ");
+                String name = separator >= 0 ? field.substring(0, separator) : field;
+                String value = separator >= 0 ? field.substring(separator + 2) : "";
+                if (name.equals("OS Version")) {
+                    parsed.osVersion = value;
+                } else if (name.equals("SDK")) {
+                    try {
+                        parsed.sdk = Integer.parseInt(value.trim());
+                    } catch (NumberFormatException e) {
+                        parsed.sdk = 0;
+                    }
+                } else if (name.equals("Product") || name.equals("Device")) {
+                    if (buildKey.length() > 0) {
+                        buildKey.append(", ");
+                    }
+                    buildKey.append(field);
+                } else {
+                    if (key.length() > 0) {
+                        key.append(", ");
+                    }
+                    key.append(field);
+                }
+            }
+            parsed.hardwareKey = key.toString();
+            parsed.buildKey = buildKey.toString();
+            return parsed;
+        }
+    }
+}
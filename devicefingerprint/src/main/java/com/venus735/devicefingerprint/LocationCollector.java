@@ -1,16 +1,25 @@
 package com.venus735.devicefingerprint;
 
 import android.Manifest;
+import android.annotation.SuppressLint;
 import android.content.Context;
 import android.content.pm.PackageManager;
 import android.location.Location;
 import android.location.LocationListener;
 import android.location.LocationManager;
 import android.os.Bundle;
+import android.os.CancellationSignal;
 import android.os.Looper;
 import android.util.Log;
 import androidx.core.app.ActivityCompat;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
 public class LocationCollector {
     private Context context;
     private LocationManager locationManager;
@@ -19,10 +28,23 @@ public class LocationCollector {
     private static final int LOCATION_TIMEOUT = 10000; // 10秒超时
     private long lastLocationRequestTime = 0;
     private static final long MIN_LOCATION_REQUEST_INTERVAL = 5000; // 最小请求间隔5秒
-    
+    private final FixRequest fixRequest;
+
+    /**
+     * 向某个定位源异步请求一次当前定位，测试时可以替换
+     */
+    interface FixRequest {
+        /**
+         * @param consumer 在executor上回调一次，定位失败时结果为null
+         * @return 取消请求的操作，等待超时后调用
+         */
+        Runnable request(String provider, Executor executor, Consumer<Location> consumer);
+    }
+
     public LocationCollector(Context context) {
         this.context = context;
         this.locationManager = (LocationManager) context.getSystemService(Context.LOCATION_SERVICE);
+        this.fixRequest = this::requestFix;
     }
     
     /**
@@ -77,6 +99,100 @@ public class LocationCollector {
         return currentLocation;
     }
     
+    /**
+     * 阻塞等待一个新的定位，只能在后台线程调用，例如WorkManager任务
+     * 系统缓存的定位足够新时直接返回；否则向每个已启用的定位源请求一次当前定位，
+     * 等待全部返回或超时后取精度最高的结果，未返回的请求会被取消。
+     * @param timeoutMs 最长等待时间(毫秒)
+     * @return 定位结果；没有权限、定位服务关闭或超时都没有结果时为null
+     */
+    public Location awaitCurrentLocation(long timeoutMs) {
+        if (ActivityCompat.checkSelfPermission(context, Manifest.permission.ACCESS_FINE_LOCATION)
+            != PackageManager.PERMISSION_GRANTED &&
+            ActivityCompat.checkSelfPermission(context, Manifest.permission.ACCESS_COARSE_LOCATION)
+            != PackageManager.PERMISSION_GRANTED) {
+            Log.w(TAG, "Location permission not granted");
+            return null;
+        }
+
+        List<String> providers = new ArrayList<>();
+        for (String provider : new String[]{LocationManager.GPS_PROVIDER, LocationManager.NETWORK_PROVIDER}) {
+            if (locationManager.isProviderEnabled(provider)) {
+                providers.add(provider);
+            }
+        }
+        if (providers.isEmpty()) {
+            Log.w(TAG, "Location service not available");
+            return null;
+        }
+
+        long currentTime = System.currentTimeMillis();
+        for (String provider : providers) {
+            Location lastKnown = locationManager.getLastKnownLocation(provider);
+            if (lastKnown != null && (currentTime - lastKnown.getTime()) < LOCATION_TIMEOUT) {
+                currentLocation = lastKnown;
+                return lastKnown;
+            }
+        }
+
+        Location location = awaitFix(providers, fixRequest, timeoutMs);
+        if (location != null) {
+            currentLocation = location;
+        } else {
+            Log.w(TAG, "No location within " + timeoutMs + "ms");
+        }
+        return location;
+    }
+
+    /**
+     * 同时向多个定位源请求定位，等待全部返回或超时，返回精度最高的结果
+     */
+    static Location awaitFix(List<String> providers, FixRequest request, long timeoutMs) {
+        CountDownLatch pending = new CountDownLatch(providers.size());
+        List<Location> fixes = new ArrayList<>();
+        List<Runnable> cancels = new ArrayList<>();
+        // 结果很少，直接在回调线程上记录
+        Executor direct = Runnable::run;
+        for (String provider : providers) {
+            cancels.add(request.request(provider, direct, location -> {
+                if (location != null) {
+                    synchronized (fixes) {
+                        fixes.add(location);
+                    }
+                }
+                pending.countDown();
+            }));
+        }
+        try {
+            if (!pending.await(timeoutMs, TimeUnit.MILLISECONDS)) {
+                cancels.forEach(Runnable::run);
+            }
+        } catch (InterruptedException e) {
+            cancels.forEach(Runnable::run);
+            Thread.currentThread().interrupt();
+        }
+
+        Location best = null;
+        synchronized (fixes) {
+            for (Location fix : fixes) {
+                if (best == null || (fix.hasAccuracy() && (!best.hasAccuracy() || fix.getAccuracy() < best.getAccuracy()))) {
+                    best = fix;
+                }
+            }
+        }
+        return best;
+    }
+
+    /**
+     * 调用方已经检查过定位权限
+     */
+    @SuppressLint("MissingPermission")
+    private Runnable requestFix(String provider, Executor executor, Consumer<Location> consumer) {
+        CancellationSignal signal = new CancellationSignal();
+        locationManager.getCurrentLocation(provider, signal, executor, consumer);
+        return signal::cancel;
+    }
+
     /**
      * 请求当前位置更新
      */
@@ -118,6 +234,17 @@ public class LocationCollector {
      * @param listener 位置更新监听器
      */
     public void requestLocationUpdates(LocationListener listener) {
+        requestLocationUpdates(listener, 10000, 10, Looper.getMainLooper());
+    }
+    
+    /**
+     * 按指定间隔请求位置更新
+     * @param listener 位置更新监听器
+     * @param minTimeMs 最小时间间隔(毫秒)
+     * @param minDistanceM 最小距离间隔(米)
+     * @param looper 回调所在的Looper
+     */
+    public void requestLocationUpdates(LocationListener listener, long minTimeMs, float minDistanceM, Looper looper) {
         if (ActivityCompat.checkSelfPermission(context, Manifest.permission.ACCESS_FINE_LOCATION) 
             != PackageManager.PERMISSION_GRANTED && 
             ActivityCompat.checkSelfPermission(context, Manifest.permission.ACCESS_COARSE_LOCATION) 
@@ -126,8 +253,8 @@ public class LocationCollector {
         }
         
         // 注册位置更新监听
-        locationManager.requestLocationUpdates(LocationManager.GPS_PROVIDER, 10000, 10, listener, Looper.getMainLooper());
-        locationManager.requestLocationUpdates(LocationManager.NETWORK_PROVIDER, 10000, 10, listener, Looper.getMainLooper());
+        locationManager.requestLocationUpdates(LocationManager.GPS_PROVIDER, minTimeMs, minDistanceM, listener, looper);
+        locationManager.requestLocationUpdates(LocationManager.NETWORK_PROVIDER, minTimeMs, minDistanceM, listener, looper);
     }
     
     /**
@@ -0,0 +1,263 @@
+package com.venus735.devicefingerprint;
+
+import android.Manifest;
+import android.bluetooth.BluetoothAdapter;
+import android.bluetooth.BluetoothManager;
+import android.bluetooth.le.BluetoothLeScanner;
+import android.bluetooth.le.ScanCallback;
+import android.bluetooth.le.ScanResult;
+import android.bluetooth.le.ScanSettings;
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.content.pm.PackageManager;
+import android.net.wifi.WifiManager;
+import android.os.SystemClock;
+import android.util.Log;
+
+import androidx.core.app.ActivityCompat;
+import androidx.core.content.ContextCompat;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 被动Wi-Fi/BLE信号收集类
+ * 只接收系统或其他应用已经触发的扫描结果，自身从不发起扫描：
+ * Wi-Fi监听系统的扫描完成广播并读取缓存的扫描结果，BLE使用SCAN_MODE_OPPORTUNISTIC模式。
+ * BSSID和蓝牙地址在设备上经 {@link BeaconIdHasher} 做带密钥哈希后才保存，结果与基站一起放入同一个采集窗口。
+ * 信号源用于辅助定位，因此BLUETOOTH_SCAN没有声明neverForLocation，读取BLE和Wi-Fi结果都要求精确位置权限。
+ */
+public class PassiveRadioCollector {
+    private static final String TAG = "PassiveRadioCollector";
+    private static final int MAX_BUFFERED = 512;          // 两次提取之间最多缓存的信号源数
+
+    private final Context context;
+    private final WifiManager wifiManager;
+    private final BluetoothManager bluetoothManager;
+    private final BeaconIdHasher hasher;
+    // 信号源key -> 最近一次观测，两次提取之间同一信号源只保留最新的一条
+    private final Map<String, RadioBeaconInfo> buffer = new LinkedHashMap<>();
+    private long lastWifiScanTimestamp;
+    private boolean started;
+
+    private final BroadcastReceiver wifiScanReceiver = new BroadcastReceiver() {
+        @Override
+        public void onReceive(Context context, Intent intent) {
+            if (intent.getBooleanExtra(WifiManager.EXTRA_RESULTS_UPDATED, false)) {
+                readWifiScanResults();
+            }
+        }
+    };
+
+    private final ScanCallback bleScanCallback = new ScanCallback() {
+        @Override
+        public void onScanResult(int callbackType, ScanResult result) {
+            addBle(result);
+        }
+
+        @Override
+        public void onBatchScanResults(List<ScanResult> results) {
+            for (ScanResult result : results) {
+                addBle(result);
+            }
+        }
+
+        @Override
+        public void onScanFailed(int errorCode) {
+            Log.w(TAG, "被动BLE监听失败: " + errorCode);
+        }
+    };
+
+    /**
+     * 使用本安装的随机密钥哈希信号源地址；密钥无法读取或创建时不收集信号源，不会退回到无密钥的哈希
+     */
+    public PassiveRadioCollector(Context context) {
+        this(context, installHasher(context));
+    }
+
+    /**
+     * @param hasher 信号源地址哈希，同一后端的所有设备需使用相同的部署密钥才能关联同一个信号源
+     */
+    public PassiveRadioCollector(Context context, BeaconIdHasher hasher) {
+        this.context = context.getApplicationContext();
+        this.wifiManager = (WifiManager) this.context.getSystemService(Context.WIFI_SERVICE);
+        this.bluetoothManager = (BluetoothManager) this.context.getSystemService(Context.BLUETOOTH_SERVICE);
+        this.hasher = hasher;
+    }
+
+    private static BeaconIdHasher installHasher(Context context) {
+        try {
+            return BeaconIdHasher.forInstall(context);
+        } catch (IOException e) {
+            Log.w(TAG, "无法读取信号源哈希密钥，跳过Wi-Fi/BLE", e);
+            return null;
+        }
+    }
+
+    /**
+     * 开始被动监听
+     */
+    public synchronized void start() {
+        if (started) {
+            return;
+        }
+        started = true;
+        ContextCompat.registerReceiver(context, wifiScanReceiver,
+                new IntentFilter(WifiManager.SCAN_RESULTS_AVAILABLE_ACTION), ContextCompat.RECEIVER_NOT_EXPORTED);
+
+        BluetoothLeScanner scanner = getBleScanner();
+        if (scanner != null) {
+            ScanSettings settings = new ScanSettings.Builder()
+                    .setScanMode(ScanSettings.SCAN_MODE_OPPORTUNISTIC)
+                    .build();
+            try {
+                scanner.startScan(null, settings, bleScanCallback);
+            } catch (SecurityException e) {
+                Log.w(TAG, "缺少蓝牙扫描权限，跳过BLE", e);
+            }
+        }
+        Log.d(TAG, "被动信号监听已启动");
+    }
+
+    /**
+     * 停止被动监听
+     */
+    public synchronized void stop() {
+        if (!started) {
+            return;
+        }
+        started = false;
+        context.unregisterReceiver(wifiScanReceiver);
+        BluetoothLeScanner scanner = getBleScanner();
+        if (scanner != null) {
+            try {
+                scanner.stopScan(bleScanCallback);
+            } catch (SecurityException e) {
+                Log.w(TAG, "停止BLE监听失败", e);
+            }
+        }
+        Log.d(TAG, "被动信号监听已停止");
+    }
+
+    /**
+     * 取出自上次提取以来观测到的所有信号源
+     * 同时读取系统缓存的最新Wi-Fi扫描结果，因此未调用 {@link #start} 时(例如后台任务)也能拿到Wi-Fi数据
+     */
+    public synchronized List<RadioBeaconInfo> drainBeacons() {
+        readWifiScanResults();
+        List<RadioBeaconInfo> beacons = new ArrayList<>(buffer.values());
+        buffer.clear();
+        return beacons;
+    }
+
+    private synchronized void readWifiScanResults() {
+        if (wifiManager == null || hasher == null
+                || ActivityCompat.checkSelfPermission(context, Manifest.permission.ACCESS_FINE_LOCATION) != PackageManager.PERMISSION_GRANTED) {
+            return;
+        }
+        List<android.net.wifi.ScanResult> results;
+        try {
+            results = wifiManager.getScanResults();
+        } catch (SecurityException e) {
+            Log.w(TAG, "无法读取Wi-Fi扫描结果", e);
+            return;
+        }
+        if (results == null) {
+            return;
+        }
+        long newest = lastWifiScanTimestamp;
+        for (android.net.wifi.ScanResult result : results) {
+            // 只取上次读取之后的新扫描，ScanResult.timestamp为开机以来的微秒数
+            if (result.timestamp <= lastWifiScanTimestamp || result.BSSID == null) {
+                continue;
+            }
+            newest = Math.max(newest, result.timestamp);
+            RadioBeaconInfo info = new RadioBeaconInfo();
+            info.type = RadioBeaconInfo.TYPE_WIFI;
+            info.hashedId = hasher.hash(result.BSSID);
+            info.rssi = result.level;
+            info.frequency = result.frequency;
+            info.timestamp = toWallClock(result.timestamp / 1000);
+            put(info);
+        }
+        lastWifiScanTimestamp = newest;
+    }
+
+    private synchronized void addBle(ScanResult result) {
+        if (result.getDevice() == null) {
+            return;
+        }
+        RadioBeaconInfo info = new RadioBeaconInfo();
+        info.type = RadioBeaconInfo.TYPE_BLE;
+        info.hashedId = hasher.hash(result.getDevice().getAddress());
+        info.rssi = result.getRssi();
+        info.frequency = result.getTxPower() != ScanResult.TX_POWER_NOT_PRESENT ? result.getTxPower() : 0;
+        info.timestamp = toWallClock(result.getTimestampNanos() / 1000000);
+        put(info);
+    }
+
+    private void put(RadioBeaconInfo info) {
+        String key = info.getBeaconKey();
+        buffer.remove(key);
+        if (buffer.size() >= MAX_BUFFERED) {
+            // 缓存满时丢弃最早的一条
+            String eldest = buffer.keySet().iterator().next();
+            buffer.remove(eldest);
+        }
+        buffer.put(key, info);
+    }
+
+    private BluetoothLeScanner getBleScanner() {
+        if (bluetoothManager == null || hasher == null
+                || ActivityCompat.checkSelfPermission(context, Manifest.permission.BLUETOOTH_SCAN) != PackageManager.PERMISSION_GRANTED
+                || ActivityCompat.checkSelfPermission(context, Manifest.permission.ACCESS_FINE_LOCATION) != PackageManager.PERMISSION_GRANTED) {
+            return null;
+        }
+        BluetoothAdapter adapter = bluetoothManager.getAdapter();
+        return adapter != null && adapter.isEnabled() ? adapter.getBluetoothLeScanner() : null;
+    }
+
+    /**
+     * 开机以来的毫秒数转换为系统时间
+     */
+    private static long toWallClock(long elapsedRealtimeMs) {
+        return System.currentTimeMillis() - (SystemClock.elapsedRealtime() - elapsedRealtimeMs);
+    }
+
+    /**
+     * Wi-Fi/BLE信号源数据类
+     */
+    public static class RadioBeaconInfo {
+        public static final String TYPE_WIFI = "WIFI";
+        public static final String TYPE_BLE = "BLE";
+
+        public String type;           // 信号源类型 (WIFI/BLE)
+        public String hashedId;       // 带密钥哈希后的BSSID或蓝牙地址
+        public int rssi;              // 信号强度 (dBm)
+        public int frequency;         // Wi-Fi频率(MHz)，BLE为发射功率(dBm)，未知为0
+        public long timestamp;        // 时间戳
+
+        /**
+         * 信号源标识，不含信号强度和时间戳
+         */
+        public String getBeaconKey() {
+            return type + ":" + hashedId;
+        }
+
+        @Override
+        public String toString() {
+            return "RadioBeaconInfo{" +
+                    "type='" + type + '\'' +
+                    ", hashedId='" + hashedId + '\'' +
+                    ", rssi=" + rssi +
+                    ", frequency=" + frequency +
+                    ", timestamp=" + timestamp +
+                    '}';
+        }
+    }
+}
@@ -0,0 +1,229 @@
+package com.venus735.devicefingerprint;
+
+import android.content.Context;
+import android.util.Log;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * "已上报"过滤器
+ * 分块布隆过滤器(blocked Bloom filter)：每个key只落在一个64字节的块内，一次查询只访问一条缓存行。
+ * 过滤器分为当前代和上一代，每个时间窗口轮换一次，key在1~2个窗口后自然过期，
+ * 过期后会被重新上报一次，用于让后端感知基站仍然存在。
+ * 默认每代128KB，两代共256KB，约10万个key时误判率在1%左右；误判只会导致漏报，不会重复上报。
+ */
+public class ReportedCellFilter {
+    private static final String TAG = "ReportedCellFilter";
+    private static final int FILE_MAGIC = 0x44465246; // "DFRF"
+    private static final int FILE_VERSION = 1;
+    private static final int FILE_HEADER_BYTES = 4 + 4 + 4 + 8 + 8;
+    private static final int WORDS_PER_BLOCK = 8;      // 512位 = 64字节 = 一条缓存行
+    private static final int BITS_PER_KEY = 8;         // 每个key在块内置8位
+    public static final int DEFAULT_BLOCK_COUNT = 2048;                  // 每代 2048 * 64B = 128KB
+    public static final long DEFAULT_WINDOW_MS = 7L * 24 * 60 * 60 * 1000; // 默认7天轮换一次
+
+    private final int blockCount;
+    private final long windowMs;
+    private long[] current;
+    private long[] previous;
+    private long currentStartTime;
+    private File file;
+
+    public ReportedCellFilter(int blockCount, long windowMs) {
+        if (blockCount <= 0 || Integer.bitCount(blockCount) != 1) {
+            throw new IllegalArgumentException("blockCount必须是2的幂: " + blockCount);
+        }
+        if (windowMs <= 0) {
+            throw new IllegalArgumentException("windowMs必须为正: " + windowMs);
+        }
+        this.blockCount = blockCount;
+        this.windowMs = windowMs;
+        this.current = new long[blockCount * WORDS_PER_BLOCK];
+        this.previous = new long[blockCount * WORDS_PER_BLOCK];
+        this.currentStartTime = System.currentTimeMillis();
+    }
+
+    public ReportedCellFilter() {
+        this(DEFAULT_BLOCK_COUNT, DEFAULT_WINDOW_MS);
+    }
+
+    /**
+     * 打开应用私有目录下的过滤器文件，文件不存在或损坏时返回空过滤器
+     * @param context 上下文
+     */
+    public static ReportedCellFilter open(Context context) {
+        File file = new File(context.getNoBackupFilesDir(), "dfp_reported_cells.bin");
+        ReportedCellFilter filter;
+        try {
+            filter = file.exists() ? load(file) : new ReportedCellFilter();
+        } catch (IOException e) {
+            Log.w(TAG, "过滤器文件损坏，重新创建", e);
+            filter = new ReportedCellFilter();
+        }
+        filter.file = file;
+        return filter;
+    }
+
+    /**
+     * 判断key是否可能在当前时间窗口内已上报过
+     * @return false表示一定没有上报过；true表示大概率上报过
+     */
+    public boolean mightContain(String key) {
+        return mightContain(key, System.currentTimeMillis());
+    }
+
+    synchronized boolean mightContain(String key, long now) {
+        rotateIfNeeded(now);
+        long hash = hash(key);
+        return contains(current, hash) || contains(previous, hash);
+    }
+
+    /**
+     * 记录key已上报
+     */
+    public void put(String key) {
+        put(key, System.currentTimeMillis());
+    }
+
+    synchronized void put(String key, long now) {
+        rotateIfNeeded(now);
+        long hash = hash(key);
+        int base = blockIndex(hash) * WORDS_PER_BLOCK;
+        for (int i = 0; i < BITS_PER_KEY; i++) {
+            int bit = bitIndex(hash, i);
+            current[base + (bit >>> 6)] |= 1L << (bit & 63);
+        }
+    }
+
+    /**
+     * 保存到 {@link #open} 打开的文件，通过临时文件替换保证写入原子性
+     */
+    public synchronized void save() throws IOException {
+        if (file == null) {
+            throw new IllegalStateException("过滤器不是通过open(Context)打开的");
+        }
+        save(file);
+    }
+
+    public synchronized void save(File target) throws IOException {
+        File tmp = new File(target.getPath() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)))) {
+            out.writeInt(FILE_MAGIC);
+            out.writeInt(FILE_VERSION);
+            out.writeInt(blockCount);
+            out.writeLong(windowMs);
+            out.writeLong(currentStartTime);
+            for (long word : current) {
+                out.writeLong(word);
+            }
+            for (long word : previous) {
+                out.writeLong(word);
+            }
+        }
+        if (!tmp.renameTo(target)) {
+            throw new IOException("无法替换过滤器文件: " + target);
+        }
+    }
+
+    public static ReportedCellFilter load(File source) throws IOException {
+        return load(source, DEFAULT_BLOCK_COUNT);
+    }
+
+    /**
+     * 从文件加载，文件中的块数必须和预期一致，避免损坏的文件导致分配超大数组
+     * @param expectedBlockCount 预期的每代块数
+     */
+    public static ReportedCellFilter load(File source, int expectedBlockCount) throws IOException {
+        long expectedLength = FILE_HEADER_BYTES + 2L * expectedBlockCount * WORDS_PER_BLOCK * 8;
+        if (source.length() != expectedLength) {
+            throw new IOException("过滤器文件大小不符: " + source.length() + ", 预期 " + expectedLength);
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(source)))) {
+            if (in.readInt() != FILE_MAGIC || in.readInt() != FILE_VERSION) {
+                throw new IOException("不支持的过滤器文件格式");
+            }
+            int blockCount = in.readInt();
+            long windowMs = in.readLong();
+            if (blockCount != expectedBlockCount || windowMs <= 0) {
+                throw new IOException("过滤器文件参数错误: blockCount=" + blockCount + ", windowMs=" + windowMs);
+            }
+            ReportedCellFilter filter = new ReportedCellFilter(blockCount, windowMs);
+            filter.currentStartTime = in.readLong();
+            for (int i = 0; i < filter.current.length; i++) {
+                filter.current[i] = in.readLong();
+            }
+            for (int i = 0; i < filter.previous.length; i++) {
+                filter.previous[i] = in.readLong();
+            }
+            return filter;
+        }
+    }
+
+    /**
+     * 当前代超过时间窗口后轮换：上一代被丢弃，当前代变为上一代
+     */
+    private void rotateIfNeeded(long now) {
+        if (now - currentStartTime < windowMs) {
+            return;
+        }
+        long[] recycled = previous;
+        Arrays.fill(recycled, 0L);
+        // 超过两个窗口没有使用时两代都已过期
+        if (now - currentStartTime >= 2 * windowMs) {
+            Arrays.fill(current, 0L);
+        }
+        previous = current;
+        current = recycled;
+        currentStartTime = now;
+    }
+
+    private boolean contains(long[] words, long hash) {
+        int base = blockIndex(hash) * WORDS_PER_BLOCK;
+        for (int i = 0; i < BITS_PER_KEY; i++) {
+            int bit = bitIndex(hash, i);
+            if ((words[base + (bit >>> 6)] & (1L << (bit & 63))) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private int blockIndex(long hash) {
+        return (int) (hash >>> 32) & (blockCount - 1);
+    }
+
+    /**
+     * 块内第i个位的位置，用块索引之外的哈希位做双重哈希
+     */
+    private static int bitIndex(long hash, int i) {
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 48) | 1;
+        return (h1 + i * h2) & 511;
+    }
+
+    /**
+     * FNV-1a 64位哈希，再经过murmur3的fmix64打散
+     */
+    private static long hash(String key) {
+        long h = 0xcbf29ce484222325L;
+        for (byte b : key.getBytes(StandardCharsets.UTF_8)) {
+            h ^= b & 0xff;
+            h *= 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
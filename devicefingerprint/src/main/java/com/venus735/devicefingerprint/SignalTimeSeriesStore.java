@@ -0,0 +1,727 @@
+package com.venus735.devicefingerprint;
+
+import android.telephony.CellInfo;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * 按基站存储的多分辨率信号时间序列
+ * 原始层保存真实样本：每个基站一个按时间排序的环形缓冲区，同时受保留时长和条数上限约束，满了丢弃最旧的样本。
+ * 样本写入时只累加到1分钟桶；分钟桶结束后在定期整理时汇总进1小时桶，查询小时层时再补上尚未汇总的分钟桶，
+ * 因此小时层不会滞后。各层只保留各自的时长：原始样本很快被清理，长时间范围只剩小时桶。
+ * 查询时选择能覆盖起点、且不比请求步长更细的最粗一层，因此长时间范围的查询只读取少量桶，不扫描原始样本。
+ * 保留时长以已写入的最新样本时间为准，不依赖系统时钟。
+ */
+public class SignalTimeSeriesStore {
+    private static final int SERIAL_MAGIC = 0x44465453; // "DFTS"
+    private static final int SERIAL_VERSION = 2;
+    private static final long TRIM_INTERVAL_MS = 60 * 1000;
+    public static final long DEFAULT_RAW_RETENTION_MS = 60 * 60 * 1000L;               // 1小时
+    public static final long DEFAULT_MINUTE_RETENTION_MS = 2 * 24 * 60 * 60 * 1000L;   // 2天
+    public static final long DEFAULT_HOUR_RETENTION_MS = 90 * 24 * 60 * 60 * 1000L;    // 90天
+    public static final int DEFAULT_RAW_CAPACITY = 4096;                                 // 每个基站最多保留的原始样本数
+
+    public enum Metric {
+        SIGNAL_STRENGTH,
+        RSRP,
+        RSRQ,
+        SINR,
+        TIMING_ADVANCE
+    }
+
+    public enum Resolution {
+        /**
+         * 原始样本，不分桶；宽度1毫秒只表示时间精度
+         */
+        RAW(1),
+        MINUTE(60 * 1000L),
+        HOUR(60 * 60 * 1000L);
+
+        public final long widthMs;
+
+        Resolution(long widthMs) {
+            this.widthMs = widthMs;
+        }
+    }
+
+    /**
+     * 查询结果中的一个点，覆盖 [start, end)
+     */
+    public static class Point {
+        public final long start;
+        public final long end;
+        public final Resolution resolution;   // 数据来自哪一层
+        public final int count;
+        public final int min;
+        public final int max;
+        public final double mean;
+
+        Point(long start, long end, Resolution resolution, int count, int min, int max, double mean) {
+            this.start = start;
+            this.end = end;
+            this.resolution = resolution;
+            this.count = count;
+            this.min = min;
+            this.max = max;
+            this.mean = mean;
+        }
+
+        @Override
+        public String toString() {
+            return "Point{" +
+                    "start=" + start +
+                    ", end=" + end +
+                    ", resolution=" + resolution +
+                    ", count=" + count +
+                    ", min=" + min +
+                    ", max=" + max +
+                    ", mean=" + mean +
+                    '}';
+        }
+    }
+
+    private static final Metric[] METRICS = Metric.values();
+    private static final Resolution[] RESOLUTIONS = Resolution.values();   // 从细到粗
+
+    private final long[] retentionMs = new long[RESOLUTIONS.length];
+    private final int rawCapacity;
+    private final Map<String, Series> series = new HashMap<>();
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private long latestTimestamp = Long.MIN_VALUE;
+    private long lastTrimTimestamp = Long.MIN_VALUE;
+
+    /**
+     * @param rawCapacity 每个基站最多保留的原始样本数，超出时原始层不再覆盖整个保留时长，查询会退到分钟层
+     */
+    public SignalTimeSeriesStore(long rawRetentionMs, long minuteRetentionMs, long hourRetentionMs, int rawCapacity) {
+        if (!(rawRetentionMs > 0 && rawRetentionMs <= minuteRetentionMs && minuteRetentionMs <= hourRetentionMs)) {
+            throw new IllegalArgumentException("保留时长必须为正且逐层不减: " + rawRetentionMs + ", "
+                    + minuteRetentionMs + ", " + hourRetentionMs);
+        }
+        if (rawCapacity <= 0) {
+            throw new IllegalArgumentException("rawCapacity必须为正: " + rawCapacity);
+        }
+        retentionMs[Resolution.RAW.ordinal()] = rawRetentionMs;
+        retentionMs[Resolution.MINUTE.ordinal()] = minuteRetentionMs;
+        retentionMs[Resolution.HOUR.ordinal()] = hourRetentionMs;
+        this.rawCapacity = rawCapacity;
+    }
+
+    public SignalTimeSeriesStore(long rawRetentionMs, long minuteRetentionMs, long hourRetentionMs) {
+        this(rawRetentionMs, minuteRetentionMs, hourRetentionMs, DEFAULT_RAW_CAPACITY);
+    }
+
+    public SignalTimeSeriesStore() {
+        this(DEFAULT_RAW_RETENTION_MS, DEFAULT_MINUTE_RETENTION_MS, DEFAULT_HOUR_RETENTION_MS);
+    }
+
+    /**
+     * 写入一个采集窗口中的所有基站
+     */
+    public void add(CollectionBatch batch) {
+        add(batch.baseStations);
+    }
+
+    public void add(List<BaseStationCollector.BaseStationInfo> baseStations) {
+        lock.writeLock().lock();
+        try {
+            for (BaseStationCollector.BaseStationInfo info : baseStations) {
+                addLocked(info);
+            }
+            trimIfNeededLocked();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void add(BaseStationCollector.BaseStationInfo info) {
+        lock.writeLock().lock();
+        try {
+            addLocked(info);
+            trimIfNeededLocked();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 查询一个基站某项指标在 [from, to) 内的变化，最多返回约 maxPoints 个点
+     * 请求步长为 (to - from) / maxPoints，选择不比步长更细、且仍保留着起点数据的最粗一层；
+     * 细层已被清理时退到仍覆盖起点的最细一层。没有数据的时间段不返回点。
+     */
+    public List<Point> query(String cellKey, Metric metric, long from, long to, int maxPoints) {
+        if (maxPoints <= 0) {
+            throw new IllegalArgumentException("maxPoints必须为正: " + maxPoints);
+        }
+        long step = Math.max(1, ceilDiv(to - from, maxPoints));
+        lock.readLock().lock();
+        try {
+            Series s = series.get(cellKey);
+            return queryLocked(s, metric, from, to, selectResolution(s, from, step), step);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 指定分辨率查询，每个点对应该层的一个桶；原始层每个点对应一个样本，同一毫秒的样本合并为一个点
+     */
+    public List<Point> query(String cellKey, Metric metric, long from, long to, Resolution resolution) {
+        lock.readLock().lock();
+        try {
+            return queryLocked(series.get(cellKey), metric, from, to, resolution, resolution.widthMs);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 查询 query(cellKey, metric, from, to, maxPoints) 会使用的分辨率
+     */
+    public Resolution resolutionFor(String cellKey, long from, long to, int maxPoints) {
+        long step = Math.max(1, ceilDiv(to - from, Math.max(1, maxPoints)));
+        lock.readLock().lock();
+        try {
+            return selectResolution(series.get(cellKey), from, step);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public List<String> getCellKeys() {
+        lock.readLock().lock();
+        try {
+            return new ArrayList<>(series.keySet());
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 某一层当前保存的桶总数，原始层为样本数，用于观察内存占用
+     */
+    public int getBucketCount(Resolution resolution) {
+        lock.readLock().lock();
+        try {
+            int count = 0;
+            for (Series s : series.values()) {
+                count += resolution == Resolution.RAW ? s.raw.size : s.tier(resolution).size();
+            }
+            return count;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 汇总已结束的分钟桶并按保留时长立即清理，正常情况下写入时会定期自动执行
+     */
+    public void trim() {
+        lock.writeLock().lock();
+        try {
+            trimLocked();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 序列化原始样本和各层桶，时间按差值变长整数存储
+     */
+    public void writeTo(OutputStream output) throws IOException {
+        DataOutputStream out = new DataOutputStream(output);
+        lock.readLock().lock();
+        try {
+            out.writeInt(SERIAL_MAGIC);
+            out.writeInt(SERIAL_VERSION);
+            for (long retention : retentionMs) {
+                out.writeLong(retention);
+            }
+            out.writeInt(rawCapacity);
+            out.writeLong(latestTimestamp);
+            writeVarLong(out, series.size());
+            for (Map.Entry<String, Series> entry : series.entrySet()) {
+                Series s = entry.getValue();
+                out.writeUTF(entry.getKey());
+                SampleRing raw = s.raw;
+                out.writeLong(raw.coveredFrom);
+                writeVarLong(out, raw.size);
+                long previousTime = 0;
+                for (int i = 0; i < raw.size; i++) {
+                    writeVarLong(out, raw.time(i) - previousTime);
+                    previousTime = raw.time(i);
+                    for (int m = 0; m < METRICS.length; m++) {
+                        out.writeInt(raw.value(i, m));
+                    }
+                }
+                out.writeLong(s.rolledUpTo);
+                writeTier(out, s.minutes);
+                writeTier(out, s.hours);
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        out.flush();
+    }
+
+    public static SignalTimeSeriesStore readFrom(InputStream input) throws IOException {
+        DataInputStream in = new DataInputStream(input);
+        if (in.readInt() != SERIAL_MAGIC || in.readInt() != SERIAL_VERSION) {
+            throw new IOException("不支持的信号时间序列格式");
+        }
+        SignalTimeSeriesStore store = new SignalTimeSeriesStore(in.readLong(), in.readLong(), in.readLong(), in.readInt());
+        store.latestTimestamp = in.readLong();
+        long seriesCount = readVarLong(in);
+        int[] values = new int[METRICS.length];
+        for (long i = 0; i < seriesCount; i++) {
+            Series s = new Series(store.rawCapacity);
+            store.series.put(in.readUTF(), s);
+            long coveredFrom = in.readLong();
+            long sampleCount = readVarLong(in);
+            long time = 0;
+            for (long j = 0; j < sampleCount; j++) {
+                time += readVarLong(in);
+                for (int m = 0; m < METRICS.length; m++) {
+                    values[m] = in.readInt();
+                }
+                s.raw.add(time, values);
+            }
+            s.raw.coveredFrom = Math.max(s.raw.coveredFrom, coveredFrom);
+            s.rolledUpTo = in.readLong();
+            readTier(in, s.minutes);
+            readTier(in, s.hours);
+        }
+        return store;
+    }
+
+    private void addLocked(BaseStationCollector.BaseStationInfo info) {
+        int[] values = {info.signalStrength, info.rsrp, info.rsrq, info.sinr, info.timingAdvance};
+        String cellKey = info.getCellKey();
+        Series s = series.get(cellKey);
+        if (s == null) {
+            s = new Series(rawCapacity);
+            series.put(cellKey, s);
+        }
+        s.raw.add(info.timestamp, values);
+        long minuteStart = bucketStart(info.timestamp, Resolution.MINUTE);
+        bucket(s.minutes, minuteStart).add(values);
+        if (minuteStart < s.rolledUpTo) {
+            // 该分钟已经汇总过，迟到的样本直接补进小时桶
+            bucket(s.hours, bucketStart(info.timestamp, Resolution.HOUR)).add(values);
+        }
+        latestTimestamp = Math.max(latestTimestamp, info.timestamp);
+    }
+
+    private void trimIfNeededLocked() {
+        if (lastTrimTimestamp == Long.MIN_VALUE || latestTimestamp - lastTrimTimestamp >= TRIM_INTERVAL_MS) {
+            trimLocked();
+        }
+    }
+
+    /**
+     * 先汇总再清理：分钟层的保留时长不短于原始层，被清理的分钟桶早已结束，因此不会丢失小时层数据
+     */
+    private void trimLocked() {
+        lastTrimTimestamp = latestTimestamp;
+        if (latestTimestamp == Long.MIN_VALUE) {
+            return;
+        }
+        // 最新样本所在的分钟仍可能继续写入，只汇总它之前的分钟桶
+        long sealed = bucketStart(latestTimestamp, Resolution.MINUTE);
+        Iterator<Series> iterator = series.values().iterator();
+        while (iterator.hasNext()) {
+            Series s = iterator.next();
+            if (sealed > s.rolledUpTo) {
+                for (Bucket minute : s.minutes.subMap(s.rolledUpTo, true, sealed, false).values()) {
+                    bucket(s.hours, bucketStart(minute.start, Resolution.HOUR)).merge(minute);
+                }
+                s.rolledUpTo = sealed;
+            }
+            s.raw.removeBefore(oldestRetained(Resolution.RAW));
+            // 只删除整个桶都已超出保留时长的桶
+            s.minutes.headMap(oldestRetained(Resolution.MINUTE) - Resolution.MINUTE.widthMs, true).clear();
+            s.hours.headMap(oldestRetained(Resolution.HOUR) - Resolution.HOUR.widthMs, true).clear();
+            if (s.raw.size == 0 && s.minutes.isEmpty() && s.hours.isEmpty()) {
+                iterator.remove();
+            }
+        }
+    }
+
+    /**
+     * 该层保证仍完整保留的最早时间
+     */
+    private long oldestRetained(Resolution resolution) {
+        if (latestTimestamp == Long.MIN_VALUE) {
+            return Long.MIN_VALUE;
+        }
+        return latestTimestamp - retentionMs[resolution.ordinal()];
+    }
+
+    /**
+     * 某个基站在该层完整保留的最早时间，原始层还受条数上限影响
+     */
+    private long coveredFrom(Series s, Resolution resolution) {
+        long oldest = oldestRetained(resolution);
+        if (resolution == Resolution.RAW && s != null) {
+            return Math.max(oldest, s.raw.coveredFrom);
+        }
+        return oldest;
+    }
+
+    private Resolution selectResolution(Series s, long from, long step) {
+        for (int i = RESOLUTIONS.length - 1; i >= 0; i--) {
+            Resolution resolution = RESOLUTIONS[i];
+            if (resolution.widthMs <= step && from >= coveredFrom(s, resolution)) {
+                return resolution;
+            }
+        }
+        for (Resolution resolution : RESOLUTIONS) {
+            if (from >= coveredFrom(s, resolution)) {
+                return resolution;
+            }
+        }
+        return Resolution.HOUR;
+    }
+
+    /**
+     * 把所选层的样本或桶合并到步长对齐的点上，步长向上取整到该层桶宽的整数倍
+     */
+    private List<Point> queryLocked(Series s, Metric metric, long from, long to, Resolution resolution, long step) {
+        if (s == null || to <= from) {
+            return new ArrayList<>();
+        }
+        long width = resolution.widthMs;
+        long pointWidth = ceilDiv(Math.max(step, width), width) * width;
+        long firstBucket = bucketStart(from, resolution);
+        PointBuilder builder = new PointBuilder(resolution, firstBucket, pointWidth);
+        int m = metric.ordinal();
+        if (resolution == Resolution.RAW) {
+            SampleRing raw = s.raw;
+            for (int i = raw.indexOf(from); i < raw.size && raw.time(i) < to; i++) {
+                int value = raw.value(i, m);
+                if (value != CellInfo.UNAVAILABLE) {
+                    builder.add(raw.time(i), 1, value, value, value);
+                }
+            }
+            return builder.finish();
+        }
+        for (Bucket bucket : s.tier(resolution).subMap(firstBucket, true, to, false).values()) {
+            builder.add(bucket, m);
+        }
+        if (resolution == Resolution.HOUR) {
+            // 补上还没有汇总进小时层的分钟桶，它们都晚于已汇总的小时桶
+            long minuteFrom = Math.max(firstBucket, s.rolledUpTo);
+            long hourEnd = ceilDiv(to, width) * width;
+            if (minuteFrom < hourEnd) {
+                for (Bucket minute : s.minutes.subMap(minuteFrom, true, hourEnd, false).values()) {
+                    builder.add(minute, m);
+                }
+            }
+        }
+        return builder.finish();
+    }
+
+    private static long bucketStart(long timestamp, Resolution resolution) {
+        return Math.floorDiv(timestamp, resolution.widthMs) * resolution.widthMs;
+    }
+
+    private static Bucket bucket(TreeMap<Long, Bucket> tier, long start) {
+        Bucket bucket = tier.get(start);
+        if (bucket == null) {
+            bucket = new Bucket(start);
+            tier.put(start, bucket);
+        }
+        return bucket;
+    }
+
+    private static long ceilDiv(long x, long y) {
+        return -Math.floorDiv(-x, y);
+    }
+
+    private static void writeTier(DataOutputStream out, TreeMap<Long, Bucket> tier) throws IOException {
+        writeVarLong(out, tier.size());
+        long previousStart = 0;
+        for (Bucket bucket : tier.values()) {
+            writeVarLong(out, bucket.start - previousStart);
+            previousStart = bucket.start;
+            for (int m = 0; m < METRICS.length; m++) {
+                writeVarLong(out, bucket.count[m]);
+                if (bucket.count[m] > 0) {
+                    out.writeInt(bucket.min[m]);
+                    out.writeInt(bucket.max[m]);
+                    out.writeLong(bucket.sum[m]);
+                }
+            }
+        }
+    }
+
+    private static void readTier(DataInputStream in, TreeMap<Long, Bucket> tier) throws IOException {
+        long bucketCount = readVarLong(in);
+        long start = 0;
+        for (long j = 0; j < bucketCount; j++) {
+            start += readVarLong(in);
+            Bucket bucket = new Bucket(start);
+            for (int m = 0; m < METRICS.length; m++) {
+                bucket.count[m] = (int) readVarLong(in);
+                if (bucket.count[m] > 0) {
+                    bucket.min[m] = in.readInt();
+                    bucket.max[m] = in.readInt();
+                    bucket.sum[m] = in.readLong();
+                }
+            }
+            tier.put(start, bucket);
+        }
+    }
+
+    private static void writeVarLong(DataOutputStream out, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.writeByte((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.writeByte((int) value);
+    }
+
+    private static long readVarLong(DataInputStream in) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = in.readByte();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("变长整数格式错误");
+    }
+
+    /**
+     * 一个基站的原始样本和两层桶，桶按起始时间排序
+     */
+    private static class Series {
+        final SampleRing raw;
+        final TreeMap<Long, Bucket> minutes = new TreeMap<>();
+        final TreeMap<Long, Bucket> hours = new TreeMap<>();
+        long rolledUpTo = Long.MIN_VALUE;   // 起始时间早于它的分钟桶已汇总进小时层
+
+        Series(int rawCapacity) {
+            raw = new SampleRing(rawCapacity);
+        }
+
+        TreeMap<Long, Bucket> tier(Resolution resolution) {
+            return resolution == Resolution.HOUR ? hours : minutes;
+        }
+    }
+
+    /**
+     * 按时间排序的原始样本环形缓冲区，按需扩容到上限，满了丢弃最旧的样本
+     */
+    private static class SampleRing {
+        private static final int INITIAL_CAPACITY = 16;
+
+        final int capacity;
+        long[] times;
+        int[] values;          // 每个样本 METRICS.length 个值
+        int head;
+        int size;
+        long coveredFrom = Long.MIN_VALUE;   // 因条数上限被丢弃的样本之后的时间
+
+        SampleRing(int capacity) {
+            this.capacity = capacity;
+            int initial = Math.min(capacity, INITIAL_CAPACITY);
+            times = new long[initial];
+            values = new int[initial * METRICS.length];
+        }
+
+        long time(int i) {
+            return times[slot(i)];
+        }
+
+        int value(int i, int metric) {
+            return values[slot(i) * METRICS.length + metric];
+        }
+
+        /**
+         * 样本通常按时间顺序到达，迟到的样本向前移动插入到对应位置
+         */
+        void add(long time, int[] sample) {
+            if (size == capacity) {
+                if (time < time(0)) {
+                    coveredFrom = Math.max(coveredFrom, time + 1);
+                    return;
+                }
+                coveredFrom = Math.max(coveredFrom, time(0) + 1);
+                head = slot(1);
+                size--;
+            } else if (size == times.length) {
+                grow();
+            }
+            int position = size;
+            while (position > 0 && time(position - 1) > time) {
+                copy(position - 1, position);
+                position--;
+            }
+            int slot = slot(position);
+            times[slot] = time;
+            System.arraycopy(sample, 0, values, slot * METRICS.length, METRICS.length);
+            size++;
+        }
+
+        void removeBefore(long time) {
+            while (size > 0 && time(0) < time) {
+                head = slot(1);
+                size--;
+            }
+        }
+
+        /**
+         * 第一个时间不早于 time 的样本下标
+         */
+        int indexOf(long time) {
+            int low = 0;
+            int high = size;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (time(mid) < time) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low;
+        }
+
+        private int slot(int i) {
+            return (head + i) % times.length;
+        }
+
+        private void copy(int from, int to) {
+            int source = slot(from);
+            int target = slot(to);
+            times[target] = times[source];
+            System.arraycopy(values, source * METRICS.length, values, target * METRICS.length, METRICS.length);
+        }
+
+        private void grow() {
+            int length = (int) Math.min(capacity, times.length * 2L);
+            long[] newTimes = new long[length];
+            int[] newValues = new int[length * METRICS.length];
+            for (int i = 0; i < size; i++) {
+                int slot = slot(i);
+                newTimes[i] = times[slot];
+                System.arraycopy(values, slot * METRICS.length, newValues, i * METRICS.length, METRICS.length);
+            }
+            times = newTimes;
+            values = newValues;
+            head = 0;
+        }
+    }
+
+    /**
+     * 一个时间桶内各项指标的统计
+     */
+    private static class Bucket {
+        final long start;
+        final int[] count = new int[METRICS.length];
+        final int[] min = new int[METRICS.length];
+        final int[] max = new int[METRICS.length];
+        final long[] sum = new long[METRICS.length];
+
+        Bucket(long start) {
+            this.start = start;
+        }
+
+        void add(int[] values) {
+            for (int m = 0; m < METRICS.length; m++) {
+                if (values[m] != CellInfo.UNAVAILABLE) {
+                    add(m, values[m], values[m], 1, values[m]);
+                }
+            }
+        }
+
+        void merge(Bucket other) {
+            for (int m = 0; m < METRICS.length; m++) {
+                if (other.count[m] > 0) {
+                    add(m, other.min[m], other.max[m], other.count[m], other.sum[m]);
+                }
+            }
+        }
+
+        private void add(int metric, int otherMin, int otherMax, int otherCount, long otherSum) {
+            if (count[metric] == 0) {
+                min[metric] = otherMin;
+                max[metric] = otherMax;
+            } else {
+                min[metric] = Math.min(min[metric], otherMin);
+                max[metric] = Math.max(max[metric], otherMax);
+            }
+            count[metric] += otherCount;
+            sum[metric] += otherSum;
+        }
+    }
+
+    /**
+     * 按时间顺序接收样本或桶，合并成步长对齐的点
+     */
+    private static class PointBuilder {
+        final List<Point> points = new ArrayList<>();
+        final Resolution resolution;
+        final long firstBucket;
+        final long pointWidth;
+        long pointStart = Long.MIN_VALUE;
+        int count;
+        int min;
+        int max;
+        long sum;
+
+        PointBuilder(Resolution resolution, long firstBucket, long pointWidth) {
+            this.resolution = resolution;
+            this.firstBucket = firstBucket;
+            this.pointWidth = pointWidth;
+        }
+
+        void add(Bucket bucket, int metric) {
+            if (bucket.count[metric] > 0) {
+                add(bucket.start, bucket.count[metric], bucket.min[metric], bucket.max[metric], bucket.sum[metric]);
+            }
+        }
+
+        void add(long time, int otherCount, int otherMin, int otherMax, long otherSum) {
+            // 第一个点不早于查询起点所在的桶
+            long start = Math.max(firstBucket, Math.floorDiv(time, pointWidth) * pointWidth);
+            if (start != pointStart) {
+                flush();
+                pointStart = start;
+                count = 0;
+                min = Integer.MAX_VALUE;
+                max = Integer.MIN_VALUE;
+                sum = 0;
+            }
+            count += otherCount;
+            min = Math.min(min, otherMin);
+            max = Math.max(max, otherMax);
+            sum += otherSum;
+        }
+
+        List<Point> finish() {
+            flush();
+            return points;
+        }
+
+        private void flush() {
+            if (count > 0) {
+                long end = (Math.floorDiv(pointStart, pointWidth) + 1) * pointWidth;
+                points.add(new Point(pointStart, end, resolution, count, min, max, (double) sum / count));
+            }
+        }
+    }
+}
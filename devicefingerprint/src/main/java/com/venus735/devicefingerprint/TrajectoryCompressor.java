@@ -0,0 +1,194 @@
+package com.venus735.devicefingerprint;
+
+import android.location.Location;
+
+import java.util.List;
+
+/**
+ * 在线轨迹压缩
+ * 使用基于同步欧氏距离(SED)的滑动窗口简化：以上一个保留点为锚点，新点到来时检查窗口内每个点
+ * 与"锚点到新点按时间插值的位置"之间的距离，超过容差时保留前一个点作为新锚点。
+ * 窗口检查使用扣除量化误差后的容差，因此按时间在保留点之间插值，任意原始点时刻的位置偏差不超过容差。
+ * 窗口长度有上限，单点处理代价为常数。
+ * 精度差于 {@link #DEFAULT_MAX_ACCURACY_METERS} 的定位点(例如基站/Wi-Fi网络定位)噪声超过容差，不进入轨迹。
+ * 已保留的点在 {@link #markDelivered} 之前一直累积，可以设置上限，超过上限时丢弃最早的一半。
+ */
+public class TrajectoryCompressor {
+    private static final double METERS_PER_DEGREE = Math.PI * 6371008.8 / 180;
+    private static final int MAX_WINDOW = 128;
+    public static final double DEFAULT_TOLERANCE_METERS = 20;
+    public static final float DEFAULT_MAX_ACCURACY_METERS = 30;
+    // 保留点量化到微度后插值位置的最大偏移约0.079m，另留出局部平面近似的余量
+    static final double QUANTIZATION_METERS = 0.1;
+
+    private final double toleranceMeters;
+    private final double windowTolerance;
+    private final int maxRetainedPoints;
+    private CompressedTrajectory trajectory = new CompressedTrajectory();
+    private int deliveredPoints;    // 轨迹开头已经提交过的点数：markDelivered后沿用的锚点
+    private final double[] windowLat = new double[MAX_WINDOW];
+    private final double[] windowLon = new double[MAX_WINDOW];
+    private final long[] windowTime = new long[MAX_WINDOW];
+    private int windowSize;     // 锚点之后、尚未决定是否保留的点，最后一个是最新的点
+    private boolean hasAnchor;
+    private double anchorLat;
+    private double anchorLon;
+    private long anchorTime;
+
+    /**
+     * @param toleranceMeters 最大允许位置偏差(米)
+     * @param maxRetainedPoints 未提交的保留点上限，至少为2
+     */
+    public TrajectoryCompressor(double toleranceMeters, int maxRetainedPoints) {
+        if (!(toleranceMeters >= 0)) {
+            throw new IllegalArgumentException("toleranceMeters不能为负: " + toleranceMeters);
+        }
+        if (maxRetainedPoints < 2) {
+            throw new IllegalArgumentException("maxRetainedPoints至少为2: " + maxRetainedPoints);
+        }
+        this.toleranceMeters = toleranceMeters;
+        this.windowTolerance = Math.max(0, toleranceMeters - QUANTIZATION_METERS);
+        this.maxRetainedPoints = maxRetainedPoints;
+    }
+
+    /**
+     * @param toleranceMeters 最大允许位置偏差(米)
+     */
+    public TrajectoryCompressor(double toleranceMeters) {
+        this(toleranceMeters, Integer.MAX_VALUE);
+    }
+
+    public TrajectoryCompressor() {
+        this(DEFAULT_TOLERANCE_METERS);
+    }
+
+    /**
+     * 输入一个定位回调，没有精度或精度差于 {@link #DEFAULT_MAX_ACCURACY_METERS} 的点被忽略
+     */
+    public void add(Location location) {
+        add(location.getLatitude(), location.getLongitude(), location.getTime(),
+                location.hasAccuracy() ? location.getAccuracy() : Float.NaN);
+    }
+
+    /**
+     * 输入一个带精度的定位点
+     * @param accuracyMeters 68%置信半径(米)，未知时为NaN，未知或差于 {@link #DEFAULT_MAX_ACCURACY_METERS} 的点被忽略
+     * @return 点是否被接受
+     */
+    public boolean add(double latitude, double longitude, long time, float accuracyMeters) {
+        if (!(accuracyMeters <= DEFAULT_MAX_ACCURACY_METERS)) {
+            return false;
+        }
+        add(latitude, longitude, time);
+        return true;
+    }
+
+    /**
+     * 输入一个定位点，时间不晚于上一个点的输入会被忽略
+     */
+    public void add(double latitude, double longitude, long time) {
+        if (!hasAnchor) {
+            hasAnchor = true;
+            seal(latitude, longitude, time);
+            return;
+        }
+        long latestTime = windowSize > 0 ? windowTime[windowSize - 1] : anchorTime;
+        if (time <= latestTime) {
+            return;
+        }
+        if (windowSize == MAX_WINDOW || !fitsSegment(latitude, longitude, time)) {
+            // 前一个点保留为新锚点，窗口中只剩当前点
+            keepLatestInWindow();
+        }
+        windowLat[windowSize] = latitude;
+        windowLon[windowSize] = longitude;
+        windowTime[windowSize] = time;
+        windowSize++;
+    }
+
+    /**
+     * 保留最后输入的点，之后可以完整查询到最新时刻
+     */
+    public void flush() {
+        if (windowSize > 0) {
+            keepLatestInWindow();
+        }
+    }
+
+    /**
+     * 已保留、尚未 {@link #markDelivered} 的轨迹，不含尚未 {@link #flush} 的点
+     * 上一段提交后的轨迹以上一段的最后一个点开头，两段首尾相接，各自都能独立插值
+     */
+    public CompressedTrajectory getTrajectory() {
+        return trajectory;
+    }
+
+    /**
+     * 自上次 {@link #markDelivered} 以来是否有新的保留点
+     */
+    public boolean hasUndeliveredPoints() {
+        return trajectory.getPointCount() > deliveredPoints;
+    }
+
+    /**
+     * 确认 {@link #getTrajectory} 已经提交，开始新的一段
+     * 锚点和窗口保持不变，压缩结果与提交时机无关，不需要为了提交而 {@link #flush}
+     */
+    public void markDelivered() {
+        trajectory = new CompressedTrajectory();
+        if (hasAnchor) {
+            trajectory.append(anchorLat, anchorLon, anchorTime);
+        }
+        deliveredPoints = trajectory.getPointCount();
+    }
+
+    public double getToleranceMeters() {
+        return toleranceMeters;
+    }
+
+    private void keepLatestInWindow() {
+        int last = windowSize - 1;
+        seal(windowLat[last], windowLon[last], windowTime[last]);
+        windowSize = 0;
+    }
+
+    /**
+     * 保留一个点并作为新锚点，未提交的点达到上限时丢弃最早的一半
+     */
+    private void seal(double latitude, double longitude, long time) {
+        if (trajectory.getPointCount() >= maxRetainedPoints) {
+            List<CompressedTrajectory.TrajectoryPoint> points = trajectory.decode();
+            trajectory = new CompressedTrajectory();
+            for (CompressedTrajectory.TrajectoryPoint point : points.subList(points.size() / 2, points.size())) {
+                trajectory.append(point.latitude, point.longitude, point.time);
+            }
+            // 沿用的锚点在前一半中，剩下的点都未提交
+            deliveredPoints = 0;
+        }
+        trajectory.append(latitude, longitude, time);
+        anchorLat = latitude;
+        anchorLon = longitude;
+        anchorTime = time;
+    }
+
+    /**
+     * 以锚点为原点的局部平面坐标，检查窗口内每个点到锚点→候选点线段上同一时刻位置的距离
+     */
+    private boolean fitsSegment(double latitude, double longitude, long time) {
+        double cos = Math.cos(Math.toRadians(anchorLat));
+        double endX = (longitude - anchorLon) * cos * METERS_PER_DEGREE;
+        double endY = (latitude - anchorLat) * METERS_PER_DEGREE;
+        double duration = time - anchorTime;
+        for (int i = 0; i < windowSize; i++) {
+            double ratio = (windowTime[i] - anchorTime) / duration;
+            double x = (windowLon[i] - anchorLon) * cos * METERS_PER_DEGREE;
+            double y = (windowLat[i] - anchorLat) * METERS_PER_DEGREE;
+            double dx = x - endX * ratio;
+            double dy = y - endY * ratio;
+            if (dx * dx + dy * dy > windowTolerance * windowTolerance) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,174 @@
+package com.venus735.devicefingerprint;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.security.GeneralSecurityException;
+import java.util.Random;
+
+public class AeadChunkStreamTest {
+    private static final int CHUNK_SIZE = 1024;
+
+    @Test
+    public void roundTripAcrossChunkBoundaries() throws Exception {
+        AeadKeyRing keyRing = newKeyRing();
+        DirectBufferPool pool = AeadChunkWriter.newBufferPool(CHUNK_SIZE, 2);
+        // 空负载、不足一块、恰好整块、跨多块
+        for (int size : new int[]{0, 1, CHUNK_SIZE - 1, CHUNK_SIZE, CHUNK_SIZE + 1, 5 * CHUNK_SIZE, 10_000}) {
+            byte[] payload = randomBytes(size, size);
+            assertArrayEquals("size " + size, payload, decrypt(encrypt(payload, keyRing, pool), keyRing, pool));
+        }
+    }
+
+    @Test
+    public void ensureRemainingWritesAreRoundTripped() throws Exception {
+        AeadKeyRing keyRing = newKeyRing();
+        DirectBufferPool pool = AeadChunkWriter.newBufferPool(CHUNK_SIZE, 2);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ByteBuffer expected = ByteBuffer.allocate(1000 * 8);
+        try (AeadChunkWriter writer = new AeadChunkWriter(Channels.newChannel(out), keyRing, pool)) {
+            for (long i = 0; i < 1000; i++) {
+                writer.ensureRemaining(8).putLong(i * 31);
+                expected.putLong(i * 31);
+            }
+        }
+        assertArrayEquals(expected.array(), decrypt(out.toByteArray(), keyRing, pool));
+    }
+
+    @Test
+    public void oldKeyStillDecryptsAfterRotation() throws Exception {
+        AeadKeyRing keyRing = newKeyRing();
+        DirectBufferPool pool = AeadChunkWriter.newBufferPool(CHUNK_SIZE, 2);
+        byte[] payload = randomBytes(3000, 1);
+        byte[] beforeRotation = encrypt(payload, keyRing, pool);
+        int oldKeyId = keyRing.getActiveKeyId();
+
+        int newKeyId = keyRing.rotate();
+        assertEquals(newKeyId, keyRing.getActiveKeyId());
+        byte[] afterRotation = encrypt(payload, keyRing, pool);
+        assertEquals(oldKeyId, keyIdOf(beforeRotation, keyRing, pool));
+        assertEquals(newKeyId, keyIdOf(afterRotation, keyRing, pool));
+        assertArrayEquals(payload, decrypt(beforeRotation, keyRing, pool));
+        assertArrayEquals(payload, decrypt(afterRotation, keyRing, pool));
+
+        keyRing.retire(oldKeyId);
+        assertArrayEquals(payload, decrypt(afterRotation, keyRing, pool));
+        try {
+            decrypt(beforeRotation, keyRing, pool);
+            fail("删除的密钥不能再解密");
+        } catch (GeneralSecurityException expected) {
+            // 预期
+        }
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void activeKeyCannotBeRetired() throws Exception {
+        AeadKeyRing keyRing = newKeyRing();
+        keyRing.retire(keyRing.getActiveKeyId());
+    }
+
+    @Test
+    public void truncationIsDetected() throws Exception {
+        AeadKeyRing keyRing = newKeyRing();
+        DirectBufferPool pool = AeadChunkWriter.newBufferPool(CHUNK_SIZE, 2);
+        byte[] data = encrypt(randomBytes(3 * CHUNK_SIZE + 100, 2), keyRing, pool);
+        int frame = CHUNK_SIZE + AeadChunkWriter.FRAME_OVERHEAD;
+        // 截在分块中间、恰好截在完整分块边界(缺少最后一块)、只剩头部
+        int[] lengths = {data.length - 1, AeadChunkWriter.HEADER_SIZE + 2 * frame, AeadChunkWriter.HEADER_SIZE};
+        for (int length : lengths) {
+            byte[] truncated = new byte[length];
+            System.arraycopy(data, 0, truncated, 0, length);
+            assertDecryptFails("length " + length, truncated, keyRing, pool);
+        }
+    }
+
+    @Test
+    public void reorderedOrTamperedChunksAreRejected() throws Exception {
+        AeadKeyRing keyRing = newKeyRing();
+        DirectBufferPool pool = AeadChunkWriter.newBufferPool(CHUNK_SIZE, 2);
+        byte[] data = encrypt(randomBytes(3 * CHUNK_SIZE, 3), keyRing, pool);
+        int frame = CHUNK_SIZE + AeadChunkWriter.FRAME_OVERHEAD;
+
+        byte[] swapped = data.clone();
+        System.arraycopy(data, AeadChunkWriter.HEADER_SIZE, swapped, AeadChunkWriter.HEADER_SIZE + frame, frame);
+        System.arraycopy(data, AeadChunkWriter.HEADER_SIZE + frame, swapped, AeadChunkWriter.HEADER_SIZE, frame);
+        assertDecryptFails("swapped", swapped, keyRing, pool);
+
+        byte[] flipped = data.clone();
+        flipped[AeadChunkWriter.HEADER_SIZE + 10] ^= 1;
+        assertDecryptFails("ciphertext", flipped, keyRing, pool);
+
+        byte[] header = data.clone();
+        header[9] ^= 1;      // noncePrefix属于附加认证数据
+        assertDecryptFails("header", header, keyRing, pool);
+    }
+
+    @Test(expected = IOException.class)
+    public void chunkLargerThanReaderPoolIsRejected() throws Exception {
+        AeadKeyRing keyRing = newKeyRing();
+        byte[] data = encrypt(randomBytes(100, 4), keyRing, AeadChunkWriter.newBufferPool(CHUNK_SIZE, 2));
+        decrypt(data, keyRing, AeadChunkWriter.newBufferPool(CHUNK_SIZE / 2, 2));
+    }
+
+    private static AeadKeyRing newKeyRing() throws GeneralSecurityException {
+        AeadKeyRing keyRing = new AeadKeyRing();
+        keyRing.rotate();
+        return keyRing;
+    }
+
+    private static byte[] encrypt(byte[] payload, AeadKeyRing keyRing, DirectBufferPool pool)
+            throws IOException, GeneralSecurityException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (AeadChunkWriter writer = new AeadChunkWriter(Channels.newChannel(out), keyRing, pool)) {
+            writer.write(ByteBuffer.wrap(payload));
+        }
+        return out.toByteArray();
+    }
+
+    private static byte[] decrypt(byte[] data, AeadKeyRing keyRing, DirectBufferPool pool)
+            throws IOException, GeneralSecurityException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (AeadChunkReader reader = new AeadChunkReader(Channels.newChannel(new ByteArrayInputStream(data)), keyRing, pool)) {
+            ByteBuffer chunk;
+            while ((chunk = reader.nextChunk()) != null) {
+                byte[] bytes = new byte[chunk.remaining()];
+                chunk.get(bytes);
+                out.write(bytes);
+            }
+            assertNull(reader.nextChunk());
+        }
+        return out.toByteArray();
+    }
+
+    private static int keyIdOf(byte[] data, AeadKeyRing keyRing, DirectBufferPool pool)
+            throws IOException, GeneralSecurityException {
+        try (AeadChunkReader reader = new AeadChunkReader(Channels.newChannel(new ByteArrayInputStream(data)), keyRing, pool)) {
+            return reader.getKeyId();
+        }
+    }
+
+    private static void assertDecryptFails(String message, byte[] data, AeadKeyRing keyRing, DirectBufferPool pool)
+            throws GeneralSecurityException {
+        try {
+            decrypt(data, keyRing, pool);
+            fail(message + ": 损坏的数据应当解密失败");
+        } catch (IOException expected) {
+            // 预期
+        }
+    }
+
+    private static byte[] randomBytes(int size, long seed) {
+        byte[] bytes = new byte[size];
+        new Random(seed).nextBytes(bytes);
+        return bytes;
+    }
+}
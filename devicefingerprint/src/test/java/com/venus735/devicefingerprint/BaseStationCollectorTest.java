@@ -0,0 +1,112 @@
+package com.venus735.devicefingerprint;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+public class BaseStationCollectorTest {
+    private static final BaseStationCollector.SubscriptionTarget MOBILE =
+            new BaseStationCollector.SubscriptionTarget(1, "中国移动", "460", "00", null);
+    private static final BaseStationCollector.SubscriptionTarget UNICOM =
+            new BaseStationCollector.SubscriptionTarget(2, "中国联通", "460", "01", null);
+
+    @Test
+    public void cellsReportedByBothSimsGoToTheMatchingSim() {
+        // 两张卡的结果都包含了对方modem的基站
+        Map<Integer, List<String>> reported = new HashMap<>();
+        reported.put(1, Arrays.asList("460:00:1", "460:01:2", "460:00:3"));
+        reported.put(2, Arrays.asList("460:01:2", "460:00:1", "460:00:3"));
+        List<BaseStationCollector.BaseStationInfo> cells = collect(Arrays.asList(MOBILE, UNICOM), reported);
+
+        assertEquals(Arrays.asList("460:00:1@1", "460:00:3@1", "460:01:2@2"), labels(cells));
+        assertEquals("中国联通", cells.get(2).carrierName);
+    }
+
+    @Test
+    public void sameCarrierSimsBothKeepSharedCell() {
+        BaseStationCollector.SubscriptionTarget second =
+                new BaseStationCollector.SubscriptionTarget(3, "中国移动", "460", "00", null);
+        Map<Integer, List<String>> reported = new HashMap<>();
+        reported.put(1, Arrays.asList("460:00:1"));
+        reported.put(3, Arrays.asList("460:00:1", "460:00:4"));
+        assertEquals(Arrays.asList("460:00:1@1", "460:00:1@3", "460:00:4@3"),
+                labels(collect(Arrays.asList(MOBILE, second), reported)));
+    }
+
+    @Test
+    public void unmatchedCellsAreKeptOnce() {
+        // 漫游时基站的MCC/MNC与两张卡都不一致
+        Map<Integer, List<String>> reported = new HashMap<>();
+        reported.put(1, Arrays.asList("454:00:7", "454:00:8"));
+        reported.put(2, Arrays.asList("454:00:7", "454:03:9"));
+        assertEquals(Arrays.asList("454:00:7@1", "454:00:8@1", "454:03:9@2"),
+                labels(collect(Arrays.asList(MOBILE, UNICOM), reported)));
+    }
+
+    @Test
+    public void failedSubscriptionDoesNotDropOthers() {
+        Map<Integer, List<String>> reported = new HashMap<>();
+        reported.put(2, Arrays.asList("460:01:2"));
+        // 订阅1读取失败，回调null
+        assertEquals(Arrays.asList("460:01:2@2"), labels(collect(Arrays.asList(MOBILE, UNICOM), reported)));
+    }
+
+    @Test
+    public void callbacksFromOtherThreadsAreAwaited() {
+        List<BaseStationCollector.BaseStationInfo> cells = BaseStationCollector.collectSubscriptions(
+                Arrays.asList(MOBILE, UNICOM), (target, consumer) -> new Thread(() -> {
+                    try {
+                        Thread.sleep(100);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    consumer.accept(new ArrayList<>(Arrays.asList(cell(target.mcc + ":" + target.mnc + ":5"))));
+                }).start(), 5000);
+        assertEquals(Arrays.asList("460:00:5@1", "460:01:5@2"), labels(cells));
+    }
+
+    private static List<BaseStationCollector.BaseStationInfo> collect(List<BaseStationCollector.SubscriptionTarget> targets,
+                                                                       Map<Integer, List<String>> reported) {
+        return BaseStationCollector.collectSubscriptions(targets, (target, consumer) -> {
+            List<String> keys = reported.get(target.subscriptionId);
+            if (keys == null) {
+                consumer.accept(null);
+                return;
+            }
+            // 每次读取都得到新的对象，和平台返回的一样
+            List<BaseStationCollector.BaseStationInfo> cells = new ArrayList<>();
+            for (String key : keys) {
+                cells.add(cell(key));
+            }
+            consumer.accept(cells);
+        }, 1000);
+    }
+
+    /**
+     * @param key 形如 "mcc:mnc:cid"
+     */
+    private static BaseStationCollector.BaseStationInfo cell(String key) {
+        String[] parts = key.split(":");
+        BaseStationCollector.BaseStationInfo info = new BaseStationCollector.BaseStationInfo();
+        info.type = "LTE";
+        info.mcc = parts[0];
+        info.mnc = parts[1];
+        info.lac = 1;
+        info.cid = Long.parseLong(parts[2]);
+        return info;
+    }
+
+    private static List<String> labels(List<BaseStationCollector.BaseStationInfo> cells) {
+        List<String> labels = new ArrayList<>();
+        for (BaseStationCollector.BaseStationInfo info : cells) {
+            labels.add(info.mcc + ":" + info.mnc + ":" + info.cid + "@" + info.subscriptionId);
+        }
+        return labels;
+    }
+}
@@ -0,0 +1,86 @@
+package com.venus735.devicefingerprint;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+public class BeaconIdHasherTest {
+    private static final String BSSID = "AA:BB:CC:DD:EE:FF";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void hashIsStableAndCaseInsensitive() {
+        BeaconIdHasher hasher = new BeaconIdHasher(key(1));
+        String hash = hasher.hash(BSSID);
+        assertEquals(16, hash.length());
+        assertTrue(hash.matches("[0-9a-f]{16}"));
+        assertEquals(hash, hasher.hash(BSSID.toLowerCase()));
+        assertEquals(hash, new BeaconIdHasher(key(1)).hash(BSSID));
+        assertNotEquals(hash, hasher.hash("AA:BB:CC:DD:EE:FE"));
+    }
+
+    @Test
+    public void differentKeysGiveUnrelatedHashes() {
+        assertNotEquals(new BeaconIdHasher(key(1)).hash(BSSID), new BeaconIdHasher(key(2)).hash(BSSID));
+    }
+
+    @Test
+    public void keyIsCopied() {
+        byte[] key = key(1);
+        BeaconIdHasher hasher = new BeaconIdHasher(key);
+        String hash = hasher.hash(BSSID);
+        Arrays.fill(key, (byte) 0);
+        assertEquals(hash, hasher.hash(BSSID));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shortKeyIsRejected() {
+        new BeaconIdHasher(new byte[BeaconIdHasher.MIN_KEY_BYTES - 1]);
+    }
+
+    @Test
+    public void installKeyIsCreatedOnceAndReloaded() throws IOException {
+        File file = new File(folder.getRoot(), "radio.key");
+        byte[] created = BeaconIdHasher.loadOrCreateKey(file);
+        assertTrue(file.exists());
+        assertFalse(new File(file.getPath() + ".tmp").exists());
+        assertArrayEquals(created, BeaconIdHasher.loadOrCreateKey(file));
+
+        File other = new File(folder.getRoot(), "other.key");
+        assertFalse(Arrays.equals(created, BeaconIdHasher.loadOrCreateKey(other)));
+    }
+
+    @Test
+    public void corruptKeyFileIsRejected() throws IOException {
+        File file = folder.newFile("radio.key");
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            out.write(new byte[5]);
+        }
+        try {
+            BeaconIdHasher.loadOrCreateKey(file);
+            fail("大小不符的密钥文件应当读取失败");
+        } catch (IOException expected) {
+            // 预期
+        }
+    }
+
+    private static byte[] key(int seed) {
+        byte[] key = new byte[32];
+        Arrays.fill(key, (byte) seed);
+        return key;
+    }
+}
@@ -0,0 +1,179 @@
+package com.venus735.devicefingerprint;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+public class CellSpatialIndexTest {
+
+    @Test
+    public void emptyIndexHasNoNearest() {
+        assertNull(new CellSpatialIndex().nearest(31.2, 121.4));
+    }
+
+    @Test
+    public void nearestMatchesBruteForce() {
+        Random random = new Random(20240601);
+        for (int layout = 0; layout < 2000; layout++) {
+            // 交替使用城市范围的密集布局和跨度较大的稀疏布局
+            double spread = layout % 2 == 0 ? 0.05 : 5;
+            CellSpatialIndex index = new CellSpatialIndex();
+            List<CellSpatialIndex.Entry> entries = randomEntries(random, 1 + random.nextInt(200), spread);
+            for (CellSpatialIndex.Entry entry : entries) {
+                index.insert(entry);
+            }
+            double latitude = 31 + (random.nextDouble() - 0.5) * spread * 3;
+            double longitude = 121 + (random.nextDouble() - 0.5) * spread * 3;
+
+            CellSpatialIndex.Entry nearest = index.nearest(latitude, longitude);
+            double expected = Double.MAX_VALUE;
+            for (CellSpatialIndex.Entry entry : entries) {
+                expected = Math.min(expected, distance(latitude, longitude, entry));
+            }
+            assertEquals("layout " + layout, expected, distance(latitude, longitude, nearest), 1e-6);
+        }
+    }
+
+    @Test
+    public void rangeQueriesMatchBruteForce() {
+        Random random = new Random(7);
+        CellSpatialIndex index = new CellSpatialIndex();
+        List<CellSpatialIndex.Entry> entries = randomEntries(random, 5000, 0.5);
+        index.rebuild(entries);
+        assertEquals(entries.size(), index.size());
+
+        for (int query = 0; query < 200; query++) {
+            double latitude = 31 + (random.nextDouble() - 0.5);
+            double longitude = 121 + (random.nextDouble() - 0.5);
+            double radius = 100 + random.nextDouble() * 5000;
+            Set<CellSpatialIndex.Entry> expected = new HashSet<>();
+            for (CellSpatialIndex.Entry entry : entries) {
+                if (distance(latitude, longitude, entry) <= radius) {
+                    expected.add(entry);
+                }
+            }
+            assertEquals(expected, new HashSet<>(index.withinRadius(latitude, longitude, radius)));
+
+            double minLat = latitude - 0.02;
+            double maxLat = latitude + 0.03;
+            double minLon = longitude - 0.04;
+            double maxLon = longitude + 0.01;
+            Set<CellSpatialIndex.Entry> inBox = new HashSet<>();
+            for (CellSpatialIndex.Entry entry : entries) {
+                if (entry.latitude >= minLat && entry.latitude <= maxLat
+                        && entry.longitude >= minLon && entry.longitude <= maxLon) {
+                    inBox.add(entry);
+                }
+            }
+            assertEquals(inBox, new HashSet<>(index.withinBoundingBox(minLat, minLon, maxLat, maxLon)));
+        }
+    }
+
+    @Test
+    public void hasObservedNearChecksCellKey() {
+        CellSpatialIndex index = new CellSpatialIndex();
+        index.insert(new CellSpatialIndex.Entry(31.2, 121.4, "LTE:460:00:1:1", 1));
+        assertTrue(index.hasObservedNear("LTE:460:00:1:1", 31.201, 121.401, 500));
+        assertFalse(index.hasObservedNear("LTE:460:00:1:2", 31.201, 121.401, 500));
+        assertFalse(index.hasObservedNear("LTE:460:00:1:1", 31.3, 121.4, 500));
+    }
+
+    @Test
+    public void serializationRoundTrip() throws IOException {
+        Random random = new Random(11);
+        CellSpatialIndex index = new CellSpatialIndex(0.005);
+        List<CellSpatialIndex.Entry> entries = randomEntries(random, 1000, 0.2);
+        index.rebuild(entries);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        index.writeTo(bytes);
+
+        CellSpatialIndex restored = CellSpatialIndex.readFrom(new ByteArrayInputStream(bytes.toByteArray()));
+        assertEquals(index.size(), restored.size());
+        List<CellSpatialIndex.Entry> all = restored.withinBoundingBox(-90, -180, 90, 180);
+        all.sort(Comparator.comparingLong((CellSpatialIndex.Entry e) -> e.timestamp).thenComparing(e -> e.cellKey));
+        entries.sort(Comparator.comparingLong((CellSpatialIndex.Entry e) -> e.timestamp).thenComparing(e -> e.cellKey));
+        for (int i = 0; i < entries.size(); i++) {
+            assertEquals(entries.get(i).cellKey, all.get(i).cellKey);
+            assertEquals(entries.get(i).timestamp, all.get(i).timestamp);
+            assertEquals(entries.get(i).latitude, all.get(i).latitude, 1e-6);
+            assertEquals(entries.get(i).longitude, all.get(i).longitude, 1e-6);
+        }
+    }
+
+    @Test
+    public void readFromRejectsKeyIndexOutOfRange() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(0x44465349);
+        out.writeInt(1);
+        out.writeDouble(CellSpatialIndex.DEFAULT_BUCKET_DEGREES);
+        out.writeByte(1);           // keyCount
+        out.writeUTF("LTE:460:00:1:1");
+        out.writeByte(1);           // entryCount
+        out.writeByte(5);           // keyIndex越界
+        out.writeInt(31_200_000);
+        out.writeInt(121_400_000);
+        out.writeByte(1);
+        assertReadFails(bytes.toByteArray());
+    }
+
+    @Test
+    public void readFromRejectsCorruptHeaderAndTruncation() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(0x44465349);
+        out.writeInt(1);
+        out.writeDouble(-1);        // 网格大小非法
+        assertReadFails(bytes.toByteArray());
+
+        CellSpatialIndex index = new CellSpatialIndex();
+        index.rebuild(randomEntries(new Random(3), 10, 0.1));
+        ByteArrayOutputStream valid = new ByteArrayOutputStream();
+        index.writeTo(valid);
+        byte[] data = valid.toByteArray();
+        byte[] truncated = new byte[data.length - 3];
+        System.arraycopy(data, 0, truncated, 0, truncated.length);
+        assertReadFails(truncated);
+    }
+
+    private static void assertReadFails(byte[] data) {
+        try {
+            CellSpatialIndex.readFrom(new ByteArrayInputStream(data));
+            fail("损坏的数据应当读取失败");
+        } catch (IOException expected) {
+            // 预期
+        }
+    }
+
+    private static List<CellSpatialIndex.Entry> randomEntries(Random random, int count, double spread) {
+        List<CellSpatialIndex.Entry> entries = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            double latitude = 31 + (random.nextDouble() - 0.5) * spread;
+            double longitude = 121 + (random.nextDouble() - 0.5) * spread;
+            // 坐标取到微度，和序列化精度一致
+            latitude = Math.round(latitude * 1e6) / 1e6;
+            longitude = Math.round(longitude * 1e6) / 1e6;
+            entries.add(new CellSpatialIndex.Entry(latitude, longitude, "LTE:460:00:" + random.nextInt(50) + ":" + i, i));
+        }
+        return entries;
+    }
+
+    private static double distance(double latitude, double longitude, CellSpatialIndex.Entry entry) {
+        return CellSpatialIndex.distanceMeters(latitude, longitude, entry.latitude, entry.longitude);
+    }
+}
@@ -0,0 +1,149 @@
+package com.venus735.devicefingerprint;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+import android.telephony.CellInfo;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 本地单元测试中 android.location.Location 不可用，这里的窗口都不带定位
+ */
+public class CollectionBatchCodecTest {
+
+    @Test
+    public void version3RoundTrip() throws IOException {
+        CollectionBatch first = new CollectionBatch();
+        first.timestamp = 1000;
+        first.baseStations.add(cell(1, -85, -95, -11, 13, 7));
+        first.baseStations.add(cell(2, -100, CellInfo.UNAVAILABLE, CellInfo.UNAVAILABLE, CellInfo.UNAVAILABLE,
+                CellInfo.UNAVAILABLE));
+        first.beacons.add(beacon("WIFI", "0123456789abcdef", -60, 2412));
+        CollectionBatch second = new CollectionBatch();
+        second.timestamp = 2000;
+        BaseStationCollector.BaseStationInfo nr = cell(3, -70, -80, -9, 25, 100);
+        nr.type = "NR";
+        nr.carrierName = null;
+        second.baseStations.add(nr);
+
+        ByteBuffer encoded = CollectionBatchCodec.encode("device-1", List.of(first, second));
+        assertEquals(CollectionBatchCodec.MAGIC, encoded.getInt(0));
+        assertEquals(3, encoded.get(4));
+        CollectionBatchCodec.Payload payload = CollectionBatchCodec.decode(encoded);
+        assertEquals("device-1", payload.deviceId);
+        assertEquals(2, payload.batches.size());
+
+        CollectionBatch decoded = payload.batches.get(0);
+        assertEquals(1000, decoded.timestamp);
+        assertNull(decoded.location);
+        assertCell(first.baseStations.get(0), decoded.baseStations.get(0));
+        assertCell(first.baseStations.get(1), decoded.baseStations.get(1));
+        assertEquals(1, decoded.beacons.size());
+        assertEquals("0123456789abcdef", decoded.beacons.get(0).hashedId);
+        assertEquals(2412, decoded.beacons.get(0).frequency);
+
+        decoded = payload.batches.get(1);
+        assertCell(nr, decoded.baseStations.get(0));
+        assertNull(decoded.baseStations.get(0).carrierName);
+        assertEquals(0, decoded.beacons.size());
+    }
+
+    @Test
+    public void version2HasNoSignalQuality() throws IOException {
+        CollectionBatch batch = new CollectionBatch();
+        batch.timestamp = 1000;
+        batch.baseStations.add(cell(1, -85, -95, -11, 13, 7));
+        ByteBuffer encoded = CollectionBatchCodec.encode("device-1", List.of(batch));
+        // 去掉每个基站末尾的16字节并改写版本号，得到等价的版本2数据
+        byte[] bytes = new byte[encoded.remaining()];
+        encoded.get(bytes);
+        int cellEnd = bytes.length - 1;
+        byte[] v2 = new byte[bytes.length - 16];
+        System.arraycopy(bytes, 0, v2, 0, cellEnd - 16);
+        v2[v2.length - 1] = bytes[bytes.length - 1];
+        v2[4] = 2;
+
+        BaseStationCollector.BaseStationInfo decoded = CollectionBatchCodec.decode(ByteBuffer.wrap(v2))
+                .batches.get(0).baseStations.get(0);
+        assertEquals(-85, decoded.signalStrength);
+        assertEquals(CellInfo.UNAVAILABLE, decoded.rsrp);
+        assertEquals(CellInfo.UNAVAILABLE, decoded.rsrq);
+        assertEquals(CellInfo.UNAVAILABLE, decoded.sinr);
+        assertEquals(CellInfo.UNAVAILABLE, decoded.timingAdvance);
+    }
+
+    @Test
+    public void rejectsMalformedPayloads() throws IOException {
+        CollectionBatch batch = new CollectionBatch();
+        batch.baseStations.add(cell(1, -85, -95, -11, 13, 7));
+        ByteBuffer encoded = CollectionBatchCodec.encode("device-1", List.of(batch));
+        byte[] bytes = new byte[encoded.remaining()];
+        encoded.get(bytes);
+
+        byte[] badVersion = bytes.clone();
+        badVersion[4] = CollectionBatchCodec.VERSION + 1;
+        assertRejected("version", badVersion);
+        assertRejected("truncated", Arrays.copyOf(bytes, bytes.length - 5));
+    }
+
+    private static void assertRejected(String message, byte[] bytes) {
+        try {
+            CollectionBatchCodec.decode(ByteBuffer.wrap(bytes));
+            fail(message + ": 错误的数据应当解析失败");
+        } catch (IOException expected) {
+            // 预期
+        }
+    }
+
+    private static void assertCell(BaseStationCollector.BaseStationInfo expected, BaseStationCollector.BaseStationInfo actual) {
+        assertEquals(expected.type, actual.type);
+        assertEquals(expected.mcc, actual.mcc);
+        assertEquals(expected.mnc, actual.mnc);
+        assertEquals(expected.cid, actual.cid);
+        assertEquals(expected.lac, actual.lac);
+        assertEquals(expected.signalStrength, actual.signalStrength);
+        assertEquals(expected.timestamp, actual.timestamp);
+        assertEquals(expected.subscriptionId, actual.subscriptionId);
+        assertEquals(expected.carrierName, actual.carrierName);
+        assertEquals(expected.rsrp, actual.rsrp);
+        assertEquals(expected.rsrq, actual.rsrq);
+        assertEquals(expected.sinr, actual.sinr);
+        assertEquals(expected.timingAdvance, actual.timingAdvance);
+    }
+
+    private static BaseStationCollector.BaseStationInfo cell(long cid, int signalStrength, int rsrp, int rsrq, int sinr,
+                                                             int timingAdvance) {
+        BaseStationCollector.BaseStationInfo info = new BaseStationCollector.BaseStationInfo();
+        info.type = "LTE";
+        info.mcc = "460";
+        info.mnc = "00";
+        info.cid = cid;
+        info.lac = 4096;
+        info.signalStrength = signalStrength;
+        info.timestamp = 1_700_000_000_000L + cid;
+        info.subscriptionId = 1;
+        info.carrierName = "中国移动";
+        info.rsrp = rsrp;
+        info.rsrq = rsrq;
+        info.sinr = sinr;
+        info.timingAdvance = timingAdvance;
+        return info;
+    }
+
+    private static PassiveRadioCollector.RadioBeaconInfo beacon(String type, String hashedId, int rssi, int frequency) {
+        PassiveRadioCollector.RadioBeaconInfo beacon = new PassiveRadioCollector.RadioBeaconInfo();
+        beacon.type = type;
+        beacon.hashedId = hashedId;
+        beacon.rssi = rssi;
+        beacon.frequency = frequency;
+        beacon.timestamp = 1_700_000_000_000L;
+        return beacon;
+    }
+}
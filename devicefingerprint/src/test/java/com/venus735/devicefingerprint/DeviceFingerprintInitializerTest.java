@@ -0,0 +1,204 @@
+package com.venus735.devicefingerprint;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class DeviceFingerprintInitializerTest {
+
+    @Test
+    public void dependenciesAreCreatedFirst() {
+        List<String> order = Collections.synchronizedList(new ArrayList<>());
+        DeviceFingerprintInitializer initializer = newInitializer();
+        initializer.register("a", recording(order, "a"));
+        initializer.register("b", recording(order, "b"), "a");
+        initializer.register("c", recording(order, "c"));
+        initializer.register("d", recording(order, "d"), "b", "c");
+
+        assertEquals("d", initializer.get("d"));
+        assertEquals(List.of("a", "b", "c", "d"), order);
+        // 已创建的组件不会再次创建
+        initializer.get("b");
+        assertEquals(4, order.size());
+    }
+
+    @Test
+    public void componentsAreCreatedLazily() {
+        AtomicInteger created = new AtomicInteger();
+        DeviceFingerprintInitializer initializer = newInitializer();
+        initializer.register("a", ignored -> created.incrementAndGet());
+        initializer.register("b", ignored -> created.incrementAndGet(), "a");
+        assertFalse(initializer.isInitialized("a"));
+        assertEquals(0, created.get());
+        initializer.get("a");
+        assertTrue(initializer.isInitialized("a"));
+        assertFalse(initializer.isInitialized("b"));
+        assertEquals(1, created.get());
+    }
+
+    @Test
+    public void concurrentGetCreatesOnce() throws Exception {
+        AtomicInteger created = new AtomicInteger();
+        AtomicInteger dependencyCreated = new AtomicInteger();
+        DeviceFingerprintInitializer initializer = newInitializer();
+        initializer.register("slow", ignored -> {
+            dependencyCreated.incrementAndGet();
+            Thread.sleep(50);
+            return new Object();
+        });
+        initializer.register("component", ignored -> {
+            created.incrementAndGet();
+            return new Object();
+        }, "slow");
+
+        int threads = 16;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<Object>> results = new ArrayList<>();
+        for (int i = 0; i < threads; i++) {
+            results.add(executor.submit(() -> {
+                start.await();
+                return initializer.get("component");
+            }));
+        }
+        start.countDown();
+        Object first = results.get(0).get(10, TimeUnit.SECONDS);
+        for (Future<Object> result : results) {
+            assertSame(first, result.get(10, TimeUnit.SECONDS));
+        }
+        executor.shutdown();
+        assertEquals(1, created.get());
+        assertEquals(1, dependencyCreated.get());
+    }
+
+    @Test
+    public void failureStaysWithComponentAndDependents() throws Exception {
+        AtomicInteger attempts = new AtomicInteger();
+        DeviceFingerprintInitializer initializer = newInitializer();
+        initializer.register("broken", ignored -> {
+            attempts.incrementAndGet();
+            throw new java.io.IOException("MediaDrm不可用");
+        });
+        initializer.register("dependent", ignored -> "dependent", "broken");
+        initializer.register("unrelated", ignored -> "unrelated");
+
+        try {
+            initializer.get("dependent");
+            fail("依赖创建失败时组件也应失败");
+        } catch (IllegalStateException expected) {
+            assertTrue(expected.getCause() instanceof java.io.IOException);
+        }
+        assertFalse(initializer.isInitialized("dependent"));
+        assertEquals("unrelated", initializer.get("unrelated"));
+
+        // 后台预热同样只影响失败的组件和依赖它的组件
+        DeviceFingerprintInitializer async = newInitializer();
+        async.register("broken", ignored -> {
+            throw new IllegalStateException("broken");
+        });
+        async.register("dependent", ignored -> "dependent", "broken");
+        async.register("unrelated", ignored -> "unrelated");
+        async.register("afterUnrelated", ignored -> "afterUnrelated", "unrelated");
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        async.initializeAsync(executor).get(10, TimeUnit.SECONDS);
+        executor.shutdown();
+        assertFalse(async.isInitialized("broken"));
+        assertFalse(async.isInitialized("dependent"));
+        assertTrue(async.isInitialized("unrelated"));
+        assertTrue(async.isInitialized("afterUnrelated"));
+
+        // 失败的组件下次获取时重试
+        int before = attempts.get();
+        try {
+            initializer.get("broken");
+            fail();
+        } catch (IllegalStateException expected) {
+            assertEquals(before + 1, attempts.get());
+        }
+    }
+
+    @Test
+    public void cyclesAreRejected() {
+        DeviceFingerprintInitializer initializer = newInitializer();
+        // 依赖必须先注册，声明的依赖无法成环
+        try {
+            initializer.register("self", ignored -> "self", "self");
+            fail("依赖自身应当被拒绝");
+        } catch (IllegalStateException expected) {
+            // 预期
+        }
+        try {
+            initializer.register("a", ignored -> "a", "b");
+            fail("依赖未注册的组件应当被拒绝");
+        } catch (IllegalStateException expected) {
+            // 预期
+        }
+
+        // 工厂中获取未声明的组件形成循环
+        initializer.register("x", init -> init.get("y"));
+        initializer.register("y", init -> init.get("x"));
+        try {
+            initializer.get("x");
+            fail("循环依赖应当被检测到");
+        } catch (IllegalStateException expected) {
+            assertTrue(expected.getMessage(), expected.getMessage().contains("循环依赖"));
+        }
+        assertFalse(initializer.isInitialized("x"));
+        assertFalse(initializer.isInitialized("y"));
+    }
+
+    @Test
+    public void timingReportListsEachComponent() throws Exception {
+        long[] now = {0};
+        DeviceFingerprintInitializer initializer = new DeviceFingerprintInitializer(null, () -> now[0]);
+        initializer.register("fast", ignored -> {
+            now[0] += 1_000_000;
+            return "fast";
+        });
+        initializer.register("slow", ignored -> {
+            now[0] += 25_000_000;
+            return "slow";
+        }, "fast");
+        initializer.initializeAsync(Runnable::run).get(10, TimeUnit.SECONDS);
+
+        Map<String, Long> timings = initializer.getInitTimings();
+        assertEquals(List.of("fast", "slow"), new ArrayList<>(timings.keySet()));
+        assertEquals(1_000_000L, timings.get("fast").longValue());
+        // 不含依赖的耗时
+        assertEquals(25_000_000L, timings.get("slow").longValue());
+        String report = initializer.getTimingReport();
+        assertTrue(report, report.contains("fast: " + String.format("%.2f ms", 1.0)));
+        assertTrue(report, report.contains("slow: " + String.format("%.2f ms", 25.0)));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void unknownComponentIsRejected() {
+        newInitializer().get("missing");
+    }
+
+    private static DeviceFingerprintInitializer newInitializer() {
+        return new DeviceFingerprintInitializer(null, System::nanoTime);
+    }
+
+    private static DeviceFingerprintInitializer.ComponentFactory<String> recording(List<String> order, String name) {
+        return ignored -> {
+            order.add(name);
+            return name;
+        };
+    }
+}
@@ -0,0 +1,213 @@
+package com.venus735.devicefingerprint;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+public class FingerprintDriftDetectorTest {
+    private static final String DEVICE = "device-1";
+    private static final long MINUTE = 60 * 1000;
+
+    private final List<FingerprintDriftDetector.Anomaly> anomalies = Collections.synchronizedList(new ArrayList<>());
+
+    @Before
+    public void setUp() {
+        anomalies.clear();
+    }
+
+    @Test
+    public void drmIdChangeIsReported() {
+        FingerprintDriftDetector detector = newDetector(null, 100);
+        detector.observeDrmId(DEVICE, "drm-a", 1);
+        detector.observeDrmId(DEVICE, "drm-a", 2);
+        detector.observeDrmId(DEVICE, null, 3);
+        assertTrue(anomalies.isEmpty());
+        detector.observeDrmId(DEVICE, "drm-b", 4);
+        assertEquals(1, anomalies.size());
+        assertEquals(FingerprintDriftDetector.AnomalyType.DRM_ID_CHANGED, anomalies.get(0).type);
+        assertEquals("drm-a", anomalies.get(0).previousValue);
+        assertEquals(1, detector.getProfile(DEVICE).drmChanges);
+    }
+
+    @Test
+    public void hardwareChangeWithoutOsUpdateIsReported() {
+        FingerprintDriftDetector detector = newDetector(null, 100);
+        detector.observeHardwareInfo(DEVICE, hardware("Pixel 7", "panther", "14", 34), 1);
+        // 系统升级时PRODUCT/DEVICE可能一起变化，不报异常
+        detector.observeHardwareInfo(DEVICE, hardware("Pixel 7", "panther_beta", "15", 35), 2);
+        assertTrue(anomalies.isEmpty());
+        // 没有系统升级时PRODUCT/DEVICE变化
+        detector.observeHardwareInfo(DEVICE, hardware("Pixel 7", "panther", "15", 35), 3);
+        assertEquals(1, anomalies.size());
+        assertEquals(FingerprintDriftDetector.AnomalyType.HARDWARE_CHANGED, anomalies.get(0).type);
+        detector.observeHardwareInfo(DEVICE, hardware("SM-G998", "panther", "15", 35), 4);
+        assertEquals(2, anomalies.size());
+        assertEquals(FingerprintDriftDetector.AnomalyType.HARDWARE_CHANGED, anomalies.get(1).type);
+        detector.observeHardwareInfo(DEVICE, hardware("SM-G998", "panther", "13", 33), 5);
+        assertEquals(3, anomalies.size());
+        assertEquals(FingerprintDriftDetector.AnomalyType.OS_DOWNGRADE, anomalies.get(2).type);
+
+        FingerprintDriftDetector.DeviceProfile profile = detector.getProfile(DEVICE);
+        assertEquals(2, profile.osUpdates);
+        assertEquals(2, profile.hardwareChanges);
+        assertEquals(33, profile.sdk);
+    }
+
+    @Test
+    public void modelChangeDuringOsUpdateIsReported() {
+        FingerprintDriftDetector detector = newDetector(null, 100);
+        detector.observeHardwareInfo(DEVICE, hardware("Pixel 7", "14", 34), 1);
+        // 型号不会随系统升级改变
+        detector.observeHardwareInfo(DEVICE, hardware("Pixel 7 Pro", "15", 35), 2);
+        assertEquals(1, anomalies.size());
+        assertEquals(FingerprintDriftDetector.AnomalyType.HARDWARE_CHANGED, anomalies.get(0).type);
+        // 同时回退系统版本和更换型号，两个异常都报告
+        detector.observeHardwareInfo(DEVICE, "Manufacturer: Other, Model: Pixel 7 Pro, OS Version: 13, SDK: 33", 3);
+        assertEquals(3, anomalies.size());
+        assertEquals(FingerprintDriftDetector.AnomalyType.OS_DOWNGRADE, anomalies.get(1).type);
+        assertEquals(FingerprintDriftDetector.AnomalyType.HARDWARE_CHANGED, anomalies.get(2).type);
+        assertEquals(2, detector.getProfile(DEVICE).hardwareChanges);
+    }
+
+    @Test
+    public void impossibleMovementIsReported() {
+        FingerprintDriftDetector detector = newDetector(null, 100);
+        detector.observeLocation(DEVICE, 31.2, 121.4, 10, 0);
+        // 上海到北京约1070公里，十分钟内不可能到达
+        detector.observeLocation(DEVICE, 39.9, 116.4, 10, 10 * MINUTE);
+        assertEquals(1, anomalies.size());
+        assertEquals(FingerprintDriftDetector.AnomalyType.IMPOSSIBLE_MOVEMENT, anomalies.get(0).type);
+        // 三小时的航班是可能的
+        detector.observeLocation(DEVICE, 31.2, 121.4, 10, 240 * MINUTE);
+        assertEquals(1, anomalies.size());
+        // 乱序到达的位置不参与比较
+        detector.observeLocation(DEVICE, 39.9, 116.4, 10, 200 * MINUTE);
+        assertEquals(1, anomalies.size());
+    }
+
+    @Test
+    public void cellFarFromFixIsReported() {
+        FingerprintDriftDetector detector = newDetector(cellKey -> cellKey.endsWith(":1") ? new double[]{39.9, 116.4} : null, 100);
+        detector.observeCells(DEVICE, List.of(cell(1)), 1000);
+        detector.observeLocation(DEVICE, 31.2, 121.4, 10, 2000);
+        // 基站位置先被当作设备位置，因此同时报告不可能的移动
+        assertEquals(List.of(FingerprintDriftDetector.AnomalyType.IMPOSSIBLE_MOVEMENT,
+                FingerprintDriftDetector.AnomalyType.CELL_LOCATION_MISMATCH), types());
+    }
+
+    @Test
+    public void cellPositionsAreLearnedFromAccurateFixes() {
+        FingerprintDriftDetector detector = newDetector(null, 100);
+        detector.observeCells(DEVICE, List.of(cell(2)), 0);
+        detector.observeLocation(DEVICE, 31.2, 121.4, 10, 1000);
+        assertTrue(anomalies.isEmpty());
+        // 很久之后同一基站和一个相距很远的定位一起出现
+        detector.observeCells(DEVICE, List.of(cell(2)), 600 * MINUTE);
+        detector.observeLocation(DEVICE, 39.9, 116.4, 10, 600 * MINUTE + 1000);
+        assertTrue(types().contains(FingerprintDriftDetector.AnomalyType.CELL_LOCATION_MISMATCH));
+    }
+
+    @Test
+    public void deviceCountIsCappedAndRecentlyObservedDevicesSurvive() {
+        FingerprintDriftDetector detector = newDetector(null, 100);
+        detector.observeDrmId("keep", "drm", 0);
+        for (int i = 0; i < 1000; i++) {
+            detector.observeDrmId("device-" + i, "drm", i);
+            detector.observeDrmId("keep", "drm", i);
+            assertTrue(detector.getDeviceCount() <= 100);
+        }
+        assertNotNull(detector.getProfile("keep"));
+        assertNotNull(detector.getProfile("device-999"));
+        assertNull(detector.getProfile("device-0"));
+    }
+
+    @Test
+    public void evictedDeviceStartsOver() {
+        FingerprintDriftDetector detector = newDetector(null, 2);
+        detector.observeDrmId("a", "drm-a", 1);
+        detector.observeDrmId("b", "drm-b", 2);
+        detector.observeDrmId("c", "drm-c", 3);
+        assertNull(detector.getProfile("a"));
+        detector.observeDrmId("a", "drm-other", 4);
+        assertTrue(anomalies.isEmpty());
+        assertEquals(1, detector.getProfile("a").observations);
+    }
+
+    @Test
+    public void concurrentObservationsStayBounded() throws InterruptedException {
+        FingerprintDriftDetector detector = newDetector(null, 500);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        for (int t = 0; t < 8; t++) {
+            int thread = t;
+            executor.execute(() -> {
+                for (int i = 0; i < 20_000; i++) {
+                    detector.observeDrmId("device-" + thread + "-" + i, "drm", i);
+                }
+            });
+        }
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(1, TimeUnit.MINUTES));
+        assertTrue(detector.getDeviceCount() + " devices", detector.getDeviceCount() <= 500);
+        assertTrue(anomalies.isEmpty());
+    }
+
+    @Test
+    public void evictIdleRemovesDevicesNotSeenSince() {
+        FingerprintDriftDetector detector = newDetector(null, 100);
+        detector.observeDrmId("old", "drm", 1000);
+        detector.observeDrmId("new", "drm", 5000);
+        assertEquals(1, detector.evictIdle(2000));
+        assertNull(detector.getProfile("old"));
+        assertEquals(5000, detector.getProfile("new").lastSeen);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsNonPositiveCapacity() {
+        new FingerprintDriftDetector(FingerprintDriftDetector.DEFAULT_MAX_SPEED_MPS,
+                FingerprintDriftDetector.DEFAULT_CELL_RANGE_METERS, null, 0);
+    }
+
+    private FingerprintDriftDetector newDetector(FingerprintDriftDetector.CellLocator locator, int maxDevices) {
+        FingerprintDriftDetector detector = new FingerprintDriftDetector(FingerprintDriftDetector.DEFAULT_MAX_SPEED_MPS,
+                FingerprintDriftDetector.DEFAULT_CELL_RANGE_METERS, locator, maxDevices);
+        detector.setAnomalyListener(anomalies::add);
+        return detector;
+    }
+
+    private List<FingerprintDriftDetector.AnomalyType> types() {
+        List<FingerprintDriftDetector.AnomalyType> types = new ArrayList<>();
+        for (FingerprintDriftDetector.Anomaly anomaly : anomalies) {
+            types.add(anomaly.type);
+        }
+        return types;
+    }
+
+    private static String hardware(String model, String osVersion, int sdk) {
+        return "Manufacturer: Test, Model: " + model + ", OS Version: " + osVersion + ", SDK: " + sdk;
+    }
+
+    private static String hardware(String model, String product, String osVersion, int sdk) {
+        return hardware(model, osVersion, sdk) + ", Device: " + product + ", Product: " + product;
+    }
+
+    private static BaseStationCollector.BaseStationInfo cell(long cid) {
+        BaseStationCollector.BaseStationInfo info = new BaseStationCollector.BaseStationInfo();
+        info.type = "LTE";
+        info.mcc = "460";
+        info.mnc = "00";
+        info.lac = 1;
+        info.cid = cid;
+        return info;
+    }
+}
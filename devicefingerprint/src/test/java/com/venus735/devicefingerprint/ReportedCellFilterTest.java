@@ -0,0 +1,145 @@
+package com.venus735.devicefingerprint;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+public class ReportedCellFilterTest {
+    private static final long WINDOW_MS = 1000;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void putKeysAreContained() {
+        ReportedCellFilter filter = new ReportedCellFilter();
+        for (int i = 0; i < 1000; i++) {
+            filter.put(key(i));
+        }
+        for (int i = 0; i < 1000; i++) {
+            assertTrue(filter.mightContain(key(i)));
+        }
+    }
+
+    @Test
+    public void falsePositiveRateAtDesignCapacity() {
+        ReportedCellFilter filter = new ReportedCellFilter();
+        for (int i = 0; i < 100_000; i++) {
+            filter.put(key(i));
+        }
+        int falsePositives = 0;
+        int probes = 100_000;
+        for (int i = 0; i < probes; i++) {
+            if (filter.mightContain(key(1_000_000 + i))) {
+                falsePositives++;
+            }
+        }
+        assertTrue("误判率过高: " + falsePositives, falsePositives < probes * 0.02);
+    }
+
+    @Test
+    public void keysSurviveOneRotationAndExpireAfterTwo() {
+        long start = System.currentTimeMillis();
+        ReportedCellFilter filter = new ReportedCellFilter(64, WINDOW_MS);
+        filter.put("a", start);
+
+        assertTrue(filter.mightContain("a", start + WINDOW_MS));      // 已轮换到上一代
+        filter.put("b", start + WINDOW_MS);
+        assertFalse(filter.mightContain("a", start + 2 * WINDOW_MS)); // 上一代被丢弃
+        assertTrue(filter.mightContain("b", start + 2 * WINDOW_MS));
+    }
+
+    @Test
+    public void idleForTwoWindowsClearsBothGenerations() {
+        long start = System.currentTimeMillis();
+        ReportedCellFilter filter = new ReportedCellFilter(64, WINDOW_MS);
+        filter.put("a", start);
+        assertFalse(filter.mightContain("a", start + 2 * WINDOW_MS));
+    }
+
+    @Test
+    public void saveAndLoadKeepsBothGenerationsAndWindow() throws IOException {
+        long start = System.currentTimeMillis();
+        ReportedCellFilter filter = new ReportedCellFilter(64, WINDOW_MS);
+        filter.put("old", start);
+        filter.put("new", start + WINDOW_MS);
+        File file = folder.newFile("filter.bin");
+        filter.save(file);
+
+        ReportedCellFilter loaded = ReportedCellFilter.load(file, 64);
+        assertTrue(loaded.mightContain("old", start + WINDOW_MS));
+        assertTrue(loaded.mightContain("new", start + WINDOW_MS));
+        assertFalse(loaded.mightContain("never", start + WINDOW_MS));
+        // 轮换起点随文件恢复
+        assertFalse(loaded.mightContain("old", start + 2 * WINDOW_MS));
+        assertTrue(loaded.mightContain("new", start + 2 * WINDOW_MS));
+    }
+
+    @Test
+    public void loadRejectsUnexpectedBlockCount() throws IOException {
+        File file = folder.newFile("filter.bin");
+        new ReportedCellFilter(64, WINDOW_MS).save(file);
+        assertLoadFails(file, 128);
+    }
+
+    @Test
+    public void loadRejectsCorruptHeaderWithoutAllocating() throws IOException {
+        File file = folder.newFile("filter.bin");
+        new ReportedCellFilter(64, WINDOW_MS).save(file);
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.seek(8);
+            raf.writeInt(1 << 30);   // blockCount
+        }
+        assertLoadFails(file, 64);
+    }
+
+    @Test
+    public void loadRejectsTruncatedAndForeignFiles() throws IOException {
+        File truncated = folder.newFile("truncated.bin");
+        new ReportedCellFilter(64, WINDOW_MS).save(truncated);
+        try (RandomAccessFile raf = new RandomAccessFile(truncated, "rw")) {
+            raf.setLength(raf.length() - 8);
+        }
+        assertLoadFails(truncated, 64);
+
+        File foreign = folder.newFile("foreign.bin");
+        try (DataOutputStream out = new DataOutputStream(new FileOutputStream(foreign))) {
+            out.writeInt(0x12345678);
+        }
+        assertLoadFails(foreign, 64);
+    }
+
+    @Test
+    public void loadDefaultsToDefaultBlockCount() throws IOException {
+        File file = folder.newFile("filter.bin");
+        ReportedCellFilter filter = new ReportedCellFilter();
+        filter.put("a");
+        filter.save(file);
+        assertTrue(ReportedCellFilter.load(file).mightContain("a"));
+        assertEquals(file.length(), 4 + 4 + 4 + 8 + 8 + 2L * ReportedCellFilter.DEFAULT_BLOCK_COUNT * 64);
+    }
+
+    private static void assertLoadFails(File file, int expectedBlockCount) {
+        try {
+            ReportedCellFilter.load(file, expectedBlockCount);
+            fail("损坏的文件应当加载失败");
+        } catch (IOException expected) {
+            // 预期
+        }
+    }
+
+    private static String key(int i) {
+        return "LTE:460:00:" + (i >>> 10) + ":" + i;
+    }
+}
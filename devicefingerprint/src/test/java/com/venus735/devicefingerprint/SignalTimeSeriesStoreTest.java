@@ -0,0 +1,235 @@
+package com.venus735.devicefingerprint;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import android.telephony.CellInfo;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+public class SignalTimeSeriesStoreTest {
+    private static final long SECOND = 1000;
+    private static final long MINUTE = 60 * SECOND;
+    private static final long HOUR = 60 * MINUTE;
+    private static final long DAY = 24 * HOUR;
+    private static final long T0 = 1_699_999_200_000L;   // 整点
+    private static final String CELL = "LTE:460:00:1:1";
+
+    @Test
+    public void rawTierKeepsIndividualSamples() {
+        SignalTimeSeriesStore store = new SignalTimeSeriesStore();
+        store.add(cell(T0, -80, -100));
+        store.add(cell(T0 + 7, -81, CellInfo.UNAVAILABLE));
+        store.add(cell(T0 + 20, -82, -102));
+        assertEquals(3, store.getBucketCount(SignalTimeSeriesStore.Resolution.RAW));
+
+        List<SignalTimeSeriesStore.Point> points = store.query(CELL, SignalTimeSeriesStore.Metric.SIGNAL_STRENGTH,
+                T0, T0 + MINUTE, SignalTimeSeriesStore.Resolution.RAW);
+        assertEquals(3, points.size());
+        assertEquals(T0 + 7, points.get(1).start);
+        assertEquals(T0 + 8, points.get(1).end);
+        assertEquals(1, points.get(1).count);
+        assertEquals(-81, points.get(1).min);
+
+        // 不可用的指标不产生点
+        List<SignalTimeSeriesStore.Point> rsrp = store.query(CELL, SignalTimeSeriesStore.Metric.RSRP,
+                T0, T0 + MINUTE, SignalTimeSeriesStore.Resolution.RAW);
+        assertEquals(2, rsrp.size());
+        assertEquals(-102, rsrp.get(1).max);
+    }
+
+    @Test
+    public void lateSamplesAreInsertedInTimeOrder() {
+        SignalTimeSeriesStore store = new SignalTimeSeriesStore();
+        store.add(cell(T0 + 30 * SECOND, -90, -110));
+        store.add(cell(T0 + 10 * SECOND, -70, -110));
+        store.add(cell(T0 + 20 * SECOND, -80, -110));
+        List<SignalTimeSeriesStore.Point> points = store.query(CELL, SignalTimeSeriesStore.Metric.SIGNAL_STRENGTH,
+                T0 + 15 * SECOND, T0 + MINUTE, SignalTimeSeriesStore.Resolution.RAW);
+        assertEquals(2, points.size());
+        assertEquals(-80, points.get(0).min);
+        assertEquals(-90, points.get(1).min);
+    }
+
+    @Test
+    public void minuteAndHourTiersMatchSamples() {
+        SignalTimeSeriesStore store = new SignalTimeSeriesStore();
+        List<long[]> samples = new ArrayList<>();
+        for (long t = T0; t < T0 + 3 * HOUR + 25 * MINUTE; t += 7 * SECOND) {
+            int value = (int) (-60 - (t / SECOND) % 53);
+            store.add(cell(t, value, value - 20));
+            samples.add(new long[]{t, value});
+        }
+        long end = T0 + 4 * HOUR;
+        // 最后几分钟还没有汇总进小时层，查询时补上
+        assertExpected(store, SignalTimeSeriesStore.Resolution.HOUR, samples, T0, end, HOUR);
+        store.trim();
+        assertExpected(store, SignalTimeSeriesStore.Resolution.HOUR, samples, T0, end, HOUR);
+        assertExpected(store, SignalTimeSeriesStore.Resolution.MINUTE, samples, T0, end, MINUTE);
+        assertEquals(4, store.getBucketCount(SignalTimeSeriesStore.Resolution.HOUR));
+        assertEquals(205, store.getBucketCount(SignalTimeSeriesStore.Resolution.MINUTE));
+
+        // 步长为10分钟时分钟桶合并成点
+        List<SignalTimeSeriesStore.Point> points = store.query(CELL, SignalTimeSeriesStore.Metric.SIGNAL_STRENGTH,
+                T0, T0 + HOUR, 6);
+        assertEquals(SignalTimeSeriesStore.Resolution.MINUTE, points.get(0).resolution);
+        assertEquals(6, points.size());
+        assertEquals(T0 + 10 * MINUTE, points.get(1).start);
+        assertEquals(T0 + 20 * MINUTE, points.get(1).end);
+    }
+
+    @Test
+    public void lateSampleForRolledUpMinuteReachesHourTier() {
+        SignalTimeSeriesStore store = new SignalTimeSeriesStore();
+        store.add(cell(T0, -80, -100));
+        store.add(cell(T0 + 30 * MINUTE, -80, -100));
+        store.trim();
+        store.add(cell(T0 + 5 * SECOND, -120, -100));
+        store.trim();
+        List<SignalTimeSeriesStore.Point> hour = store.query(CELL, SignalTimeSeriesStore.Metric.SIGNAL_STRENGTH,
+                T0, T0 + HOUR, SignalTimeSeriesStore.Resolution.HOUR);
+        assertEquals(1, hour.size());
+        assertEquals(3, hour.get(0).count);
+        assertEquals(-120, hour.get(0).min);
+    }
+
+    @Test
+    public void queryUsesCoarsestCoveringResolution() {
+        SignalTimeSeriesStore store = new SignalTimeSeriesStore();
+        for (long t = T0; t <= T0 + 3 * DAY; t += 30 * SECOND) {
+            store.add(cell(t, -80, -100));
+        }
+        long now = T0 + 3 * DAY;
+        assertEquals(SignalTimeSeriesStore.Resolution.RAW, store.resolutionFor(CELL, now - 30 * MINUTE, now, 1000));
+        assertEquals(SignalTimeSeriesStore.Resolution.MINUTE, store.resolutionFor(CELL, now - DAY, now, 100));
+        assertEquals(SignalTimeSeriesStore.Resolution.HOUR, store.resolutionFor(CELL, now - 3 * DAY, now, 100));
+        // 原始样本已经过了保留时长，退到分钟层
+        assertEquals(SignalTimeSeriesStore.Resolution.MINUTE, store.resolutionFor(CELL, now - 3 * HOUR, now, 100_000));
+        // 分钟桶也已清理，只剩小时层
+        assertEquals(SignalTimeSeriesStore.Resolution.HOUR, store.resolutionFor(CELL, T0, T0 + HOUR, 100_000));
+
+        // 最后一个样本所在的分钟尚未汇总，由分钟桶补上
+        List<SignalTimeSeriesStore.Point> points = store.query(CELL, SignalTimeSeriesStore.Metric.SIGNAL_STRENGTH,
+                now - 3 * DAY, now + 1, 100);
+        assertEquals(SignalTimeSeriesStore.Resolution.HOUR, points.get(0).resolution);
+        assertTrue(points.size() <= 100);
+        assertEquals(120 * 3 * 24 + 1, points.stream().mapToInt(point -> point.count).sum());
+    }
+
+    @Test
+    public void retentionTrimsEachTier() {
+        SignalTimeSeriesStore store = new SignalTimeSeriesStore(HOUR, DAY, 10 * DAY);
+        for (long t = T0; t <= T0 + 3 * DAY; t += MINUTE) {
+            store.add(cell(t, -80, -100));
+        }
+        store.trim();
+        assertEquals(61, store.getBucketCount(SignalTimeSeriesStore.Resolution.RAW));
+        assertTrue(store.getBucketCount(SignalTimeSeriesStore.Resolution.MINUTE) <= 24 * 60 + 2);
+        // 最后一个样本所在的分钟还没有结束，尚未汇总成小时桶
+        assertEquals(3 * 24, store.getBucketCount(SignalTimeSeriesStore.Resolution.HOUR));
+    }
+
+    @Test
+    public void rawCapacityBoundsSamplesAndFallsBackToMinutes() {
+        SignalTimeSeriesStore store = new SignalTimeSeriesStore(HOUR, DAY, 10 * DAY, 10);
+        for (int i = 0; i < 100; i++) {
+            store.add(cell(T0 + i * SECOND, -60 - i, -100));
+        }
+        assertEquals(10, store.getBucketCount(SignalTimeSeriesStore.Resolution.RAW));
+        // 被丢弃的样本之后仍由原始层覆盖
+        assertEquals(SignalTimeSeriesStore.Resolution.RAW, store.resolutionFor(CELL, T0 + 90 * SECOND, T0 + 100 * SECOND, 100));
+        assertEquals(SignalTimeSeriesStore.Resolution.MINUTE, store.resolutionFor(CELL, T0, T0 + 100 * SECOND, 100_000));
+        List<SignalTimeSeriesStore.Point> points = store.query(CELL, SignalTimeSeriesStore.Metric.SIGNAL_STRENGTH,
+                T0, T0 + 100 * SECOND, 100_000);
+        assertEquals(100, points.stream().mapToInt(point -> point.count).sum());
+
+        // 缓冲区已满时迟到的样本挤掉最旧的样本，原始层不再覆盖被挤掉的时刻
+        store.add(cell(T0 + 95 * SECOND - 1, -200, -100));
+        assertEquals(SignalTimeSeriesStore.Resolution.MINUTE, store.resolutionFor(CELL, T0 + 90 * SECOND, T0 + 100 * SECOND, 100));
+    }
+
+    @Test
+    public void serializationRoundTrip() throws IOException {
+        SignalTimeSeriesStore store = new SignalTimeSeriesStore();
+        for (long t = T0; t < T0 + 5 * HOUR; t += 11 * SECOND) {
+            store.add(cell(t, (int) (-60 - t % 41), CellInfo.UNAVAILABLE));
+        }
+        store.trim();
+        store.add(cell(T0 + 10 * SECOND, -130, -110));
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        store.writeTo(bytes);
+        SignalTimeSeriesStore restored = SignalTimeSeriesStore.readFrom(new ByteArrayInputStream(bytes.toByteArray()));
+        assertEquals(store.getCellKeys(), restored.getCellKeys());
+        for (SignalTimeSeriesStore.Resolution resolution : SignalTimeSeriesStore.Resolution.values()) {
+            assertEquals(store.getBucketCount(resolution), restored.getBucketCount(resolution));
+            for (SignalTimeSeriesStore.Metric metric : SignalTimeSeriesStore.Metric.values()) {
+                assertEquals(store.query(CELL, metric, T0, T0 + 6 * HOUR, resolution).toString(),
+                        restored.query(CELL, metric, T0, T0 + 6 * HOUR, resolution).toString());
+            }
+        }
+        // 恢复后继续写入，迟到的样本仍补进小时层
+        restored.add(cell(T0 + 20 * SECOND, -140, -110));
+        assertEquals(-140, restored.query(CELL, SignalTimeSeriesStore.Metric.SIGNAL_STRENGTH,
+                T0, T0 + HOUR, SignalTimeSeriesStore.Resolution.HOUR).get(0).min);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsNonPositiveRawCapacity() {
+        new SignalTimeSeriesStore(HOUR, DAY, 10 * DAY, 0);
+    }
+
+    /**
+     * 把样本按桶宽分组后逐项比较
+     */
+    private static void assertExpected(SignalTimeSeriesStore store, SignalTimeSeriesStore.Resolution resolution,
+                                       List<long[]> samples, long from, long to, long width) {
+        List<SignalTimeSeriesStore.Point> points = store.query(CELL, SignalTimeSeriesStore.Metric.SIGNAL_STRENGTH,
+                from, to, resolution);
+        int index = 0;
+        for (long start = from; start < to; start += width) {
+            int count = 0;
+            long min = Long.MAX_VALUE;
+            long max = Long.MIN_VALUE;
+            long sum = 0;
+            for (long[] sample : samples) {
+                if (sample[0] >= start && sample[0] < start + width) {
+                    count++;
+                    min = Math.min(min, sample[1]);
+                    max = Math.max(max, sample[1]);
+                    sum += sample[1];
+                }
+            }
+            if (count == 0) {
+                continue;
+            }
+            SignalTimeSeriesStore.Point point = points.get(index++);
+            assertEquals(resolution, point.resolution);
+            assertEquals(start, point.start);
+            assertEquals(count, point.count);
+            assertEquals(min, point.min);
+            assertEquals(max, point.max);
+            assertEquals((double) sum / count, point.mean, 1e-9);
+        }
+        assertEquals(index, points.size());
+    }
+
+    private static BaseStationCollector.BaseStationInfo cell(long timestamp, int signalStrength, int rsrp) {
+        BaseStationCollector.BaseStationInfo info = new BaseStationCollector.BaseStationInfo();
+        info.type = "LTE";
+        info.mcc = "460";
+        info.mnc = "00";
+        info.lac = 1;
+        info.cid = 1;
+        info.signalStrength = signalStrength;
+        info.rsrp = rsrp;
+        info.timestamp = timestamp;
+        return info;
+    }
+}
@@ -0,0 +1,215 @@
+package com.venus735.devicefingerprint;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+public class TrajectoryCompressorTest {
+    private static final double METERS_PER_DEGREE = Math.PI * 6371008.8 / 180;
+    private static final int POINTS = 20_000;
+    private static final int RAW_BYTES_PER_POINT = 8 + 8 + 8;
+    private static double[] latitudes;
+    private static double[] longitudes;
+    private static long[] times;
+
+    /**
+     * 1秒一个点的合成轨迹：步行和驾车交替、偶尔转向、停留，叠加约3米的定位噪声
+     */
+    @BeforeClass
+    public static void buildTrack() {
+        Random random = new Random(35);
+        latitudes = new double[POINTS];
+        longitudes = new double[POINTS];
+        times = new long[POINTS];
+        double x = 0;
+        double y = 0;
+        double heading = 0;
+        double speed = 1.4;
+        long time = 1_700_000_000_000L;
+        for (int i = 0; i < POINTS; i++) {
+            if (random.nextInt(300) == 0) {
+                speed = random.nextInt(4) == 0 ? 0 : random.nextBoolean() ? 1.4 : 15;
+            }
+            if (random.nextInt(60) == 0) {
+                heading += (random.nextDouble() - 0.5) * Math.PI;
+            }
+            x += Math.cos(heading) * speed;
+            y += Math.sin(heading) * speed;
+            time += 1000 + random.nextInt(50);
+            double noisyX = x + random.nextGaussian() * 3;
+            double noisyY = y + random.nextGaussian() * 3;
+            latitudes[i] = 31.2 + noisyY / METERS_PER_DEGREE;
+            longitudes[i] = 121.4 + noisyX / (METERS_PER_DEGREE * Math.cos(Math.toRadians(31.2)));
+            times[i] = time;
+        }
+    }
+
+    @Test
+    public void errorStaysWithinToleranceIncludingQuantization() {
+        for (double tolerance : new double[]{1, 5, 10, 20, 50}) {
+            CompressedTrajectory trajectory = compress(tolerance);
+            double maxError = maxError(trajectory);
+            assertTrue("tolerance " + tolerance + ": max error " + maxError, maxError <= tolerance);
+        }
+    }
+
+    @Test
+    public void compressionRatio() {
+        // 默认20米容差远大于3米噪声，只有转向和变速处需要保留点
+        CompressedTrajectory trajectory = compress(TrajectoryCompressor.DEFAULT_TOLERANCE_METERS);
+        assertTrue(ratio(trajectory) + "x", ratio(trajectory) > 100);
+        assertTrue(trajectory.getPointCount() < POINTS / 50);
+        // 10米容差接近噪声的3倍标准差，保留点明显增多
+        double tighter = ratio(compress(10));
+        assertTrue(tighter + "x", tighter > 20 && tighter < ratio(trajectory));
+        assertTrue(ratio(compress(50)) >= ratio(trajectory));
+    }
+
+    @Test
+    public void zeroToleranceKeepsNoisyPoints() {
+        assertEquals(POINTS, compress(0).getPointCount());
+    }
+
+    @Test
+    public void firstAndFlushedLastPointAreExact() {
+        CompressedTrajectory trajectory = compress(20);
+        List<CompressedTrajectory.TrajectoryPoint> points = trajectory.decode();
+        assertEquals(times[0], points.get(0).time);
+        assertEquals(times[POINTS - 1], points.get(points.size() - 1).time);
+        assertNull(trajectory.positionAt(times[0] - 1));
+        assertNull(trajectory.positionAt(times[POINTS - 1] + 1));
+    }
+
+    @Test
+    public void outOfOrderPointsAreIgnored() {
+        TrajectoryCompressor compressor = new TrajectoryCompressor(5);
+        compressor.add(31.2, 121.4, 1000);
+        compressor.add(31.3, 121.5, 1000);
+        compressor.add(31.3, 121.5, 500);
+        compressor.add(31.2001, 121.4, 2000);
+        compressor.flush();
+        List<CompressedTrajectory.TrajectoryPoint> points = compressor.getTrajectory().decode();
+        assertEquals(2, points.size());
+        assertEquals(2000, points.get(1).time);
+    }
+
+    @Test
+    public void serializationRoundTrip() throws IOException {
+        CompressedTrajectory trajectory = compress(5);
+        CompressedTrajectory restored = CompressedTrajectory.fromByteArray(trajectory.toByteArray());
+        assertEquals(trajectory.getPointCount(), restored.getPointCount());
+        assertEquals(trajectory.getEncodedSize(), restored.getEncodedSize());
+        for (int i = 0; i < POINTS; i += 97) {
+            CompressedTrajectory.TrajectoryPoint expected = trajectory.positionAt(times[i]);
+            CompressedTrajectory.TrajectoryPoint actual = restored.positionAt(times[i]);
+            assertEquals(expected.latitude, actual.latitude, 0);
+            assertEquals(expected.longitude, actual.longitude, 0);
+        }
+        long from = times[POINTS / 3];
+        long to = times[POINTS / 2];
+        assertEquals(trajectory.pointsBetween(from, to).size(), restored.pointsBetween(from, to).size());
+    }
+
+    @Test
+    public void inaccurateFixesAreIgnored() {
+        TrajectoryCompressor compressor = new TrajectoryCompressor(5);
+        assertTrue(compressor.add(31.2, 121.4, 1000, 8));
+        // 网络定位的精度通常在几十到几百米
+        assertFalse(compressor.add(31.21, 121.41, 2000, 350));
+        assertFalse(compressor.add(31.21, 121.41, 3000, Float.NaN));
+        assertTrue(compressor.add(31.2, 121.4001, 4000, TrajectoryCompressor.DEFAULT_MAX_ACCURACY_METERS));
+        compressor.flush();
+        List<CompressedTrajectory.TrajectoryPoint> points = compressor.getTrajectory().decode();
+        assertEquals(2, points.size());
+        assertEquals(4000, points.get(1).time);
+    }
+
+    @Test
+    public void deliveringSegmentsDoesNotAddPoints() {
+        CompressedTrajectory whole = compress(20);
+        TrajectoryCompressor compressor = new TrajectoryCompressor(20);
+        List<CompressedTrajectory.TrajectoryPoint> delivered = new ArrayList<>();
+        int deliveries = 0;
+        for (int i = 0; i < POINTS; i++) {
+            compressor.add(latitudes[i], longitudes[i], times[i]);
+            // 每30个原始点提交一次，相当于每次批量提交
+            if (i % 30 == 29 && compressor.hasUndeliveredPoints()) {
+                List<CompressedTrajectory.TrajectoryPoint> segment = compressor.getTrajectory().decode();
+                if (!delivered.isEmpty()) {
+                    // 每段以上一段的最后一个点开头
+                    assertEquals(delivered.get(delivered.size() - 1).time, segment.get(0).time);
+                    segment = segment.subList(1, segment.size());
+                }
+                delivered.addAll(segment);
+                compressor.markDelivered();
+                assertFalse(compressor.hasUndeliveredPoints());
+                deliveries++;
+            }
+        }
+        compressor.flush();
+        List<CompressedTrajectory.TrajectoryPoint> tail = compressor.getTrajectory().decode();
+        delivered.addAll(tail.subList(1, tail.size()));
+
+        assertTrue(deliveries > 50);
+        List<CompressedTrajectory.TrajectoryPoint> expected = whole.decode();
+        assertEquals(expected.size(), delivered.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.get(i).time, delivered.get(i).time);
+        }
+    }
+
+    @Test
+    public void undeliveredPointsAreCapped() {
+        TrajectoryCompressor compressor = new TrajectoryCompressor(0, 100);
+        for (int i = 0; i < 1000; i++) {
+            compressor.add(latitudes[i], longitudes[i], times[i]);
+            assertTrue(compressor.getTrajectory().getPointCount() <= 100);
+        }
+        compressor.flush();
+        List<CompressedTrajectory.TrajectoryPoint> points = compressor.getTrajectory().decode();
+        // 保留的是最新的点
+        assertEquals(times[999], points.get(points.size() - 1).time);
+        assertTrue(points.get(0).time > times[800]);
+        assertTrue(compressor.hasUndeliveredPoints());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void appendRejectsNonIncreasingTime() {
+        CompressedTrajectory trajectory = new CompressedTrajectory();
+        trajectory.append(31.2, 121.4, 1000);
+        trajectory.append(31.2, 121.4, 1000);
+    }
+
+    private static CompressedTrajectory compress(double tolerance) {
+        TrajectoryCompressor compressor = new TrajectoryCompressor(tolerance);
+        for (int i = 0; i < POINTS; i++) {
+            compressor.add(latitudes[i], longitudes[i], times[i]);
+        }
+        compressor.flush();
+        return compressor.getTrajectory();
+    }
+
+    private static double ratio(CompressedTrajectory trajectory) {
+        return (double) POINTS * RAW_BYTES_PER_POINT / trajectory.getEncodedSize();
+    }
+
+    private static double maxError(CompressedTrajectory trajectory) {
+        double max = 0;
+        for (int i = 0; i < POINTS; i++) {
+            CompressedTrajectory.TrajectoryPoint point = trajectory.positionAt(times[i]);
+            double dx = (point.longitude - longitudes[i]) * Math.cos(Math.toRadians(latitudes[i])) * METERS_PER_DEGREE;
+            double dy = (point.latitude - latitudes[i]) * METERS_PER_DEGREE;
+            max = Math.max(max, Math.sqrt(dx * dx + dy * dy));
+        }
+        return max;
+    }
+}
@@ -0,0 +1,17 @@
+plugins {
+    application
+}
+
+java {
+    sourceCompatibility = JavaVersion.VERSION_11
+    targetCompatibility = JavaVersion.VERSION_11
+}
+
+application {
+    mainClass.set("com.venus735.devicefingerprint.analysis.FingerprintAnalyzer")
+    applicationDefaultJvmArgs = listOf("-Xmx1g")
+}
+
+dependencies {
+    testImplementation(libs.junit)
+}
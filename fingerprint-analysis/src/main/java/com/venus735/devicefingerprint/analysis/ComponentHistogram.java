@@ -0,0 +1,87 @@
+package com.venus735.devicefingerprint.analysis;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 固定大小的取值频数直方图
+ * 取值先哈希为64位，再取低位作为桶号，内存大小只取决于桶数，与语料规模和取值种类无关。
+ * 不同取值落入同一个桶会使熵和碰撞率被低估，取值种类远小于桶数时误差可以忽略；
+ * 熵接近log2(桶数)时说明直方图已饱和，真实熵至少为该值。
+ * 多个线程可以并发写入。
+ */
+public class ComponentHistogram {
+    private final AtomicLongArray counts;
+    private final int mask;
+    private final int bits;
+
+    public ComponentHistogram(int bits) {
+        if (bits < 1 || bits > 30) {
+            throw new IllegalArgumentException("bits超出范围: " + bits);
+        }
+        this.bits = bits;
+        this.counts = new AtomicLongArray(1 << bits);
+        this.mask = (1 << bits) - 1;
+    }
+
+    public void add(long hash) {
+        counts.incrementAndGet((int) (hash ^ (hash >>> 32)) & mask);
+    }
+
+    public int getBits() {
+        return bits;
+    }
+
+    /**
+     * 香农熵(比特)：H = log2(N) - Σ c·log2(c) / N
+     */
+    public double entropy() {
+        long total = 0;
+        double sum = 0;
+        for (int i = 0; i < counts.length(); i++) {
+            long c = counts.get(i);
+            if (c > 0) {
+                total += c;
+                sum += c * log2(c);
+            }
+        }
+        return total == 0 ? 0 : log2(total) - sum / total;
+    }
+
+    /**
+     * 碰撞率：随机抽取两条不同记录，该组件取值相同的概率 Σ c(c-1) / N(N-1)
+     */
+    public double collisionRate() {
+        long total = 0;
+        double pairs = 0;
+        for (int i = 0; i < counts.length(); i++) {
+            long c = counts.get(i);
+            total += c;
+            pairs += (double) c * (c - 1);
+        }
+        return total < 2 ? 0 : pairs / ((double) total * (total - 1));
+    }
+
+    /**
+     * 非空桶数，近似取值种类数
+     */
+    public long distinctBuckets() {
+        long distinct = 0;
+        for (int i = 0; i < counts.length(); i++) {
+            if (counts.get(i) > 0) {
+                distinct++;
+            }
+        }
+        return distinct;
+    }
+
+    /**
+     * 熵已经接近直方图能表示的上限
+     */
+    public boolean isSaturated() {
+        return entropy() > bits - 1;
+    }
+
+    static double log2(double value) {
+        return Math.log(value) / Math.log(2);
+    }
+}
@@ -0,0 +1,313 @@
+package com.venus735.devicefingerprint.analysis;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 离线指纹组件熵与碰撞分析
+ * 输入为制表符分隔的语料，第一行是表头：
+ * <pre>
+ * device_id	timestamp	model	manufacturer	drm_id	mcc	...
+ * </pre>
+ * 之后每行一条采集记录，前两列固定为设备ID和毫秒时间戳，其余每列是一个指纹组件的取值。
+ * 读取线程按设备ID把记录分到若干分区，每个分区的块按读取顺序串行执行，不同分区在ForkJoinPool上并行；
+ * 同一设备的记录总由同一个分区按语料顺序处理，因此结果与线程数无关。同时在途的块数有上限，
+ * 直方图和设备表大小固定，因此内存占用与语料规模无关。
+ * 输出每个组件的香农熵、碰撞率、稳定性，以及组件两两之间的互信息。
+ */
+public class FingerprintAnalyzer {
+    private static final int CHUNK_LINES = 8192;
+    public static final int DEFAULT_COMPONENT_BITS = 20;   // 单组件直方图 2^20 桶，8MB
+    public static final int DEFAULT_JOINT_BITS = 16;       // 组件对直方图 2^16 桶，512KB
+    public static final int DEFAULT_MAX_DEVICES = 1 << 20; // 稳定性统计最多跟踪的设备数
+
+    private final String[] components;
+    private final int pairCount;
+    private final ComponentHistogram[] histograms;
+    private final ComponentHistogram[] lowResHistograms;   // 与组件对直方图同精度，用于计算互信息
+    private final ComponentHistogram[] jointHistograms;    // 下标见 pairIndex
+    private final ComponentHistogram combinedHistogram;    // 所有组件组合成的完整指纹
+    private final StabilityTracker stabilityTracker;
+    private final AtomicLong records = new AtomicLong();
+    private final AtomicLong malformed = new AtomicLong();
+
+    public FingerprintAnalyzer(String[] components, int componentBits, int jointBits, int maxDevices) {
+        this.components = components.clone();
+        int n = components.length;
+        this.pairCount = n * (n - 1) / 2;
+        this.histograms = new ComponentHistogram[n];
+        this.lowResHistograms = new ComponentHistogram[n];
+        this.jointHistograms = new ComponentHistogram[pairCount];
+        for (int i = 0; i < n; i++) {
+            histograms[i] = new ComponentHistogram(componentBits);
+            lowResHistograms[i] = new ComponentHistogram(jointBits);
+        }
+        for (int i = 0; i < pairCount; i++) {
+            jointHistograms[i] = new ComponentHistogram(jointBits);
+        }
+        this.combinedHistogram = new ComponentHistogram(componentBits);
+        this.stabilityTracker = new StabilityTracker(n, maxDevices);
+    }
+
+    /**
+     * 分析整个语料
+     * @param reader 语料输入，第一行为表头
+     * @param pool 执行分析的线程池
+     */
+    public static FingerprintAnalyzer analyze(Reader reader, ForkJoinPool pool,
+                                              int componentBits, int jointBits, int maxDevices) throws IOException {
+        BufferedReader in = reader instanceof BufferedReader ? (BufferedReader) reader : new BufferedReader(reader, 1 << 16);
+        String header = in.readLine();
+        if (header == null) {
+            throw new IOException("语料为空");
+        }
+        String[] columns = header.split("\t", -1);
+        if (columns.length < 3) {
+            throw new IOException("表头至少需要device_id、timestamp和一个组件列");
+        }
+        FingerprintAnalyzer analyzer = new FingerprintAnalyzer(
+                Arrays.copyOfRange(columns, 2, columns.length), componentBits, jointBits, maxDevices);
+
+        // 设备表的一个分段只属于一个分区，分段内LRU的访问顺序也与单线程一致
+        int partitions = Math.min(pool.getParallelism(), StabilityTracker.STRIPES);
+        int maxInFlight = pool.getParallelism() * 2;
+        Semaphore inFlight = new Semaphore(maxInFlight);
+        List<Throwable> failures = new ArrayList<>();
+        String[][] chunks = new String[partitions][CHUNK_LINES];
+        int[] filled = new int[partitions];
+        List<CompletableFuture<Void>> tails = new ArrayList<>(partitions);
+        for (int p = 0; p < partitions; p++) {
+            tails.add(CompletableFuture.completedFuture(null));
+        }
+        String line;
+        try {
+            while ((line = in.readLine()) != null) {
+                int tab = line.indexOf('\t');
+                int partition = tab < 0 ? 0 : StabilityTracker.stripeOf(line, 0, tab) % partitions;
+                chunks[partition][filled[partition]++] = line;
+                if (filled[partition] == CHUNK_LINES) {
+                    tails.set(partition, analyzer.submit(pool, tails.get(partition), inFlight, chunks[partition], CHUNK_LINES, failures));
+                    chunks[partition] = new String[CHUNK_LINES];
+                    filled[partition] = 0;
+                }
+            }
+            for (int p = 0; p < partitions; p++) {
+                if (filled[p] > 0) {
+                    tails.set(p, analyzer.submit(pool, tails.get(p), inFlight, chunks[p], filled[p], failures));
+                }
+            }
+            CompletableFuture.allOf(tails.toArray(new CompletableFuture<?>[0])).join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("分析被中断", e);
+        }
+        synchronized (failures) {
+            if (!failures.isEmpty()) {
+                throw new IOException("分析时发生错误", failures.get(0));
+            }
+        }
+        return analyzer;
+    }
+
+    /**
+     * 把一个块接在所属分区上一个块之后执行
+     * @return 该分区新的末尾
+     */
+    private CompletableFuture<Void> submit(ForkJoinPool pool, CompletableFuture<Void> tail, Semaphore inFlight,
+                                           String[] chunk, int length, List<Throwable> failures) throws InterruptedException {
+        inFlight.acquire();
+        return tail.thenRunAsync(() -> {
+            try {
+                for (int i = 0; i < length; i++) {
+                    processLine(chunk[i]);
+                }
+            } catch (Throwable t) {
+                synchronized (failures) {
+                    failures.add(t);
+                }
+            } finally {
+                inFlight.release();
+            }
+        }, pool);
+    }
+
+    void processLine(String line) {
+        int n = components.length;
+        int start = line.indexOf('\t');
+        int next = start < 0 ? -1 : line.indexOf('\t', start + 1);
+        if (next < 0) {
+            malformed.incrementAndGet();
+            return;
+        }
+        String deviceId = line.substring(0, start);
+        long timestamp;
+        try {
+            timestamp = Long.parseLong(line.substring(start + 1, next));
+        } catch (NumberFormatException e) {
+            malformed.incrementAndGet();
+            return;
+        }
+
+        // 组件列数必须与表头完全一致，多出或缺少列都算格式错误
+        long[] hashes = new long[n];
+        int column = 0;
+        start = next + 1;
+        while (true) {
+            int end = line.indexOf('\t', start);
+            if (end < 0) {
+                end = line.length();
+            }
+            if (column == n) {
+                malformed.incrementAndGet();
+                return;
+            }
+            hashes[column++] = hash(line, start, end);
+            if (end == line.length()) {
+                break;
+            }
+            start = end + 1;
+        }
+        if (column != n) {
+            malformed.incrementAndGet();
+            return;
+        }
+
+        long combined = 0;
+        int pair = 0;
+        for (int i = 0; i < n; i++) {
+            histograms[i].add(hashes[i]);
+            lowResHistograms[i].add(hashes[i]);
+            combined = mix(combined * 31 + hashes[i]);
+            for (int j = i + 1; j < n; j++) {
+                jointHistograms[pair++].add(mix(hashes[i] * 31 + hashes[j]));
+            }
+        }
+        combinedHistogram.add(combined);
+        stabilityTracker.observe(deviceId, timestamp, hashes);
+        records.incrementAndGet();
+    }
+
+    /**
+     * 互信息 I(X;Y) = H(X) + H(Y) - H(X,Y)，三者使用同样精度的直方图
+     */
+    public double mutualInformation(int a, int b) {
+        if (a == b) {
+            return lowResHistograms[a].entropy();
+        }
+        int i = Math.min(a, b);
+        int j = Math.max(a, b);
+        double joint = jointHistograms[pairIndex(i, j)].entropy();
+        return Math.max(0, lowResHistograms[i].entropy() + lowResHistograms[j].entropy() - joint);
+    }
+
+    private int pairIndex(int i, int j) {
+        int n = components.length;
+        return i * (2 * n - i - 1) / 2 + (j - i - 1);
+    }
+
+    public String[] getComponents() {
+        return components.clone();
+    }
+
+    public ComponentHistogram getHistogram(int component) {
+        return histograms[component];
+    }
+
+    public ComponentHistogram getCombinedHistogram() {
+        return combinedHistogram;
+    }
+
+    public StabilityTracker getStabilityTracker() {
+        return stabilityTracker;
+    }
+
+    public long getRecordCount() {
+        return records.get();
+    }
+
+    public long getMalformedCount() {
+        return malformed.get();
+    }
+
+    /**
+     * 输出分析报告
+     */
+    public void printReport(PrintStream out) {
+        out.printf("records: %d, malformed: %d%n%n", getRecordCount(), getMalformedCount());
+        out.printf("%-24s %10s %12s %14s %10s%n", "component", "entropy", "distinct~", "collision", "stability");
+        for (int i = 0; i < components.length; i++) {
+            printRow(out, components[i], histograms[i], stabilityTracker.stability(i));
+        }
+        printRow(out, "<all>", combinedHistogram, Double.NaN);
+
+        out.printf("%nmutual information (bits, %d-bit histograms):%n", lowResHistograms.length > 0 ? lowResHistograms[0].getBits() : 0);
+        for (int i = 0; i < components.length; i++) {
+            for (int j = i + 1; j < components.length; j++) {
+                out.printf("%-24s %-24s %8.3f%n", components[i], components[j], mutualInformation(i, j));
+            }
+        }
+    }
+
+    private static void printRow(PrintStream out, String name, ComponentHistogram histogram, double stability) {
+        out.printf("%-24s %9.3f%s %12d %14.3e %10s%n", name, histogram.entropy(), histogram.isSaturated() ? "+" : " ",
+                histogram.distinctBuckets(), histogram.collisionRate(),
+                Double.isNaN(stability) ? "-" : String.format("%.4f", stability));
+    }
+
+    /**
+     * FNV-1a 64位哈希，再经过murmur3的fmix64打散
+     */
+    static long hash(String s, int start, int end) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = start; i < end; i++) {
+            h ^= s.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        return mix(h);
+    }
+
+    static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    /**
+     * 用法: FingerprintAnalyzer &lt;corpus.tsv&gt; [threads] [componentBits] [jointBits] [maxDevices]
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.err.println("usage: FingerprintAnalyzer <corpus.tsv> [threads] [componentBits] [jointBits] [maxDevices]");
+            System.exit(2);
+        }
+        int threads = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+        int componentBits = args.length > 2 ? Integer.parseInt(args[2]) : DEFAULT_COMPONENT_BITS;
+        int jointBits = args.length > 3 ? Integer.parseInt(args[3]) : DEFAULT_JOINT_BITS;
+        int maxDevices = args.length > 4 ? Integer.parseInt(args[4]) : DEFAULT_MAX_DEVICES;
+
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        long start = System.nanoTime();
+        try (Reader reader = Files.newBufferedReader(Paths.get(args[0]), StandardCharsets.UTF_8)) {
+            FingerprintAnalyzer analyzer = analyze(reader, pool, componentBits, jointBits, maxDevices);
+            analyzer.printReport(System.out);
+            System.out.printf("%nelapsed: %.1fs%n", (System.nanoTime() - start) / 1e9);
+        } finally {
+            pool.shutdown();
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package com.venus735.devicefingerprint.analysis;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 组件随时间的稳定性统计
+ * 记录每台设备最近一次各组件取值的哈希，统计同一设备相邻两条记录之间各组件发生变化的比例。
+ * 设备表按设备哈希分段，每段是容量固定的LRU，总内存有上限；
+ * 被淘汰的设备再次出现时从头开始统计，早于已记录时间的乱序记录直接忽略。
+ * 结果取决于每个分段内记录的处理顺序，并行写入时应保证同一分段的记录由同一个线程按语料顺序写入，
+ * 分段号见 {@link #stripeOf}。
+ */
+public class StabilityTracker {
+    static final int STRIPES = 64;
+
+    private final int componentCount;
+    private final List<Map<String, DeviceState>> stripes;
+    private final AtomicLongArray transitions;
+    private final AtomicLongArray changes;
+
+    private static class DeviceState {
+        long timestamp;
+        long[] hashes;
+    }
+
+    public StabilityTracker(int componentCount, int maxDevices) {
+        this.componentCount = componentCount;
+        this.transitions = new AtomicLongArray(componentCount);
+        this.changes = new AtomicLongArray(componentCount);
+        this.stripes = new ArrayList<>(STRIPES);
+        final int stripeCapacity = Math.max(1, maxDevices / STRIPES);
+        for (int i = 0; i < STRIPES; i++) {
+            stripes.add(new LinkedHashMap<String, DeviceState>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, DeviceState> eldest) {
+                    return size() > stripeCapacity;
+                }
+            });
+        }
+    }
+
+    public void observe(String deviceId, long timestamp, long[] hashes) {
+        Map<String, DeviceState> stripe = stripes.get(stripeOf(deviceId, 0, deviceId.length()));
+        synchronized (stripe) {
+            DeviceState state = stripe.get(deviceId);
+            if (state == null) {
+                state = new DeviceState();
+                state.timestamp = timestamp;
+                state.hashes = hashes.clone();
+                stripe.put(deviceId, state);
+                return;
+            }
+            if (timestamp < state.timestamp) {
+                return;
+            }
+            for (int i = 0; i < componentCount; i++) {
+                transitions.incrementAndGet(i);
+                if (state.hashes[i] != hashes[i]) {
+                    changes.incrementAndGet(i);
+                    state.hashes[i] = hashes[i];
+                }
+            }
+            state.timestamp = timestamp;
+        }
+    }
+
+    /**
+     * 设备所属的分段，等价于按 s.substring(start, end).hashCode() 取模，不创建子串
+     */
+    static int stripeOf(String s, int start, int end) {
+        int h = 0;
+        for (int i = start; i < end; i++) {
+            h = 31 * h + s.charAt(i);
+        }
+        return (h & 0x7fffffff) % STRIPES;
+    }
+
+    /**
+     * @return 组件在相邻记录之间保持不变的比例，没有可比较的记录时返回NaN
+     */
+    public double stability(int component) {
+        long total = transitions.get(component);
+        return total == 0 ? Double.NaN : 1 - (double) changes.get(component) / total;
+    }
+
+    public long transitions(int component) {
+        return transitions.get(component);
+    }
+}
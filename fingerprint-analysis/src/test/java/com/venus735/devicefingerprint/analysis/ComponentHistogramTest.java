@@ -0,0 +1,94 @@
+package com.venus735.devicefingerprint.analysis;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class ComponentHistogramTest {
+
+    @Test
+    public void emptyHistogram() {
+        ComponentHistogram histogram = new ComponentHistogram(10);
+        assertEquals(0, histogram.entropy(), 0);
+        assertEquals(0, histogram.collisionRate(), 0);
+        assertEquals(0, histogram.distinctBuckets());
+    }
+
+    @Test
+    public void singleValueHasZeroEntropyAndFullCollision() {
+        ComponentHistogram histogram = new ComponentHistogram(10);
+        for (int i = 0; i < 100; i++) {
+            histogram.add(hash("same"));
+        }
+        assertEquals(0, histogram.entropy(), 1e-12);
+        assertEquals(1, histogram.collisionRate(), 1e-12);
+        assertEquals(1, histogram.distinctBuckets());
+    }
+
+    @Test
+    public void uniformValues() {
+        ComponentHistogram histogram = new ComponentHistogram(20);
+        int values = 256;
+        int repeats = 4;
+        for (int r = 0; r < repeats; r++) {
+            for (int v = 0; v < values; v++) {
+                histogram.add(hash("value-" + v));
+            }
+        }
+        long total = (long) values * repeats;
+        assertEquals(8, histogram.entropy(), 1e-9);
+        assertEquals(values * (double) repeats * (repeats - 1) / (total * (total - 1.0)), histogram.collisionRate(), 1e-12);
+        assertEquals(values, histogram.distinctBuckets());
+        assertFalse(histogram.isSaturated());
+    }
+
+    @Test
+    public void smallHistogramSaturates() {
+        ComponentHistogram histogram = new ComponentHistogram(4);
+        for (int v = 0; v < 1000; v++) {
+            histogram.add(hash("value-" + v));
+        }
+        assertTrue(histogram.isSaturated());
+        assertTrue(histogram.entropy() <= 4);
+    }
+
+    @Test
+    public void concurrentAddsMatchSequential() throws InterruptedException {
+        ComponentHistogram sequential = new ComponentHistogram(12);
+        ComponentHistogram concurrent = new ComponentHistogram(12);
+        for (int t = 0; t < 8; t++) {
+            for (int i = 0; i < 20_000; i++) {
+                sequential.add(hash("v" + (i % 300)));
+            }
+        }
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 8; t++) {
+            Thread thread = new Thread(() -> {
+                for (int i = 0; i < 20_000; i++) {
+                    concurrent.add(hash("v" + (i % 300)));
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(sequential.entropy(), concurrent.entropy(), 1e-12);
+        assertEquals(sequential.collisionRate(), concurrent.collisionRate(), 1e-12);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsInvalidBits() {
+        new ComponentHistogram(31);
+    }
+
+    private static long hash(String value) {
+        return FingerprintAnalyzer.hash(value, 0, value.length());
+    }
+}
@@ -0,0 +1,128 @@
+package com.venus735.devicefingerprint.analysis;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+public class FingerprintAnalyzerTest {
+    private static final int DEVICES = 5000;
+    private static final int RECORDS = 200_000;
+    private static String corpus;
+
+    /**
+     * 按时间排序的合成语料：model不变，os偶尔升级，drm极少变化，cell频繁变化。
+     * 设备数超过稳定性统计的容量，同时覆盖LRU淘汰。
+     */
+    @BeforeClass
+    public static void buildCorpus() {
+        Random random = new Random(42);
+        int[] os = new int[DEVICES];
+        int[] drm = new int[DEVICES];
+        StringBuilder sb = new StringBuilder(RECORDS * 48);
+        sb.append("device_id\ttimestamp\tmodel\tos\tdrm_id\tcell\n");
+        long time = 1_700_000_000_000L;
+        for (int i = 0; i < RECORDS; i++) {
+            int device = random.nextInt(DEVICES);
+            time += random.nextInt(1000);
+            if (random.nextInt(20) == 0) {
+                os[device]++;
+            }
+            if (random.nextInt(500) == 0) {
+                drm[device]++;
+            }
+            sb.append("dev-").append(device).append('\t')
+                    .append(time).append('\t')
+                    .append("model-").append(device % 37).append('\t')
+                    .append("android-").append(12 + os[device]).append('\t')
+                    .append(device).append('-').append(drm[device]).append('\t')
+                    .append("LTE:460:00:").append(random.nextInt(50)).append('\n');
+        }
+        corpus = sb.toString();
+    }
+
+    @Test
+    public void resultDoesNotDependOnThreadCount() throws IOException {
+        FingerprintAnalyzer single = analyze(corpus, 1, 2048);
+        for (int threads : new int[]{2, 4, 8, 16}) {
+            for (int run = 0; run < 2; run++) {
+                FingerprintAnalyzer parallel = analyze(corpus, threads, 2048);
+                assertEquals(single.getRecordCount(), parallel.getRecordCount());
+                for (int i = 0; i < single.getComponents().length; i++) {
+                    StabilityTracker expected = single.getStabilityTracker();
+                    StabilityTracker actual = parallel.getStabilityTracker();
+                    assertEquals(threads + " threads, component " + i, expected.transitions(i), actual.transitions(i));
+                    assertEquals(threads + " threads, component " + i, expected.stability(i), actual.stability(i), 0);
+                    assertEquals(single.getHistogram(i).entropy(), parallel.getHistogram(i).entropy(), 1e-9);
+                }
+                assertEquals(single.getCombinedHistogram().entropy(), parallel.getCombinedHistogram().entropy(), 1e-9);
+            }
+        }
+    }
+
+    @Test
+    public void stabilityReflectsChangeRates() throws IOException {
+        FingerprintAnalyzer analyzer = analyze(corpus, 4, FingerprintAnalyzer.DEFAULT_MAX_DEVICES);
+        StabilityTracker tracker = analyzer.getStabilityTracker();
+        assertEquals(1.0, tracker.stability(0), 0);                // model
+        assertEquals(0.95, tracker.stability(1), 0.01);            // os 每条记录约5%的概率升级
+        assertTrue(tracker.stability(2) > 0.99);                   // drm_id
+        assertEquals(0.02, tracker.stability(3), 0.01);            // cell 50个取值中随机
+        assertEquals(RECORDS - DEVICES, tracker.transitions(0));
+    }
+
+    @Test
+    public void rowsWithWrongColumnCountAreMalformed() throws IOException {
+        String text = "device_id\ttimestamp\ta\tb\n"
+                + "d1\t1\tx\ty\n"
+                + "d1\t2\tx\n"           // 缺少列
+                + "d1\t3\tx\ty\tz\n"     // 多出列
+                + "d1\t4\tx\ty\t\n"      // 多出一个空列
+                + "d1\tnot-a-number\tx\ty\n"
+                + "no-tabs\n"
+                + "d2\t5\tx\t\n";        // 最后一列为空值，合法
+        FingerprintAnalyzer analyzer = analyze(text, 2, 1024);
+        assertEquals(2, analyzer.getRecordCount());
+        assertEquals(5, analyzer.getMalformedCount());
+    }
+
+    @Test
+    public void mutualInformationOfIdenticalAndIndependentColumns() throws IOException {
+        Random random = new Random(5);
+        StringBuilder sb = new StringBuilder("device_id\ttimestamp\ta\tcopy\tnoise\n");
+        for (int i = 0; i < 50_000; i++) {
+            int value = random.nextInt(64);
+            sb.append("d").append(i).append('\t').append(i).append('\t')
+                    .append(value).append('\t').append(value).append('\t')
+                    .append(random.nextInt(64)).append('\n');
+        }
+        FingerprintAnalyzer analyzer = analyze(sb.toString(), 4, 1024);
+        double entropy = analyzer.mutualInformation(0, 0);
+        assertEquals(6, entropy, 0.01);
+        assertEquals(entropy, analyzer.mutualInformation(0, 1), 1e-9);
+        assertEquals(analyzer.mutualInformation(0, 2), analyzer.mutualInformation(2, 0), 0);
+        // 独立列的估计值有正偏差：4096个联合取值只有5万个样本，联合直方图也有少量桶冲突
+        assertTrue(analyzer.mutualInformation(0, 2) < 0.2);
+    }
+
+    @Test(expected = IOException.class)
+    public void emptyCorpusIsRejected() throws IOException {
+        analyze("", 1, 1024);
+    }
+
+    private static FingerprintAnalyzer analyze(String text, int threads, int maxDevices) throws IOException {
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            return FingerprintAnalyzer.analyze(new StringReader(text), pool,
+                    FingerprintAnalyzer.DEFAULT_COMPONENT_BITS, FingerprintAnalyzer.DEFAULT_JOINT_BITS, maxDevices);
+        } finally {
+            pool.shutdown();
+        }
+    }
+}
@@ -0,0 +1,26 @@
+plugins {
+    application
+}
+
+java {
+    // 虚拟线程需要JDK 21
+    toolchain {
+        languageVersion.set(JavaLanguageVersion.of(21))
+    }
+}
+
+application {
+    mainClass.set("com.venus735.devicefingerprint.server.IngestionServer")
+}
+
+dependencies {
+    testImplementation(libs.junit)
+}
+
+tasks.register<JavaExec>("loadGenerator") {
+    group = "application"
+    description = "向本地接收服务发送合成的采集批次并统计吞吐量"
+    classpath = sourceSets["main"].runtimeClasspath
+    mainClass.set("com.venus735.devicefingerprint.server.LoadGenerator")
+    javaLauncher.set(javaToolchains.launcherFor { languageVersion.set(JavaLanguageVersion.of(21)) })
+}
@@ -0,0 +1,105 @@
+package com.venus735.devicefingerprint.server;
+
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 按指纹去重
+ * 记录最近写入的窗口指纹(设备ID + 窗口时间 + 内容哈希)及其日志位置，容量固定，按LRU淘汰。
+ * 客户端重试时同一窗口会被重复发送，这里保证只写入一次。
+ * 指纹在写入成功之前处于写入中状态，并发的重复请求等待原写入的结果，不会在原写入失败时误报成功。
+ * 使用ReentrantLock而不是synchronized，避免在JDK 21上钉住虚拟线程的载体线程。
+ */
+final class Deduplicator {
+    private final ReentrantLock lock = new ReentrantLock();
+    private final LinkedHashMap<Long, Long> written;
+    private final HashMap<Long, CompletableFuture<Long>> inFlight = new HashMap<>();
+
+    Deduplicator(int capacity) {
+        this.written = new LinkedHashMap<Long, Long>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, Long> eldest) {
+                return size() > capacity;
+            }
+        };
+    }
+
+    /**
+     * 查找指纹，第一次见到时登记为写入中
+     * @return null表示第一次见到，调用方写入后必须调用 {@link #complete} 或 {@link #forget}；
+     *         否则返回该窗口的日志位置：原写入仍在进行时在其完成后完成，原写入失败时以失败原因异常完成
+     */
+    CompletableFuture<Long> claim(long fingerprint) {
+        lock.lock();
+        try {
+            Long position = written.get(fingerprint);
+            if (position != null) {
+                return CompletableFuture.completedFuture(position);
+            }
+            CompletableFuture<Long> pending = inFlight.get(fingerprint);
+            if (pending != null) {
+                return pending;
+            }
+            inFlight.put(fingerprint, new CompletableFuture<>());
+            return null;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 记录指纹已经写入日志，等待中的重复请求得到日志位置
+     */
+    void complete(long fingerprint, long position) {
+        CompletableFuture<Long> pending;
+        lock.lock();
+        try {
+            pending = inFlight.remove(fingerprint);
+            written.put(fingerprint, position);
+        } finally {
+            lock.unlock();
+        }
+        if (pending != null) {
+            pending.complete(position);
+        }
+    }
+
+    /**
+     * 撤销一个指纹，等待中的重复请求以cause失败
+     */
+    void forget(long fingerprint, Throwable cause) {
+        CompletableFuture<Long> pending;
+        lock.lock();
+        try {
+            pending = inFlight.remove(fingerprint);
+            written.remove(fingerprint);
+        } finally {
+            lock.unlock();
+        }
+        if (pending != null) {
+            pending.completeExceptionally(cause);
+        }
+    }
+
+    /**
+     * 窗口指纹：设备ID、窗口时间和窗口原始字节共同决定
+     */
+    static long fingerprint(String deviceId, long timestamp, ByteBuffer data, int offset, int length) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < deviceId.length(); i++) {
+            h = (h ^ deviceId.charAt(i)) * 0x100000001b3L;
+        }
+        h = (h ^ timestamp) * 0x100000001b3L;
+        for (int i = offset; i < offset + length; i++) {
+            h = (h ^ (data.get(i) & 0xff)) * 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        return h;
+    }
+}
@@ -0,0 +1,327 @@
+package com.venus735.devicefingerprint.server;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 采集批次接收服务(参考实现)
+ * 基于JDK内置HttpServer，每个请求在一个虚拟线程上处理。
+ * <pre>
+ * POST /v1/batches                               CollectionBatchCodec格式的请求体
+ * GET  /v1/devices/{deviceId}/batches?from=&amp;to=&amp;limit=&amp;cursor=
+ *                                                按设备和时间分页查询窗口摘要
+ * GET  /v1/stats                                 计数器
+ * </pre>
+ * 每个窗口按指纹去重后作为一条记录追加到分段内存映射日志，记录刷到磁盘后才返回200；
+ * 写入或刷盘失败返回500，客户端重试时已写入的窗口会被去重。
+ * 并发请求中的重复窗口等待原写入成功并刷盘后才确认，原写入失败时同样返回500。
+ * 启动时用日志中最近的记录恢复去重状态，重启前已确认的窗口被重试时不会重复写入。
+ * 查询每页最多返回limit条(默认 {@value #DEFAULT_QUERY_LIMIT}，上限 {@value #MAX_QUERY_LIMIT})，
+ * 还有更多结果时响应中的next是下一页的cursor，否则为null。
+ */
+public final class IngestionServer {
+    private static final int MAX_BODY_BYTES = 16 << 20;
+    private static final int DEDUP_CAPACITY = 1 << 20;
+    static final int DEFAULT_QUERY_LIMIT = 1000;
+    static final int MAX_QUERY_LIMIT = 10000;
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final SegmentedLog log;
+    private final Deduplicator deduplicator = new Deduplicator(DEDUP_CAPACITY);
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder accepted = new LongAdder();
+    private final LongAdder duplicates = new LongAdder();
+    private final LongAdder bytesReceived = new LongAdder();
+
+    public IngestionServer(InetSocketAddress address, Path dataDirectory) throws IOException {
+        this(address, dataDirectory, SegmentedLog.DEFAULT_SEGMENT_SIZE);
+    }
+
+    IngestionServer(InetSocketAddress address, Path dataDirectory, int segmentSize) throws IOException {
+        this.log = new SegmentedLog(dataDirectory, segmentSize);
+        log.forEachRecent(DEDUP_CAPACITY, record -> deduplicator.complete(Deduplicator.fingerprint(
+                record.deviceId, record.timestamp, record.payload, 0, record.payload.limit()), record.position));
+        this.server = HttpServer.create(address, 1024);
+        this.executor = Executors.newVirtualThreadPerTaskExecutor();
+        server.setExecutor(executor);
+        server.createContext("/v1/batches", this::handleIngest);
+        server.createContext("/v1/devices/", this::handleQuery);
+        server.createContext("/v1/stats", this::handleStats);
+    }
+
+    public void start() {
+        server.start();
+    }
+
+    public void stop() throws IOException {
+        server.stop(1);
+        executor.shutdown();
+        log.close();
+    }
+
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    private void handleIngest(HttpExchange exchange) throws IOException {
+        requests.increment();
+        try {
+            if (!"POST".equals(exchange.getRequestMethod())) {
+                respond(exchange, 405, "{\"error\":\"method not allowed\"}");
+                return;
+            }
+            byte[] body;
+            try (InputStream in = exchange.getRequestBody()) {
+                body = in.readNBytes(MAX_BODY_BYTES + 1);
+            }
+            if (body.length > MAX_BODY_BYTES) {
+                rejected.increment();
+                respond(exchange, 413, "{\"error\":\"payload too large\"}");
+                return;
+            }
+            bytesReceived.add(body.length);
+
+            ByteBuffer buffer = ByteBuffer.wrap(body);
+            PayloadDecoder.Payload payload;
+            try {
+                payload = PayloadDecoder.decode(buffer);
+            } catch (IOException e) {
+                rejected.increment();
+                respond(exchange, 400, "{\"error\":" + quote(e.getMessage()) + "}");
+                return;
+            }
+
+            int acceptedCount = 0;
+            long lastPosition = -1;
+            List<CompletableFuture<Long>> duplicateWrites = new ArrayList<>();
+            try {
+                for (PayloadDecoder.BatchSlice slice : payload.batches) {
+                    long fingerprint = Deduplicator.fingerprint(payload.deviceId, slice.timestamp, buffer, slice.offset, slice.length);
+                    CompletableFuture<Long> existing = deduplicator.claim(fingerprint);
+                    if (existing != null) {
+                        duplicateWrites.add(existing);
+                        continue;
+                    }
+                    long position;
+                    try {
+                        position = log.append(payload.deviceId, payload.version, slice.timestamp, buffer, slice.offset, slice.length);
+                    } catch (IOException | RuntimeException e) {
+                        // 写入失败时撤销去重标记，客户端重试时仍能写入，等待中的重复请求同样失败
+                        deduplicator.forget(fingerprint, e);
+                        throw e;
+                    }
+                    deduplicator.complete(fingerprint, position);
+                    lastPosition = position;
+                    acceptedCount++;
+                }
+                // 重复的窗口可能是并发请求正在写入或还没有刷盘的记录，等原写入成功并刷盘后再确认
+                for (CompletableFuture<Long> write : duplicateWrites) {
+                    lastPosition = Math.max(lastPosition, awaitWrite(write));
+                }
+                if (lastPosition >= 0) {
+                    log.sync(lastPosition);
+                }
+            } catch (IOException e) {
+                accepted.add(acceptedCount);
+                failed.increment();
+                respond(exchange, 500, "{\"error\":" + quote(e.getMessage()) + ",\"accepted\":" + acceptedCount + "}");
+                return;
+            }
+            int duplicateCount = duplicateWrites.size();
+            accepted.add(acceptedCount);
+            duplicates.add(duplicateCount);
+            respond(exchange, 200, "{\"accepted\":" + acceptedCount + ",\"duplicates\":" + duplicateCount + "}");
+        } finally {
+            exchange.close();
+        }
+    }
+
+    /**
+     * 等待并发请求对同一窗口的写入
+     * @return 窗口的日志位置
+     * @throws IOException 原写入失败
+     */
+    private static long awaitWrite(CompletableFuture<Long> write) throws IOException {
+        try {
+            return write.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("等待重复窗口写入时被中断", e);
+        } catch (ExecutionException e) {
+            throw new IOException("重复窗口的原写入失败: " + e.getCause().getMessage(), e.getCause());
+        }
+    }
+
+    private void handleQuery(HttpExchange exchange) throws IOException {
+        try {
+            // /v1/devices/{deviceId}/batches
+            String path = exchange.getRequestURI().getPath();
+            String[] parts = path.split("/");
+            if (!"GET".equals(exchange.getRequestMethod()) || parts.length != 5 || !"batches".equals(parts[4])) {
+                respond(exchange, 404, "{\"error\":\"not found\"}");
+                return;
+            }
+            String deviceId = URLDecoder.decode(parts[3], StandardCharsets.UTF_8);
+            Map<String, String> query = parseQuery(exchange.getRequestURI().getRawQuery());
+            long from;
+            long to;
+            try {
+                from = Long.parseLong(query.getOrDefault("from", "0"));
+                to = Long.parseLong(query.getOrDefault("to", String.valueOf(Long.MAX_VALUE)));
+            } catch (NumberFormatException e) {
+                respond(exchange, 400, "{\"error\":\"invalid time range\"}");
+                return;
+            }
+            int limit;
+            try {
+                limit = Math.min(Integer.parseInt(query.getOrDefault("limit", String.valueOf(DEFAULT_QUERY_LIMIT))),
+                        MAX_QUERY_LIMIT);
+            } catch (NumberFormatException e) {
+                limit = 0;
+            }
+            if (limit <= 0) {
+                respond(exchange, 400, "{\"error\":\"invalid limit\"}");
+                return;
+            }
+            // cursor为"时间:跳过条数"，替代from
+            int skip = 0;
+            String cursor = query.get("cursor");
+            if (cursor != null) {
+                int colon = cursor.lastIndexOf(':');
+                try {
+                    from = Long.parseLong(cursor.substring(0, Math.max(colon, 0)));
+                    skip = Integer.parseInt(cursor.substring(colon + 1));
+                } catch (NumberFormatException e) {
+                    skip = -1;
+                }
+                if (skip < 0) {
+                    respond(exchange, 400, "{\"error\":\"invalid cursor\"}");
+                    return;
+                }
+            }
+
+            LogIndex.Page page = log.getIndex().lookup(deviceId, from, to, skip, limit);
+            List<Long> positions = page.positions;
+            StringBuilder json = new StringBuilder(64 + positions.size() * 96);
+            json.append("{\"deviceId\":").append(quote(deviceId)).append(",\"batches\":[");
+            for (int i = 0; i < positions.size(); i++) {
+                SegmentedLog.Record record = log.read(positions.get(i));
+                PayloadDecoder.BatchSlice slice = PayloadDecoder.readBatch(record.payload, record.version);
+                if (i > 0) {
+                    json.append(',');
+                }
+                json.append("{\"timestamp\":").append(slice.timestamp)
+                        .append(",\"cells\":").append(slice.cellCount)
+                        .append(",\"beacons\":").append(slice.beaconCount);
+                if (slice.hasLocation) {
+                    json.append(",\"latitude\":").append(slice.latitude)
+                            .append(",\"longitude\":").append(slice.longitude);
+                }
+                json.append('}');
+            }
+            json.append("],\"next\":")
+                    .append(page.hasMore ? quote(page.nextFrom + ":" + page.nextSkip) : "null").append('}');
+            respond(exchange, 200, json.toString());
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private void handleStats(HttpExchange exchange) throws IOException {
+        try {
+            respond(exchange, 200, "{\"requests\":" + requests.sum()
+                    + ",\"rejected\":" + rejected.sum()
+                    + ",\"failed\":" + failed.sum()
+                    + ",\"accepted\":" + accepted.sum()
+                    + ",\"duplicates\":" + duplicates.sum()
+                    + ",\"bytesReceived\":" + bytesReceived.sum()
+                    + ",\"records\":" + log.getRecordCount()
+                    + ",\"segments\":" + log.getSegmentCount()
+                    + ",\"devices\":" + log.getIndex().deviceCount() + "}");
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private static void respond(HttpExchange exchange, int status, String json) throws IOException {
+        byte[] bytes = json.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    private static Map<String, String> parseQuery(String rawQuery) {
+        Map<String, String> query = new HashMap<>();
+        if (rawQuery == null) {
+            return query;
+        }
+        for (String pair : rawQuery.split("&")) {
+            int eq = pair.indexOf('=');
+            if (eq > 0) {
+                query.put(URLDecoder.decode(pair.substring(0, eq), StandardCharsets.UTF_8),
+                        URLDecoder.decode(pair.substring(eq + 1), StandardCharsets.UTF_8));
+            }
+        }
+        return query;
+    }
+
+    private static String quote(String value) {
+        if (value == null) {
+            return "null";
+        }
+        StringBuilder sb = new StringBuilder(value.length() + 2).append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                sb.append('\\').append(c);
+            } else if (c < 0x20) {
+                sb.append(String.format("\\u%04x", (int) c));
+            } else {
+                sb.append(c);
+            }
+        }
+        return sb.append('"').toString();
+    }
+
+    /**
+     * 用法: IngestionServer [port] [dataDirectory]
+     */
+    public static void main(String[] args) throws IOException {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : 8080;
+        Path dataDirectory = Paths.get(args.length > 1 ? args[1] : "ingest-data");
+        IngestionServer server = new IngestionServer(new InetSocketAddress(port), dataDirectory);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            try {
+                server.stop();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }));
+        server.start();
+        System.out.println("ingestion server listening on port " + server.getPort() + ", data in " + dataDirectory.toAbsolutePath());
+    }
+}
@@ -0,0 +1,174 @@
+package com.venus735.devicefingerprint.server;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 接收服务压测客户端
+ * 生成与客户端相同格式的合成批次(版本3)，按指定并发度发送，统计吞吐量和延迟分位数。
+ * 一部分请求会原样重发之前的批次，用于验证服务端去重。
+ */
+public final class LoadGenerator {
+    private final URI endpoint;
+    private final int devices;
+    private final int batchesPerRequest;
+    private final int cellsPerBatch;
+
+    LoadGenerator(URI endpoint, int devices, int batchesPerRequest, int cellsPerBatch) {
+        this.endpoint = endpoint;
+        this.devices = devices;
+        this.batchesPerRequest = batchesPerRequest;
+        this.cellsPerBatch = cellsPerBatch;
+    }
+
+    /**
+     * 用法: LoadGenerator [baseUrl] [requests] [concurrency] [devices] [batchesPerRequest] [cellsPerBatch] [duplicateRatio]
+     */
+    public static void main(String[] args) throws Exception {
+        String baseUrl = args.length > 0 ? args[0] : "http://localhost:8080";
+        int requests = args.length > 1 ? Integer.parseInt(args[1]) : 20000;
+        int concurrency = args.length > 2 ? Integer.parseInt(args[2]) : 256;
+        int devices = args.length > 3 ? Integer.parseInt(args[3]) : 10000;
+        int batchesPerRequest = args.length > 4 ? Integer.parseInt(args[4]) : 10;
+        int cellsPerBatch = args.length > 5 ? Integer.parseInt(args[5]) : 6;
+        double duplicateRatio = args.length > 6 ? Double.parseDouble(args[6]) : 0.05;
+
+        LoadGenerator generator = new LoadGenerator(URI.create(baseUrl + "/v1/batches"), devices, batchesPerRequest, cellsPerBatch);
+        generator.run(requests, concurrency, duplicateRatio);
+    }
+
+    private void run(int requests, int concurrency, double duplicateRatio) throws InterruptedException {
+        ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+        HttpClient client = HttpClient.newBuilder()
+                .executor(executor)
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofSeconds(5))
+                .build();
+        Semaphore inFlight = new Semaphore(concurrency);
+        long[] latencies = new long[requests];
+        LongAdder bytesSent = new LongAdder();
+        AtomicLong failures = new AtomicLong();
+        byte[][] previousPayloads = new byte[Math.max(1, concurrency)][];
+
+        long start = System.nanoTime();
+        for (int i = 0; i < requests; i++) {
+            inFlight.acquire();
+            int request = i;
+            executor.execute(() -> {
+                try {
+                    int slot = request % previousPayloads.length;
+                    byte[] body;
+                    synchronized (previousPayloads) {
+                        body = previousPayloads[slot];
+                    }
+                    if (body == null || ThreadLocalRandom.current().nextDouble() >= duplicateRatio) {
+                        body = buildPayload(ThreadLocalRandom.current());
+                        synchronized (previousPayloads) {
+                            previousPayloads[slot] = body;
+                        }
+                    }
+                    HttpRequest httpRequest = HttpRequest.newBuilder(endpoint)
+                            .header("Content-Type", "application/octet-stream")
+                            .POST(HttpRequest.BodyPublishers.ofByteArray(body))
+                            .build();
+                    long sent = System.nanoTime();
+                    HttpResponse<String> response = client.send(httpRequest, HttpResponse.BodyHandlers.ofString());
+                    latencies[request] = System.nanoTime() - sent;
+                    if (response.statusCode() != 200) {
+                        failures.incrementAndGet();
+                    }
+                    bytesSent.add(body.length);
+                } catch (IOException | InterruptedException e) {
+                    failures.incrementAndGet();
+                    latencies[request] = -1;
+                } finally {
+                    inFlight.release();
+                }
+            });
+        }
+        inFlight.acquire(concurrency);
+        double seconds = (System.nanoTime() - start) / 1e9;
+        executor.shutdown();
+
+        long[] sorted = Arrays.stream(latencies).filter(latency -> latency >= 0).sorted().toArray();
+        System.out.printf("requests: %d, failures: %d, elapsed: %.2fs%n", requests, failures.get(), seconds);
+        System.out.printf("throughput: %.0f req/s, %.0f batches/s, %.2f MB/s%n",
+                requests / seconds, (double) requests * batchesPerRequest / seconds, bytesSent.sum() / seconds / (1 << 20));
+        if (sorted.length > 0) {
+            System.out.printf("latency: p50 %.2fms, p99 %.2fms, max %.2fms%n",
+                    percentile(sorted, 0.50), percentile(sorted, 0.99), sorted[sorted.length - 1] / 1e6);
+        }
+    }
+
+    private static double percentile(long[] sorted, double p) {
+        return sorted[Math.min(sorted.length - 1, (int) (sorted.length * p))] / 1e6;
+    }
+
+    /**
+     * 按 CollectionBatchCodec 版本3的格式生成一个请求体
+     */
+    byte[] buildPayload(Random random) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(256 + batchesPerRequest * cellsPerBatch * 64);
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(PayloadDecoder.MAGIC);
+        out.writeByte(3);
+        writeString(out, String.format("%032x", random.nextInt(devices)));
+        writeVarInt(out, batchesPerRequest);
+        long now = System.currentTimeMillis();
+        for (int b = 0; b < batchesPerRequest; b++) {
+            out.writeLong(now - (long) (batchesPerRequest - b) * 60000);
+            out.writeByte(1);
+            out.writeDouble(31 + random.nextDouble());
+            out.writeDouble(121 + random.nextDouble());
+            out.writeFloat(10 + random.nextFloat() * 40);
+            out.writeLong(now);
+            writeVarInt(out, cellsPerBatch);
+            for (int c = 0; c < cellsPerBatch; c++) {
+                writeString(out, "LTE");
+                writeString(out, "460");
+                writeString(out, "00");
+                out.writeLong(random.nextInt(1 << 28));
+                out.writeInt(random.nextInt(1 << 16));
+                out.writeInt(-60 - random.nextInt(60));
+                out.writeLong(now);
+                out.writeInt(1 + c % 2);
+                writeString(out, "Carrier");
+                out.writeInt(-140 + random.nextInt(97));   // rsrp
+                out.writeInt(-20 + random.nextInt(18));    // rsrq
+                out.writeInt(-20 + random.nextInt(51));    // sinr
+                out.writeInt(random.nextInt(1283));        // timingAdvance
+            }
+            writeVarInt(out, 0);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        writeVarInt(out, bytes.length + 1);
+        out.write(bytes);
+    }
+
+    private static void writeVarInt(DataOutputStream out, int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            out.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+}
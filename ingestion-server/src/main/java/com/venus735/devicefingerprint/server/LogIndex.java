@@ -0,0 +1,77 @@
+package com.venus735.devicefingerprint.server;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * 日志索引：设备ID -> (窗口时间 -> 日志位置)
+ * 启动时由 {@link SegmentedLog} 扫描日志重建，写入时增量更新。
+ */
+final class LogIndex {
+    private final ConcurrentHashMap<String, ConcurrentSkipListMap<Long, long[]>> byDevice = new ConcurrentHashMap<>();
+
+    void add(String deviceId, long timestamp, long position) {
+        byDevice.computeIfAbsent(deviceId, id -> new ConcurrentSkipListMap<>())
+                .merge(timestamp, new long[]{position}, (existing, added) -> {
+                    long[] merged = Arrays.copyOf(existing, existing.length + 1);
+                    merged[existing.length] = added[0];
+                    return merged;
+                });
+    }
+
+    /**
+     * 分页查询的一页
+     */
+    static final class Page {
+        final List<Long> positions;
+        final boolean hasMore;
+        final long nextFrom;    // 下一页的from
+        final int nextSkip;     // 下一页跳过时间恰为nextFrom的前几条
+
+        Page(List<Long> positions, boolean hasMore, long nextFrom, int nextSkip) {
+            this.positions = positions;
+            this.hasMore = hasMore;
+            this.nextFrom = nextFrom;
+            this.nextSkip = nextSkip;
+        }
+    }
+
+    /**
+     * 查询设备在时间范围[from, to]内的所有日志位置，按时间排序
+     */
+    List<Long> lookup(String deviceId, long from, long to) {
+        return lookup(deviceId, from, to, 0, Integer.MAX_VALUE).positions;
+    }
+
+    /**
+     * 按时间顺序分页查询设备在时间范围[from, to]内的日志位置
+     * 同一时间的多条记录按追加顺序排列，只会在末尾增加，因此(时间, 跳过条数)可以稳定地标识下一页的起点
+     * @param skip 跳过时间恰为from的前skip条
+     * @param limit 本页最多返回的条数
+     */
+    Page lookup(String deviceId, long from, long to, int skip, int limit) {
+        List<Long> positions = new ArrayList<>(Math.min(limit, 256));
+        ConcurrentSkipListMap<Long, long[]> timeline = byDevice.get(deviceId);
+        if (timeline == null || from > to) {
+            return new Page(positions, false, 0, 0);
+        }
+        for (Map.Entry<Long, long[]> entry : timeline.subMap(from, true, to, true).entrySet()) {
+            long[] values = entry.getValue();
+            for (int i = entry.getKey() == from ? skip : 0; i < values.length; i++) {
+                if (positions.size() == limit) {
+                    return new Page(positions, true, entry.getKey(), i);
+                }
+                positions.add(values[i]);
+            }
+        }
+        return new Page(positions, false, 0, 0);
+    }
+
+    int deviceCount() {
+        return byDevice.size();
+    }
+}
@@ -0,0 +1,138 @@
+package com.venus735.devicefingerprint.server;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 解析客户端 CollectionBatchCodec 输出的批次数据(版本1-3)
+ * 服务端不依赖Android库，这里按相同的格式独立实现；解析时只记录每个窗口在原始数据中的位置，
+ * 写入日志时直接复制该片段，不重新编码。
+ */
+final class PayloadDecoder {
+    static final int MAGIC = 0x44465042; // "DFPB"
+    static final byte MAX_VERSION = 3;
+
+    private PayloadDecoder() {
+    }
+
+    static class Payload {
+        String deviceId;
+        byte version;
+        List<BatchSlice> batches = new ArrayList<>();
+    }
+
+    /**
+     * 一个采集窗口在原始数据中的位置及摘要
+     */
+    static class BatchSlice {
+        long timestamp;
+        int offset;
+        int length;
+        boolean hasLocation;
+        double latitude;
+        double longitude;
+        int cellCount;
+        int beaconCount;
+    }
+
+    static Payload decode(ByteBuffer buffer) throws IOException {
+        try {
+            if (buffer.getInt() != MAGIC) {
+                throw new IOException("不支持的数据格式");
+            }
+            Payload payload = new Payload();
+            payload.version = buffer.get();
+            if (payload.version < 1 || payload.version > MAX_VERSION) {
+                throw new IOException("不支持的数据版本: " + payload.version);
+            }
+            payload.deviceId = readString(buffer);
+            if (payload.deviceId == null || payload.deviceId.isEmpty()) {
+                throw new IOException("缺少设备指纹");
+            }
+            int batchCount = readVarInt(buffer);
+            for (int i = 0; i < batchCount; i++) {
+                payload.batches.add(readBatch(buffer, payload.version));
+            }
+            if (buffer.hasRemaining()) {
+                throw new IOException("数据末尾有多余字节");
+            }
+            return payload;
+        } catch (RuntimeException e) {
+            throw new IOException("数据格式错误", e);
+        }
+    }
+
+    /**
+     * 解析单个窗口，buffer位于窗口开头
+     */
+    static BatchSlice readBatch(ByteBuffer buffer, byte version) throws IOException {
+        BatchSlice slice = new BatchSlice();
+        slice.offset = buffer.position();
+        slice.timestamp = buffer.getLong();
+        slice.hasLocation = buffer.get() != 0;
+        if (slice.hasLocation) {
+            slice.latitude = buffer.getDouble();
+            slice.longitude = buffer.getDouble();
+            buffer.position(buffer.position() + 4 + 8); // accuracy, time
+        }
+        slice.cellCount = readVarInt(buffer);
+        for (int j = 0; j < slice.cellCount; j++) {
+            skipString(buffer); // type
+            skipString(buffer); // mcc
+            skipString(buffer); // mnc
+            buffer.position(buffer.position() + 8 + 4 + 4 + 8 + 4);
+            skipString(buffer); // carrierName
+            if (version >= 3) {
+                buffer.position(buffer.position() + 4 + 4 + 4 + 4); // rsrp, rsrq, sinr, timingAdvance
+            }
+        }
+        if (version >= 2) {
+            slice.beaconCount = readVarInt(buffer);
+            for (int j = 0; j < slice.beaconCount; j++) {
+                skipString(buffer); // type
+                skipString(buffer); // hashedId
+                buffer.position(buffer.position() + 4 + 4 + 8);
+            }
+        }
+        slice.length = buffer.position() - slice.offset;
+        return slice;
+    }
+
+    static String readString(ByteBuffer buffer) throws IOException {
+        int length = readVarInt(buffer);
+        if (length == 0) {
+            return null;
+        }
+        if (length - 1 > buffer.remaining()) {
+            throw new IOException("字符串长度超出数据范围");
+        }
+        byte[] bytes = new byte[length - 1];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void skipString(ByteBuffer buffer) throws IOException {
+        int length = readVarInt(buffer);
+        if (length > 0) {
+            buffer.position(buffer.position() + length - 1);
+        }
+    }
+
+    static int readVarInt(ByteBuffer buffer) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            byte b = buffer.get();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                if (value < 0) {
+                    throw new IOException("长度超出范围");
+                }
+                return value;
+            }
+        }
+        throw new IOException("变长整数格式错误");
+    }
+}
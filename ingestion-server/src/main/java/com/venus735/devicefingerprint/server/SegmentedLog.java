@@ -0,0 +1,373 @@
+package com.venus735.devicefingerprint.server;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+
+/**
+ * 分段内存映射日志
+ * 目录下按序号命名的固定大小段文件，每段整体映射到内存，追加写只是一次内存拷贝；
+ * 当前段放不下新记录时切换到新段。日志位置为 (段号 &lt;&lt; 32) | 段内偏移。
+ * <pre>
+ * 记录: length(4，0表示段结束) crc32c(4) version(1) idLength(2) deviceId timestamp(8) payload
+ * </pre>
+ * length不含自身，crc32c覆盖其后的全部字节。
+ * 打开时顺序扫描所有段，重建 {@link LogIndex} 并定位写入位置。系统崩溃后映射内存的页面可能以任意顺序落盘，
+ * 扫描在第一条长度非法或校验失败的记录处结束并视为日志末尾：该段之后的内容清零，之后的段删除。
+ * 这些记录一定还没有确认过，因为确认任何记录之前都会把它之前的所有记录刷到磁盘。
+ * 追加只写入映射内存，调用方在确认之前通过 {@link #sync} 把记录刷到磁盘：
+ * 同时等待的请求共享同一次刷盘(组提交)，每次只刷上次刷盘之后写入的区间。
+ */
+final class SegmentedLog implements Closeable {
+    static final int DEFAULT_SEGMENT_SIZE = 64 << 20;
+    private static final String SUFFIX = ".seg";
+    // crc32c(4) version(1) idLength(2) timestamp(8)
+    private static final int MIN_RECORD_LENGTH = 4 + 1 + 2 + 8;
+
+    private final Path directory;
+    private final int segmentSize;
+    private final LogIndex index = new LogIndex();
+    private final ReentrantLock appendLock = new ReentrantLock();
+    private final ReentrantLock syncLock = new ReentrantLock();
+    private final List<FileChannel> channels = new ArrayList<>();
+    private volatile MappedByteBuffer[] segments = new MappedByteBuffer[0];
+    private int[] segmentRecordCounts = new int[0];
+    private int writeOffset;
+    private long recordCount;
+    private long lastPosition = -1;
+    // 已刷到磁盘的末尾位置，(段号 << 32) | 段内偏移
+    private volatile long syncedEnd;
+
+    /**
+     * 追加或读取出的一条记录
+     */
+    static class Record {
+        final long position;
+        final String deviceId;
+        final byte version;
+        final long timestamp;
+        final ByteBuffer payload;
+
+        Record(long position, String deviceId, byte version, long timestamp, ByteBuffer payload) {
+            this.position = position;
+            this.deviceId = deviceId;
+            this.version = version;
+            this.timestamp = timestamp;
+            this.payload = payload;
+        }
+    }
+
+    SegmentedLog(Path directory, int segmentSize) throws IOException {
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        Files.createDirectories(directory);
+        List<Path> files;
+        try (Stream<Path> list = Files.list(directory)) {
+            files = list.filter(path -> path.getFileName().toString().endsWith(SUFFIX))
+                    .sorted()
+                    .collect(Collectors.toList());
+        }
+        for (int i = 0; i < files.size(); i++) {
+            openSegment(files.get(i));
+            int segment = i;
+            writeOffset = walkSegment(segment, (position, record) -> {
+                index.add(record.deviceId, record.timestamp, position);
+                segmentRecordCounts[segment]++;
+                recordCount++;
+                lastPosition = position;
+            });
+            if (writeOffset + 4 <= segmentSize && segments[segment].getInt(writeOffset) != 0) {
+                // 损坏的记录是日志末尾，之后的段都是崩溃前未确认的写入
+                for (Path later : files.subList(i + 1, files.size())) {
+                    Files.delete(later);
+                }
+                break;
+            }
+        }
+        if (segments.length == 0) {
+            openSegment(segmentPath(0));
+        }
+        clearTail(segments.length - 1, writeOffset);
+        syncedEnd = endPosition();
+    }
+
+    LogIndex getIndex() {
+        return index;
+    }
+
+    long getRecordCount() {
+        appendLock.lock();
+        try {
+            return recordCount;
+        } finally {
+            appendLock.unlock();
+        }
+    }
+
+    /**
+     * 最后追加的记录的位置，日志为空时返回-1
+     */
+    long getLastPosition() {
+        appendLock.lock();
+        try {
+            return lastPosition;
+        } finally {
+            appendLock.unlock();
+        }
+    }
+
+    int getSegmentCount() {
+        return segments.length;
+    }
+
+    /**
+     * 追加一条记录并更新索引
+     * @param payload 数据来源，读取其[offset, offset + length)区间，不改变其position
+     * @return 日志位置
+     */
+    long append(String deviceId, byte version, long timestamp, ByteBuffer payload, int offset, int length) throws IOException {
+        byte[] id = deviceId.getBytes(StandardCharsets.UTF_8);
+        int recordSize = 4 + MIN_RECORD_LENGTH + id.length + length;
+        if (id.length > Short.MAX_VALUE || recordSize + 4 > segmentSize) {
+            throw new IOException("记录过大: " + recordSize);
+        }
+        long position;
+        appendLock.lock();
+        try {
+            // 保留4字节作为段结束标记
+            if (writeOffset + recordSize + 4 > segmentSize) {
+                openSegment(segmentPath(segments.length));
+                writeOffset = 0;
+            }
+            int segment = segments.length - 1;
+            ByteBuffer target = segments[segment].duplicate();
+            target.position(writeOffset + 8);
+            target.put(version).putShort((short) id.length).put(id).putLong(timestamp);
+            ByteBuffer source = payload.duplicate();
+            source.limit(offset + length).position(offset);
+            target.put(source);
+            target.putInt(writeOffset + 4, checksum(target, writeOffset + 8, recordSize - 8));
+            // 最后写长度，正常运行时长度不为0即表示记录完整；崩溃后由校验和判断
+            target.putInt(writeOffset, recordSize - 4);
+            position = ((long) segment << 32) | writeOffset;
+            writeOffset += recordSize;
+            segmentRecordCounts[segment]++;
+            recordCount++;
+            lastPosition = position;
+        } finally {
+            appendLock.unlock();
+        }
+        index.add(deviceId, timestamp, position);
+        return position;
+    }
+
+    Record read(long position) throws IOException {
+        MappedByteBuffer[] current = segments;
+        int segment = (int) (position >>> 32);
+        int offset = (int) position;
+        if (segment >= current.length) {
+            throw new IOException("无效的日志位置: " + position);
+        }
+        ByteBuffer buffer = current[segment].duplicate();
+        int length = buffer.getInt(offset);
+        if (length < MIN_RECORD_LENGTH || offset + 4 + length > segmentSize) {
+            throw new IOException("无效的日志位置: " + position);
+        }
+        buffer.position(offset + 8);
+        return readRecord(position, buffer, length - 4);
+    }
+
+    /**
+     * 确保position处的记录及之前追加的所有记录都已写到磁盘
+     * 已经被其他调用刷过时直接返回；否则刷写上次刷盘之后到当前末尾的区间，顺带覆盖同时等待的调用
+     * @param position {@link #append} 返回的日志位置
+     */
+    void sync(long position) throws IOException {
+        if (position < syncedEnd) {
+            return;
+        }
+        syncLock.lock();
+        try {
+            if (position < syncedEnd) {
+                return;
+            }
+            long from = syncedEnd;
+            long end;
+            MappedByteBuffer[] current;
+            appendLock.lock();
+            try {
+                end = endPosition();
+                current = segments;
+            } finally {
+                appendLock.unlock();
+            }
+            int fromSegment = (int) (from >>> 32);
+            int toSegment = (int) (end >>> 32);
+            for (int segment = fromSegment; segment <= toSegment; segment++) {
+                int start = segment == fromSegment ? (int) from : 0;
+                int stop = segment == toSegment ? (int) end : segmentSize;
+                if (stop > start) {
+                    current[segment].force(start, stop - start);
+                }
+            }
+            syncedEnd = end;
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        } finally {
+            syncLock.unlock();
+        }
+    }
+
+    /**
+     * 按追加顺序遍历最近的记录，只在启动时调用，例如用来恢复去重状态
+     * 从最后一段往前取足够多的整段，因此遍历的记录数可能多于maxRecords
+     * @param maxRecords 至少需要遍历的记录数
+     */
+    void forEachRecent(int maxRecords, Consumer<Record> consumer) throws IOException {
+        int first = segments.length - 1;
+        long covered = segmentRecordCounts[first];
+        while (first > 0 && covered < maxRecords) {
+            first--;
+            covered += segmentRecordCounts[first];
+        }
+        for (int segment = first; segment < segments.length; segment++) {
+            walkSegment(segment, (position, record) -> consumer.accept(record));
+        }
+    }
+
+    /**
+     * 把内存中的修改刷到磁盘
+     */
+    void force() {
+        for (MappedByteBuffer segment : segments) {
+            segment.force();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        appendLock.lock();
+        try {
+            force();
+            for (FileChannel channel : channels) {
+                channel.close();
+            }
+            channels.clear();
+        } finally {
+            appendLock.unlock();
+        }
+    }
+
+    /**
+     * 段内记录的回调
+     */
+    private interface RecordVisitor {
+        void visit(long position, Record record);
+    }
+
+    /**
+     * 顺序遍历一个段中的完整记录，在段结束标记或第一条损坏的记录处停止
+     * @return 段内第一个空闲位置，该处长度不为0表示记录损坏
+     */
+    private int walkSegment(int segment, RecordVisitor visitor) throws IOException {
+        ByteBuffer buffer = segments[segment].duplicate();
+        int offset = 0;
+        while (offset + 4 <= segmentSize) {
+            int length = buffer.getInt(offset);
+            if (length < MIN_RECORD_LENGTH || offset + 4 + length > segmentSize
+                    || buffer.getInt(offset + 4) != checksum(buffer, offset + 8, length - 4)) {
+                break;
+            }
+            buffer.position(offset + 8);
+            long position = ((long) segment << 32) | offset;
+            visitor.visit(position, readRecord(position, buffer, length - 4));
+            offset += 4 + length;
+        }
+        return offset;
+    }
+
+    /**
+     * 把段内offset之后残留的内容清零并刷盘，避免之后追加的记录恰好接上崩溃前残留的完整记录
+     */
+    private void clearTail(int segment, int offset) {
+        MappedByteBuffer buffer = segments[segment];
+        int dirty = -1;
+        for (int i = segmentSize - 1; i >= offset; i--) {
+            if (buffer.get(i) != 0) {
+                dirty = i;
+                break;
+            }
+        }
+        if (dirty < 0) {
+            return;
+        }
+        for (int i = offset; i <= dirty; i++) {
+            buffer.put(i, (byte) 0);
+        }
+        buffer.force(offset, dirty + 1 - offset);
+    }
+
+    private static int checksum(ByteBuffer buffer, int offset, int length) {
+        ByteBuffer range = buffer.duplicate();
+        range.limit(offset + length).position(offset);
+        CRC32C crc = new CRC32C();
+        crc.update(range);
+        return (int) crc.getValue();
+    }
+
+    private long endPosition() {
+        return ((long) (segments.length - 1) << 32) | writeOffset;
+    }
+
+    /**
+     * @param length version之后的字节数
+     */
+    private static Record readRecord(long position, ByteBuffer buffer, int length) throws IOException {
+        int start = buffer.position();
+        byte version = buffer.get();
+        short idLength = buffer.getShort();
+        if (idLength < 0 || idLength > length - (MIN_RECORD_LENGTH - 4)) {
+            throw new IOException("日志记录损坏");
+        }
+        byte[] id = new byte[idLength];
+        buffer.get(id);
+        long timestamp = buffer.getLong();
+        int payloadLength = length - (buffer.position() - start);
+        if (payloadLength < 0) {
+            throw new IOException("日志记录损坏");
+        }
+        ByteBuffer payload = buffer.slice();
+        payload.limit(payloadLength);
+        return new Record(position, new String(id, StandardCharsets.UTF_8), version, timestamp, payload);
+    }
+
+    private void openSegment(Path file) throws IOException {
+        FileChannel channel = FileChannel.open(file,
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentSize);
+        channels.add(channel);
+        MappedByteBuffer[] next = Arrays.copyOf(segments, segments.length + 1);
+        next[segments.length] = mapped;
+        segmentRecordCounts = Arrays.copyOf(segmentRecordCounts, next.length);
+        segments = next;
+    }
+
+    private Path segmentPath(int segment) {
+        return directory.resolve(String.format("%08d%s", segment, SUFFIX));
+    }
+}
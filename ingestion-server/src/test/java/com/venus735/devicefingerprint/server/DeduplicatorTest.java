@@ -0,0 +1,79 @@
+package com.venus735.devicefingerprint.server;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+public class DeduplicatorTest {
+
+    @Test
+    public void claimsEachFingerprintOnce() throws Exception {
+        Deduplicator deduplicator = new Deduplicator(16);
+        assertNull(deduplicator.claim(1));
+        deduplicator.complete(1, 42);
+        assertEquals(42, deduplicator.claim(1).get().longValue());
+        deduplicator.forget(1, new IOException("回滚"));
+        assertNull(deduplicator.claim(1));
+    }
+
+    @Test
+    public void duplicateWaitsForWriteInProgress() throws Exception {
+        Deduplicator deduplicator = new Deduplicator(16);
+        assertNull(deduplicator.claim(1));
+        CompletableFuture<Long> duplicate = deduplicator.claim(1);
+        assertFalse(duplicate.isDone());
+        deduplicator.complete(1, 7);
+        assertEquals(7, duplicate.get().longValue());
+    }
+
+    @Test
+    public void duplicateFailsWhenWriteFails() throws Exception {
+        Deduplicator deduplicator = new Deduplicator(16);
+        assertNull(deduplicator.claim(1));
+        CompletableFuture<Long> duplicate = deduplicator.claim(1);
+        IOException failure = new IOException("磁盘已满");
+        deduplicator.forget(1, failure);
+        try {
+            duplicate.get();
+            fail("原写入失败时重复请求不能确认");
+        } catch (ExecutionException e) {
+            assertSame(failure, e.getCause());
+        }
+        // 失败后指纹可以重新写入
+        assertNull(deduplicator.claim(1));
+    }
+
+    @Test
+    public void evictsLeastRecentlyWritten() {
+        Deduplicator deduplicator = new Deduplicator(2);
+        deduplicator.complete(1, 0);
+        deduplicator.complete(2, 1);
+        assertTrue(deduplicator.claim(1).isDone());     // 1变为最近
+        deduplicator.complete(3, 2);                    // 淘汰2
+        assertNotNull(deduplicator.claim(1));
+        assertNull(deduplicator.claim(2));
+    }
+
+    @Test
+    public void fingerprintCoversDeviceTimeAndBytes() {
+        ByteBuffer data = ByteBuffer.wrap(new byte[]{9, 1, 2, 3, 9});
+        long base = Deduplicator.fingerprint("device-1", 1000, data, 1, 3);
+        assertEquals(base, Deduplicator.fingerprint("device-1", 1000, ByteBuffer.wrap(new byte[]{1, 2, 3}), 0, 3));
+        assertNotEquals(base, Deduplicator.fingerprint("device-2", 1000, data, 1, 3));
+        assertNotEquals(base, Deduplicator.fingerprint("device-1", 1001, data, 1, 3));
+        assertNotEquals(base, Deduplicator.fingerprint("device-1", 1000, data, 1, 4));
+        assertNotEquals(base, Deduplicator.fingerprint("device-1", 1000, ByteBuffer.wrap(new byte[]{1, 2, 4}), 0, 3));
+    }
+}
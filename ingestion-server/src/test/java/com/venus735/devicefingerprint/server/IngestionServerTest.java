@@ -0,0 +1,139 @@
+package com.venus735.devicefingerprint.server;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Path;
+
+public class IngestionServerTest {
+    private static final int SEGMENT_SIZE = 4096;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final HttpClient client = HttpClient.newHttpClient();
+    private IngestionServer server;
+
+    @After
+    public void tearDown() throws IOException {
+        if (server != null) {
+            server.stop();
+        }
+    }
+
+    @Test
+    public void retriedBatchesAreStoredOnce() throws Exception {
+        start(folder.getRoot().toPath());
+        byte[] body = new PayloadBuilder(3, "device-1", 2).batch(1000, null, 2, 1).batch(2000, null, 1, 0).build();
+        assertResponse(200, "{\"accepted\":2,\"duplicates\":0}", post(body));
+        assertResponse(200, "{\"accepted\":0,\"duplicates\":2}", post(body));
+
+        byte[] overlapping = new PayloadBuilder(3, "device-1", 2).batch(2000, null, 1, 0).batch(3000, null, 1, 0).build();
+        assertResponse(200, "{\"accepted\":1,\"duplicates\":1}", post(overlapping));
+    }
+
+    @Test
+    public void deduplicationSurvivesRestart() throws Exception {
+        Path directory = folder.getRoot().toPath();
+        start(directory);
+        byte[] body = new PayloadBuilder(3, "device-1", 1).batch(1000, new double[]{31.2, 121.4}, 3, 2).build();
+        assertResponse(200, "{\"accepted\":1,\"duplicates\":0}", post(body));
+        server.stop();
+
+        start(directory);
+        assertResponse(200, "{\"accepted\":0,\"duplicates\":1}", post(body));
+        HttpResponse<String> query = client.send(HttpRequest.newBuilder(uri("/v1/devices/device-1/batches")).build(),
+                HttpResponse.BodyHandlers.ofString());
+        assertEquals(200, query.statusCode());
+        assertTrue(query.body(), query.body().contains("\"timestamp\":1000,\"cells\":3,\"beacons\":2"));
+    }
+
+    @Test
+    public void storageFailureReturns500AndAllowsRetry() throws Exception {
+        start(folder.getRoot().toPath());
+        // 单个窗口超过段大小，追加失败
+        byte[] body = new PayloadBuilder(3, "device-1", 2).batch(1000, null, 1, 0).batch(2000, null, 200, 0).build();
+        HttpResponse<String> response = post(body);
+        assertEquals(500, response.statusCode());
+        assertTrue(response.body(), response.body().contains("\"accepted\":1"));
+
+        // 重试时第一个窗口被去重，失败的窗口没有留下去重标记，仍然尝试写入
+        HttpResponse<String> retry = post(body);
+        assertEquals(500, retry.statusCode());
+        assertTrue(retry.body(), retry.body().contains("\"accepted\":0"));
+        String stats = client.send(HttpRequest.newBuilder(uri("/v1/stats")).build(),
+                HttpResponse.BodyHandlers.ofString()).body();
+        assertTrue(stats, stats.contains("\"failed\":2") && stats.contains("\"records\":1"));
+    }
+
+    @Test
+    public void queryIsPagedWithCursor() throws Exception {
+        start(folder.getRoot().toPath());
+        // 同一时间的两个不同窗口
+        byte[] body = new PayloadBuilder(3, "device-1", 4)
+                .batch(1000, null, 1, 0).batch(2000, null, 1, 0).batch(2000, null, 2, 0).batch(3000, null, 1, 0).build();
+        assertResponse(200, "{\"accepted\":4,\"duplicates\":0}", post(body));
+
+        String first = get("/v1/devices/device-1/batches?limit=2").body();
+        assertTrue(first, first.contains("\"timestamp\":1000,\"cells\":1") && first.contains("\"timestamp\":2000,\"cells\":1"));
+        assertTrue(first, first.endsWith("\"next\":\"2000:1\"}"));
+
+        String second = get("/v1/devices/device-1/batches?limit=2&cursor=2000:1").body();
+        assertTrue(second, second.contains("\"timestamp\":2000,\"cells\":2") && second.contains("\"timestamp\":3000,\"cells\":1"));
+        assertTrue(second, second.endsWith("\"next\":null}"));
+        assertTrue(second, !second.contains("\"timestamp\":1000"));
+
+        // 默认limit一次返回全部
+        String all = get("/v1/devices/device-1/batches?to=2000").body();
+        assertTrue(all, all.contains("\"cells\":2") && !all.contains("3000") && all.endsWith("\"next\":null}"));
+
+        assertEquals(400, get("/v1/devices/device-1/batches?limit=0").statusCode());
+        assertEquals(400, get("/v1/devices/device-1/batches?cursor=2000").statusCode());
+        assertEquals(200, get("/v1/devices/device-1/batches?limit=" + (IngestionServer.MAX_QUERY_LIMIT + 1)).statusCode());
+    }
+
+    @Test
+    public void malformedPayloadIsRejected() throws Exception {
+        start(folder.getRoot().toPath());
+        assertEquals(400, post(new byte[]{1, 2, 3}).statusCode());
+        HttpResponse<String> get = client.send(HttpRequest.newBuilder(uri("/v1/batches")).build(),
+                HttpResponse.BodyHandlers.ofString());
+        assertEquals(405, get.statusCode());
+    }
+
+    private void start(Path directory) throws IOException {
+        server = new IngestionServer(new InetSocketAddress("127.0.0.1", 0), directory, SEGMENT_SIZE);
+        server.start();
+    }
+
+    private HttpResponse<String> post(byte[] body) throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder(uri("/v1/batches"))
+                .POST(HttpRequest.BodyPublishers.ofByteArray(body))
+                .build();
+        return client.send(request, HttpResponse.BodyHandlers.ofString());
+    }
+
+    private HttpResponse<String> get(String path) throws IOException, InterruptedException {
+        return client.send(HttpRequest.newBuilder(uri(path)).build(), HttpResponse.BodyHandlers.ofString());
+    }
+
+    private URI uri(String path) {
+        return URI.create("http://127.0.0.1:" + server.getPort() + path);
+    }
+
+    private static void assertResponse(int status, String body, HttpResponse<String> response) {
+        assertEquals(response.body(), status, response.statusCode());
+        assertEquals(body, response.body());
+    }
+}
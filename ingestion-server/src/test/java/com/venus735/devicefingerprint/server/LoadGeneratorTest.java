@@ -0,0 +1,33 @@
+package com.venus735.devicefingerprint.server;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+public class LoadGeneratorTest {
+
+    @Test
+    public void payloadIsCurrentVersion() throws IOException {
+        LoadGenerator generator = new LoadGenerator(URI.create("http://localhost:8080/v1/batches"), 100, 10, 6);
+        Random random = new Random(38);
+        for (int i = 0; i < 20; i++) {
+            byte[] body = generator.buildPayload(random);
+            PayloadDecoder.Payload payload = PayloadDecoder.decode(ByteBuffer.wrap(body));
+            assertEquals(PayloadDecoder.MAX_VERSION, payload.version);
+            assertEquals(10, payload.batches.size());
+            for (PayloadDecoder.BatchSlice batch : payload.batches) {
+                assertTrue(batch.hasLocation);
+                assertEquals(6, batch.cellCount);
+                assertEquals(0, batch.beaconCount);
+            }
+            PayloadDecoder.BatchSlice last = payload.batches.get(payload.batches.size() - 1);
+            assertEquals(body.length, last.offset + last.length);
+        }
+    }
+}
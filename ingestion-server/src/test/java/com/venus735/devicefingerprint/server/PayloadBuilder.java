@@ -0,0 +1,98 @@
+package com.venus735.devicefingerprint.server;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 按 CollectionBatchCodec 的格式拼装测试用的请求体
+ */
+final class PayloadBuilder {
+    private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    private final DataOutputStream out = new DataOutputStream(bytes);
+    private final int version;
+
+    PayloadBuilder(int version, String deviceId, int batchCount) {
+        this.version = version;
+        try {
+            out.writeInt(PayloadDecoder.MAGIC);
+            out.writeByte(version);
+            writeString(deviceId);
+            writeVarInt(batchCount);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * 追加一个窗口
+     * @param location 为null时不带定位，否则为{纬度, 经度}
+     */
+    PayloadBuilder batch(long timestamp, double[] location, int cells, int beacons) {
+        try {
+            out.writeLong(timestamp);
+            out.writeByte(location != null ? 1 : 0);
+            if (location != null) {
+                out.writeDouble(location[0]);
+                out.writeDouble(location[1]);
+                out.writeFloat(15);
+                out.writeLong(timestamp);
+            }
+            writeVarInt(cells);
+            for (int c = 0; c < cells; c++) {
+                writeString("LTE");
+                writeString("460");
+                writeString(c % 2 == 0 ? "00" : null);
+                out.writeLong(1000 + c);
+                out.writeInt(20 + c);
+                out.writeInt(-90);
+                out.writeLong(timestamp);
+                out.writeInt(1);
+                writeString("运营商");
+                if (version >= 3) {
+                    out.writeInt(-100);
+                    out.writeInt(-10);
+                    out.writeInt(12);
+                    out.writeInt(3);
+                }
+            }
+            if (version >= 2) {
+                writeVarInt(beacons);
+                for (int b = 0; b < beacons; b++) {
+                    writeString("WIFI");
+                    writeString(String.format("%016x", b));
+                    out.writeInt(-70);
+                    out.writeInt(2412);
+                    out.writeLong(timestamp);
+                }
+            }
+            return this;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    byte[] build() {
+        return bytes.toByteArray();
+    }
+
+    private void writeString(String value) throws IOException {
+        if (value == null) {
+            writeVarInt(0);
+            return;
+        }
+        byte[] data = value.getBytes(StandardCharsets.UTF_8);
+        writeVarInt(data.length + 1);
+        out.write(data);
+    }
+
+    private void writeVarInt(int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            out.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+}
@@ -0,0 +1,112 @@
+package com.venus735.devicefingerprint.server;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+public class PayloadDecoderTest {
+
+    @Test
+    public void decodesAllSupportedVersions() throws IOException {
+        for (int version = 1; version <= PayloadDecoder.MAX_VERSION; version++) {
+            byte[] body = new PayloadBuilder(version, "device-1", 3)
+                    .batch(1000, new double[]{31.2, 121.4}, 4, 2)
+                    .batch(2000, null, 0, 0)
+                    .batch(3000, null, 1, 5)
+                    .build();
+            PayloadDecoder.Payload payload = PayloadDecoder.decode(ByteBuffer.wrap(body));
+            assertEquals(version, payload.version);
+            assertEquals("device-1", payload.deviceId);
+            assertEquals(3, payload.batches.size());
+
+            PayloadDecoder.BatchSlice first = payload.batches.get(0);
+            assertEquals(1000, first.timestamp);
+            assertTrue(first.hasLocation);
+            assertEquals(31.2, first.latitude, 0);
+            assertEquals(121.4, first.longitude, 0);
+            assertEquals(4, first.cellCount);
+            // 版本1没有信号源
+            assertEquals(version >= 2 ? 2 : 0, first.beaconCount);
+            assertFalse(payload.batches.get(1).hasLocation);
+            assertEquals(version >= 2 ? 5 : 0, payload.batches.get(2).beaconCount);
+
+            // 窗口片段首尾相接并覆盖到数据末尾
+            for (int i = 1; i < payload.batches.size(); i++) {
+                PayloadDecoder.BatchSlice previous = payload.batches.get(i - 1);
+                assertEquals(previous.offset + previous.length, payload.batches.get(i).offset);
+            }
+            PayloadDecoder.BatchSlice last = payload.batches.get(2);
+            assertEquals(body.length, last.offset + last.length);
+        }
+    }
+
+    @Test
+    public void sliceCanBeDecodedOnItsOwn() throws IOException {
+        byte[] body = new PayloadBuilder(3, "device-1", 2)
+                .batch(1000, null, 2, 1)
+                .batch(2000, new double[]{30.5, 114.3}, 3, 0)
+                .build();
+        PayloadDecoder.BatchSlice slice = PayloadDecoder.decode(ByteBuffer.wrap(body)).batches.get(1);
+        ByteBuffer copy = ByteBuffer.wrap(Arrays.copyOfRange(body, slice.offset, slice.offset + slice.length));
+        PayloadDecoder.BatchSlice decoded = PayloadDecoder.readBatch(copy, (byte) 3);
+        assertEquals(2000, decoded.timestamp);
+        assertEquals(30.5, decoded.latitude, 0);
+        assertEquals(3, decoded.cellCount);
+        assertEquals(slice.length, decoded.length);
+        assertFalse(copy.hasRemaining());
+    }
+
+    @Test
+    public void rejectsMalformedPayloads() {
+        byte[] valid = new PayloadBuilder(3, "device-1", 1).batch(1000, null, 2, 1).build();
+
+        byte[] badMagic = valid.clone();
+        badMagic[0] = 0;
+        assertRejected("magic", badMagic);
+
+        for (int version : new int[]{0, PayloadDecoder.MAX_VERSION + 1}) {
+            byte[] badVersion = valid.clone();
+            badVersion[4] = (byte) version;
+            assertRejected("version " + version, badVersion);
+        }
+
+        assertRejected("truncated", Arrays.copyOf(valid, valid.length - 1));
+        assertRejected("trailing", Arrays.copyOf(valid, valid.length + 1));
+        assertRejected("empty device", new PayloadBuilder(3, "", 0).build());
+        // 声明了2个窗口但只有1个
+        assertRejected("batch count", new PayloadBuilder(3, "device-1", 2).batch(1000, null, 1, 0).build());
+    }
+
+    @Test
+    public void rejectsOversizedLengths() {
+        ByteBuffer header = ByteBuffer.allocate(16);
+        header.putInt(PayloadDecoder.MAGIC).put((byte) 3);
+        // 设备ID长度为2^28，远超数据长度
+        header.put((byte) 0x81).put((byte) 0x80).put((byte) 0x80).put((byte) 0x80).put((byte) 0x01);
+        assertRejected("string length", Arrays.copyOf(header.array(), header.position()));
+
+        ByteBuffer varint = ByteBuffer.allocate(16);
+        varint.putInt(PayloadDecoder.MAGIC).put((byte) 3);
+        // 超过5字节的变长整数
+        for (int i = 0; i < 6; i++) {
+            varint.put((byte) 0xFF);
+        }
+        assertRejected("varint", Arrays.copyOf(varint.array(), varint.position()));
+    }
+
+    private static void assertRejected(String message, byte[] body) {
+        try {
+            PayloadDecoder.decode(ByteBuffer.wrap(body));
+            fail(message + ": 错误的数据应当解析失败");
+        } catch (IOException expected) {
+            // 预期
+        }
+    }
+}
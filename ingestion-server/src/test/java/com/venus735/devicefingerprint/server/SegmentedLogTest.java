@@ -0,0 +1,238 @@
+package com.venus735.devicefingerprint.server;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+public class SegmentedLogTest {
+    private static final int SMALL_SEGMENT = 1024;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void appendAndRead() throws IOException {
+        try (SegmentedLog log = new SegmentedLog(folder.getRoot().toPath(), SMALL_SEGMENT)) {
+            assertEquals(-1, log.getLastPosition());
+            long position = append(log, "device-1", 1000, "hello");
+            assertEquals(position, log.getLastPosition());
+            SegmentedLog.Record record = log.read(position);
+            assertEquals("device-1", record.deviceId);
+            assertEquals(3, record.version);
+            assertEquals(1000, record.timestamp);
+            assertEquals("hello", text(record));
+        }
+    }
+
+    @Test
+    public void appendDoesNotMoveSourcePosition() throws IOException {
+        try (SegmentedLog log = new SegmentedLog(folder.getRoot().toPath(), SMALL_SEGMENT)) {
+            ByteBuffer source = ByteBuffer.wrap("xxpayloadyy".getBytes(StandardCharsets.UTF_8));
+            long position = log.append("device-1", (byte) 3, 1, source, 2, 7);
+            assertEquals(0, source.position());
+            assertEquals("payload", text(log.read(position)));
+        }
+    }
+
+    @Test
+    public void rollsOverAndReopensWithIndexAndWritePosition() throws IOException {
+        Path directory = folder.getRoot().toPath();
+        List<Long> positions = new ArrayList<>();
+        try (SegmentedLog log = new SegmentedLog(directory, SMALL_SEGMENT)) {
+            for (int i = 0; i < 100; i++) {
+                positions.add(append(log, "device-" + i % 3, i, "payload-" + i));
+            }
+            assertTrue(log.getSegmentCount() > 3);
+            log.sync(log.getLastPosition());
+        }
+
+        try (SegmentedLog log = new SegmentedLog(directory, SMALL_SEGMENT)) {
+            assertEquals(100, log.getRecordCount());
+            assertEquals(positions.get(99).longValue(), log.getLastPosition());
+            for (int i = 0; i < 100; i++) {
+                SegmentedLog.Record record = log.read(positions.get(i));
+                assertEquals("device-" + i % 3, record.deviceId);
+                assertEquals(i, record.timestamp);
+                assertEquals("payload-" + i, text(record));
+            }
+            List<Long> lookup = log.getIndex().lookup("device-1", 10, 20);
+            assertEquals(List.of(positions.get(10), positions.get(13), positions.get(16), positions.get(19)), lookup);
+            assertEquals(3, log.getIndex().deviceCount());
+
+            // 继续追加到最后一段的末尾，不覆盖已有记录
+            long next = append(log, "device-0", 100, "payload-100");
+            assertTrue(next > positions.get(99));
+            assertEquals("payload-99", text(log.read(positions.get(99))));
+        }
+
+        try (SegmentedLog log = new SegmentedLog(directory, SMALL_SEGMENT)) {
+            assertEquals(101, log.getRecordCount());
+        }
+    }
+
+    @Test
+    public void forEachRecentCoversWholeTrailingSegments() throws IOException {
+        try (SegmentedLog log = new SegmentedLog(folder.getRoot().toPath(), SMALL_SEGMENT)) {
+            for (int i = 0; i < 200; i++) {
+                append(log, "device-1", i, "payload-" + i);
+            }
+            List<Long> all = new ArrayList<>();
+            log.forEachRecent(Integer.MAX_VALUE, record -> all.add(record.timestamp));
+            assertEquals(200, all.size());
+
+            List<Long> recent = new ArrayList<>();
+            log.forEachRecent(30, record -> recent.add(record.timestamp));
+            assertTrue(recent.size() >= 30 && recent.size() < 200);
+            // 按追加顺序，并且以最后一条记录结束
+            for (int i = 0; i < recent.size(); i++) {
+                assertEquals(200 - recent.size() + i, recent.get(i).longValue());
+            }
+        }
+    }
+
+    @Test
+    public void syncIsIdempotentAcrossSegments() throws IOException {
+        try (SegmentedLog log = new SegmentedLog(folder.getRoot().toPath(), SMALL_SEGMENT)) {
+            long first = append(log, "device-1", 1, "a");
+            log.sync(first);
+            log.sync(first);
+            long last = first;
+            for (int i = 0; i < 50; i++) {
+                last = append(log, "device-1", i + 2, "payload-" + i);
+            }
+            log.sync(first);
+            log.sync(last);
+            assertEquals(last, log.getLastPosition());
+        }
+    }
+
+    @Test
+    public void recoveryStopsAtCorruptedTail() throws IOException {
+        Path directory = folder.getRoot().toPath();
+        List<Long> positions = new ArrayList<>();
+        try (SegmentedLog log = new SegmentedLog(directory, SMALL_SEGMENT)) {
+            for (int i = 0; i < 10; i++) {
+                positions.add(append(log, "device-1", i, "payload-" + i));
+            }
+            log.sync(log.getLastPosition());
+        }
+        // 崩溃时最后一条记录的长度已经落盘，内容只落盘了一部分
+        long last = positions.get(9);
+        overwrite(directory, last, 12, new byte[]{0x7f, 0x7f, 0x7f});
+
+        try (SegmentedLog log = new SegmentedLog(directory, SMALL_SEGMENT)) {
+            assertEquals(9, log.getRecordCount());
+            assertEquals(positions.get(8).longValue(), log.getLastPosition());
+            assertEquals(9, log.getIndex().lookup("device-1", 0, Long.MAX_VALUE).size());
+            // 从损坏的记录处继续写入
+            assertEquals(last, append(log, "device-1", 100, "x"));
+            log.sync(log.getLastPosition());
+        }
+        try (SegmentedLog log = new SegmentedLog(directory, SMALL_SEGMENT)) {
+            assertEquals(10, log.getRecordCount());
+            assertEquals("x", text(log.read(last)));
+        }
+    }
+
+    @Test
+    public void garbageAfterLastRecordDoesNotBreakStartup() throws IOException {
+        Path directory = folder.getRoot().toPath();
+        long end;
+        try (SegmentedLog log = new SegmentedLog(directory, SMALL_SEGMENT)) {
+            long position = append(log, "device-1", 1, "payload");
+            log.sync(position);
+            end = position + 4 + 4 + 1 + 2 + "device-1".length() + 8 + "payload".length();
+        }
+        // 长度看起来合法，idLength为负数
+        overwrite(directory, end, 0, new byte[]{0, 0, 0, 40, 1, 2, 3, 4, 3, (byte) 0xff, (byte) 0xf0});
+
+        try (SegmentedLog log = new SegmentedLog(directory, SMALL_SEGMENT)) {
+            assertEquals(1, log.getRecordCount());
+            long next = append(log, "device-1", 2, "next");
+            assertEquals(end, next);
+            log.sync(next);
+        }
+        try (SegmentedLog log = new SegmentedLog(directory, SMALL_SEGMENT)) {
+            assertEquals(2, log.getRecordCount());
+        }
+    }
+
+    @Test
+    public void segmentsAfterCorruptedRecordAreDropped() throws IOException {
+        Path directory = folder.getRoot().toPath();
+        List<Long> positions = new ArrayList<>();
+        try (SegmentedLog log = new SegmentedLog(directory, SMALL_SEGMENT)) {
+            for (int i = 0; i < 100; i++) {
+                positions.add(append(log, "device-1", i, "payload-" + i));
+            }
+            log.sync(log.getLastPosition());
+            assertTrue(log.getSegmentCount() > 3);
+        }
+        // 损坏第二段中的第一条记录
+        int broken = 0;
+        while (positions.get(broken) >>> 32 != 1) {
+            broken++;
+        }
+        long position = positions.get(broken);
+        overwrite(directory, position, 4, new byte[]{0, 0, 0, 0});
+
+        try (SegmentedLog log = new SegmentedLog(directory, SMALL_SEGMENT)) {
+            assertEquals(broken, log.getRecordCount());
+            assertEquals(2, log.getSegmentCount());
+            assertEquals(position, append(log, "device-1", 1000, "after"));
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void recordLargerThanSegmentIsRejected() throws IOException {
+        try (SegmentedLog log = new SegmentedLog(folder.getRoot().toPath(), SMALL_SEGMENT)) {
+            log.append("device-1", (byte) 3, 1, ByteBuffer.allocate(SMALL_SEGMENT), 0, SMALL_SEGMENT);
+        }
+    }
+
+    @Test
+    public void missingDirectoryStartsFresh() throws IOException {
+        Path directory = folder.getRoot().toPath().resolve("nested");
+        try (SegmentedLog log = new SegmentedLog(directory, SMALL_SEGMENT)) {
+            assertEquals(0, log.getRecordCount());
+            assertEquals(1, log.getSegmentCount());
+            List<SegmentedLog.Record> records = new ArrayList<>();
+            log.forEachRecent(10, records::add);
+            assertTrue(records.isEmpty());
+        }
+    }
+
+    private static long append(SegmentedLog log, String deviceId, long timestamp, String payload) throws IOException {
+        byte[] bytes = payload.getBytes(StandardCharsets.UTF_8);
+        return log.append(deviceId, (byte) 3, timestamp, ByteBuffer.wrap(bytes), 0, bytes.length);
+    }
+
+    /**
+     * 直接改写段文件中的字节，模拟崩溃后只有部分页面落盘
+     * @param position 日志位置，从该位置之后offset字节处开始改写
+     */
+    private static void overwrite(Path directory, long position, int offset, byte[] bytes) throws IOException {
+        Path file = directory.resolve(String.format("%08d.seg", position >>> 32));
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.wrap(bytes), (int) position + offset);
+        }
+    }
+
+    private static String text(SegmentedLog.Record record) {
+        byte[] bytes = new byte[record.payload.remaining()];
+        record.payload.duplicate().get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -11,6 +11,10 @@ pluginManagement {
         gradlePluginPortal()
     }
 }
+plugins {
+    // ingestion-server 使用JDK 21工具链，本机没有时自动下载
+    id("org.gradle.toolchains.foojay-resolver-convention") version "0.10.0"
+}
 dependencyResolutionManagement {
     repositoriesMode.set(RepositoriesMode.FAIL_ON_PROJECT_REPOS)
     repositories {
@@ -22,3 +26,5 @@ dependencyResolutionManagement {
 rootProject.name = "DFP"
 include(":app")
 include(":devicefingerprint")
+include(":fingerprint-analysis")
+include(":ingestion-server")